@@ -0,0 +1,114 @@
+package net.dorianpb.cem.internal.models;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to find the ancestors of every part of every supported entity, the way prepRootPart does when the models are built after a reload. The family trees
+ * and part names are read from the model classes themselves. The search is how prepRootPart found them before {@link CemFamilyTree}: scanning every family
+ * for the parent of a part, and again for the parent of that. Indexing empties the cache first, so every family tree is indexed again as it is after a
+ * reload; with the cache kept, it is what building a model costs once the family tree has been indexed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CemFamilyTreeBenchmark{
+	private static final String[]                        MODELS = {"ArmorStand", "Bat", "Bee", "Blaze", "Cat", "Chicken", "Cow", "Creeper", "DrownedZombie", "EnderDragon",
+	                                                               "Enderman", "Fox", "Ghast", "GiantZombie", "Guardian", "Horse", "Illager", "IronGolem",
+	                                                               "MagmaCube", "Minecart", "Ocelot", "Phantom", "Pig", "Piglin", "Rabbit", "Salmon", "Sheep",
+	                                                               "Skeleton", "Slime", "Spider", "Villager", "Witch", "Wolf", "Zombie", "ZombieVillager"};
+	private              List<Map<String, List<String>>> familyTrees;
+	private              List<List<String>>              parts; //every part prepRootPart places for each model, in the order it does
+	
+	@Setup
+	public void setup() throws ReflectiveOperationException{
+		this.familyTrees = new ArrayList<>();
+		this.parts = new ArrayList<>();
+		for(String model : MODELS){
+			Class<?> modelClass = Class.forName("net.dorianpb.cem.external.models.Cem" + model + "Model");
+			Map<String, List<String>> familyTree = staticMap(modelClass, "familyTree");
+			Map<String, String> partNames = staticMap(modelClass, "partNames");
+			LinkedHashSet<String> parts = new LinkedHashSet<>(CemFamilyTree.of(familyTree).getParents());
+			familyTree.values().forEach(parts::addAll);
+			parts.addAll(partNames.keySet());
+			this.familyTrees.add(familyTree);
+			this.parts.add(new ArrayList<>(parts));
+		}
+	}
+	
+	@Benchmark
+	public void search(Blackhole blackhole){
+		for(int i = 0; i < this.familyTrees.size(); i++){
+			Map<String, List<String>> familyTree = this.familyTrees.get(i);
+			//prepRootPart went through the parents backwards by turning the keys into an array for each of them
+			for(int j = familyTree.keySet().size() - 1; j >= 0; j--){
+				blackhole.consume(familyTree.keySet().toArray()[j]);
+			}
+			for(String part : this.parts.get(i)){
+				ArrayList<String> names = new ArrayList<>();
+				for(String name = findParent(familyTree, part); name != null; name = findParent(familyTree, name)){
+					names.add(name);
+				}
+				blackhole.consume(names);
+			}
+		}
+	}
+	
+	@Benchmark
+	public void index(Blackhole blackhole){
+		CemFamilyTree.clear();
+		this.lookUp(blackhole);
+	}
+	
+	@Benchmark
+	public void indexed(Blackhole blackhole){
+		this.lookUp(blackhole);
+	}
+	
+	private void lookUp(Blackhole blackhole){
+		for(int i = 0; i < this.familyTrees.size(); i++){
+			CemFamilyTree familyTree = CemFamilyTree.of(this.familyTrees.get(i));
+			blackhole.consume(familyTree.getParents());
+			for(String part : this.parts.get(i)){
+				blackhole.consume(familyTree.getAncestors(part));
+			}
+		}
+	}
+	
+	private static String findParent(Map<String, List<String>> familyTree, String name){
+		for(String key : familyTree.keySet()){
+			if(familyTree.get(key).contains(name)){
+				return key;
+			}
+		}
+		return null;
+	}
+	
+	/** The static map named {@code name} of {@code modelClass}, empty if it has none */
+	@SuppressWarnings("unchecked")
+	private static <T> Map<String, T> staticMap(Class<?> modelClass, String name) throws IllegalAccessException{
+		try{
+			Field field = modelClass.getDeclaredField(name);
+			field.setAccessible(true);
+			return (Map<String, T>) field.get(null);
+		} catch(NoSuchFieldException e){
+			return Collections.emptyMap();
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package net.dorianpb.cem.internal.models;
+
+import net.dorianpb.cem.internal.file.JemFile;
+import net.dorianpb.cem.internal.file.TestJemFiles;
+import net.dorianpb.cem.internal.util.CemProfiler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static net.dorianpb.cem.internal.file.TestJemFiles.animations;
+import static net.dorianpb.cem.internal.file.TestJemFiles.model;
+import static net.dorianpb.cem.internal.file.TestJemFiles.submodel;
+import static net.dorianpb.cem.internal.file.TestJemFiles.submodels;
+
+/**
+ * Time to get a registry for a renderer by building it from the file, as every renderer did before {@link CemModelTemplate}, against copying it from a
+ * template. Parsed expressions are cached across builds either way, like they are during a reload. Run with "-prof gc" for the bytes allocated per registry,
+ * which nearly all stay alive as long as the renderer does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CemModelTemplateBenchmark{
+	private static final String[]         PARTS = {"body", "head", "left_arm", "right_arm", "left_leg", "right_leg"};
+	private              JemFile          file;
+	private              CemModelTemplate template;
+	
+	@Setup
+	public void setup(){
+		String[] models = new String[PARTS.length];
+		for(int p = 0; p < PARTS.length; p++){
+			String part = PARTS[p];
+			models[p] = model(part, part, submodels(submodel(part + "_inner", ""), submodel(part + "_outer", submodels(submodel(part + "_tip", "")))) + "," +
+			                              animations(part + ".rx", "sin(limb_swing * 0.6662 + " + p + ") * 1.4 * limb_speed",
+			                                         part + ".ry", "clamp(head_yaw, -45, 45) * torad(1)",
+			                                         part + "_outer.rz", "if(is_hurt, sin(age * 0.3) * 0.5, " + part + ".rx * 0.5)",
+			                                         part + "_tip.tz", "cos(age * 0.1) * 0.25"));
+		}
+		this.file = TestJemFiles.of("template.jem", models);
+		this.template = new CemModelTemplate(this.file, false);
+	}
+	
+	/** Every registry registers its animation cache with the profiler, which would otherwise keep them all */
+	@TearDown(Level.Iteration)
+	public void clearProfiler(){
+		CemProfiler.clear();
+	}
+	
+	@Benchmark
+	public CemModelRegistry build(){
+		return new CemModelRegistry(this.file, false);
+	}
+	
+	@Benchmark
+	public CemModelRegistry instantiate(){
+		return this.template.instantiate();
+	}
+}
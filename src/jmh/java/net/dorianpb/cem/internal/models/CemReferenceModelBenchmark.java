@@ -0,0 +1,83 @@
+package net.dorianpb.cem.internal.models;
+
+import net.dorianpb.cem.internal.api.CemModel.VanillaReferenceModelFactory;
+import net.minecraft.client.model.Dilation;
+import net.minecraft.client.model.TexturedModelData;
+import net.minecraft.client.render.entity.EnderDragonEntityRenderer;
+import net.minecraft.client.render.entity.model.*;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time a reload spends on the vanilla reference models of every supported entity: built by their factories, as prepRootPart did before
+ * {@link CemReferenceModel}, against looked up in its cache. The factories are the ones the model classes pass to prepRootPart.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CemReferenceModelBenchmark{
+	private static final VanillaReferenceModelFactory[] FACTORIES = {
+			() -> ArmorStandEntityModel.getTexturedModelData().createModel(),
+			() -> BatEntityModel.getTexturedModelData().createModel(),
+			() -> BeeEntityModel.getTexturedModelData().createModel(),
+			() -> BlazeEntityModel.getTexturedModelData().createModel(),
+			() -> TexturedModelData.of(CatEntityModel.getModelData(Dilation.NONE), 0, 0).createModel(),
+			() -> ChickenEntityModel.getTexturedModelData().createModel(),
+			() -> CowEntityModel.getTexturedModelData().createModel(),
+			() -> CreeperEntityModel.getTexturedModelData(Dilation.NONE).createModel(),
+			() -> DrownedEntityModel.getTexturedModelData(Dilation.NONE).createModel(),
+			() -> EnderDragonEntityRenderer.getTexturedModelData().createModel(),
+			() -> EndermanEntityModel.getTexturedModelData().createModel(),
+			() -> FoxEntityModel.getTexturedModelData().createModel(),
+			() -> GhastEntityModel.getTexturedModelData().createModel(),
+			() -> TexturedModelData.of(GiantEntityModel.getModelData(Dilation.NONE, 0), 0, 0).createModel(),
+			() -> GuardianEntityModel.getTexturedModelData().createModel(),
+			() -> TexturedModelData.of(HorseEntityModel.getModelData(Dilation.NONE), 0, 0).createModel(),
+			() -> IllagerEntityModel.getTexturedModelData().createModel(),
+			() -> IronGolemEntityModel.getTexturedModelData().createModel(),
+			() -> MagmaCubeEntityModel.getTexturedModelData().createModel(),
+			() -> MinecartEntityModel.getTexturedModelData().createModel(),
+			() -> TexturedModelData.of(OcelotEntityModel.getModelData(Dilation.NONE), 0, 0).createModel(),
+			() -> PhantomEntityModel.getTexturedModelData().createModel(),
+			() -> PigEntityModel.getTexturedModelData(Dilation.NONE).createModel(),
+			() -> TexturedModelData.of(PiglinEntityModel.getTexturedModelData(Dilation.NONE, false), 0, 0).createModel(),
+			() -> RabbitEntityModel.getTexturedModelData().createModel(),
+			() -> SalmonEntityModel.getTexturedModelData().createModel(),
+			() -> SheepEntityModel.getTexturedModelData().createModel(),
+			() -> SkeletonEntityModel.getTexturedModelData().createModel(),
+			() -> SlimeEntityModel.getInnerTexturedModelData().createModel(),
+			() -> SpiderEntityModel.getTexturedModelData().createModel(),
+			() -> TexturedModelData.of(VillagerResemblingModel.getModelData(), 0, 0).createModel(),
+			() -> TexturedModelData.of(WitchEntityModel.getModelData(), 0, 0).createModel(),
+			() -> WolfEntityModel.getTexturedModelData().createModel(),
+			() -> TexturedModelData.of(ZombieEntityModel.getModelData(Dilation.NONE, 0), 0, 0).createModel(),
+			() -> ZombieVillagerEntityModel.getTexturedModelData().createModel()
+	};
+	
+	@Benchmark
+	public void build(Blackhole blackhole){
+		for(VanillaReferenceModelFactory factory : FACTORIES){
+			blackhole.consume(factory.get());
+		}
+	}
+	
+	@Benchmark
+	public void cached(Blackhole blackhole){
+		for(VanillaReferenceModelFactory factory : FACTORIES){
+			blackhole.consume(CemReferenceModel.get(factory));
+		}
+	}
+}
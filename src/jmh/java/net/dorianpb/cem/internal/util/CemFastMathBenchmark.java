@@ -0,0 +1,134 @@
+package net.dorianpb.cem.internal.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Time per call of every {@link CemFastMath} function against the exact one animations use without "use_fast_math", over arguments in the usual ranges */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CemFastMathBenchmark{
+	private static final int     SIZE = 1024;
+	@Param({"tan", "asin", "acos", "atan", "exp", "log", "pow"})
+	private              String  function;
+	private              float[] arguments;
+	private              float[] exponents;
+	
+	@Setup
+	public void setup(){
+		Random random = new Random(7);
+		this.arguments = new float[SIZE];
+		this.exponents = new float[SIZE];
+		for(int i = 0; i < SIZE; i++){
+			this.arguments[i] = switch(this.function){
+				case "asin", "acos" -> random.nextFloat() * 2 - 1;
+				case "tan" -> random.nextFloat() * 3 - 1.5F;
+				case "exp" -> random.nextFloat() * 20 - 10;
+				case "log", "pow" -> random.nextFloat() * 100;
+				default -> random.nextFloat() * 200 - 100;
+			};
+			this.exponents[i] = random.nextFloat() * 6 - 3;
+		}
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public void exact(Blackhole blackhole){
+		switch(this.function){
+			case "tan" -> {
+				for(float a : this.arguments){
+					blackhole.consume((float) Math.tan(a));
+				}
+			}
+			case "asin" -> {
+				for(float a : this.arguments){
+					blackhole.consume((float) Math.asin(a));
+				}
+			}
+			case "acos" -> {
+				for(float a : this.arguments){
+					blackhole.consume((float) Math.acos(a));
+				}
+			}
+			case "atan" -> {
+				for(float a : this.arguments){
+					blackhole.consume((float) Math.atan(a));
+				}
+			}
+			case "exp" -> {
+				for(float a : this.arguments){
+					blackhole.consume((float) Math.exp(a));
+				}
+			}
+			case "log" -> {
+				for(float a : this.arguments){
+					blackhole.consume((float) Math.log(a));
+				}
+			}
+			default -> {
+				for(int i = 0; i < SIZE; i++){
+					blackhole.consume((float) Math.pow(this.arguments[i], this.exponents[i]));
+				}
+			}
+		}
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public void fast(Blackhole blackhole){
+		switch(this.function){
+			case "tan" -> {
+				for(float a : this.arguments){
+					blackhole.consume(CemFastMath.tan(a));
+				}
+			}
+			case "asin" -> {
+				for(float a : this.arguments){
+					blackhole.consume(CemFastMath.asin(a));
+				}
+			}
+			case "acos" -> {
+				for(float a : this.arguments){
+					blackhole.consume(CemFastMath.acos(a));
+				}
+			}
+			case "atan" -> {
+				for(float a : this.arguments){
+					blackhole.consume(CemFastMath.atan(a));
+				}
+			}
+			case "exp" -> {
+				for(float a : this.arguments){
+					blackhole.consume(CemFastMath.exp(a));
+				}
+			}
+			case "log" -> {
+				for(float a : this.arguments){
+					blackhole.consume(CemFastMath.log(a));
+				}
+			}
+			default -> {
+				for(int i = 0; i < SIZE; i++){
+					blackhole.consume(CemFastMath.pow(this.arguments[i], this.exponents[i]));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package net.dorianpb.cem.internal.util;
+
+import net.dorianpb.cem.internal.file.JemFile;
+import net.dorianpb.cem.internal.file.TestJemFiles;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static net.dorianpb.cem.internal.file.TestJemFiles.animations;
+import static net.dorianpb.cem.internal.file.TestJemFiles.model;
+
+/**
+ * Time to build the templates of a resource pack's worth of models on pools of 1 to 8 threads, as {@link CemRegistryManager#prepareTemplates()} does on
+ * every reload. The expression cache is emptied first, the way a reload does, so every animation is parsed and compiled again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CemRegistryManagerBenchmark{
+	private static final int                FILES = 80;
+	private static final String[]           PARTS = {"body", "head", "left_arm", "right_arm", "left_leg", "right_leg"};
+	@Param({"1", "2", "4", "8"})
+	private              int                threads;
+	private              ArrayList<JemFile> files;
+	private              ForkJoinPool       pool;
+	
+	@Setup
+	public void setup(){
+		this.files = new ArrayList<>();
+		for(int i = 0; i < FILES; i++){
+			String[] models = new String[PARTS.length];
+			for(int p = 0; p < PARTS.length; p++){
+				String part = PARTS[p];
+				//every file animates differently, so that nothing is shared between them
+				models[p] = model(part, part, animations(part + ".rx", "sin(limb_swing * 0.6662 + " + (i + p) + ") * 1.4 * limb_speed",
+				                                         part + ".ry", "clamp(head_yaw * " + (i * 0.01 + p) + ", -45, 45) * torad(1)",
+				                                         part + ".tz", "if(is_hurt, sin(age * " + (i + 1) + ") * 0.5, " + p + ")"));
+			}
+			this.files.add(TestJemFiles.of("pack/" + i + ".jem", models));
+		}
+		this.pool = new ForkJoinPool(this.threads);
+	}
+	
+	@TearDown
+	public void tearDown(){
+		this.pool.shutdown();
+	}
+	
+	@Benchmark
+	public void buildTemplates(Blackhole blackhole){
+		CemExpressionCache.clear();
+		CemRegistryManager.buildTemplates(this.files, this.pool, (file, template, error) -> blackhole.consume(template));
+	}
+}
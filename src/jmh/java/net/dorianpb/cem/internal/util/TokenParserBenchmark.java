@@ -0,0 +1,67 @@
+package net.dorianpb.cem.internal.util;
+
+import net.dorianpb.cem.internal.util.CemStringParser.TokenParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Time to tokenize a corpus of animation strings with {@link TokenParser} and with the {@link LegacyTokenParser} it replaced */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenParserBenchmark{
+	private static final List<String> SAMPLES = List.of("sin(limb_swing * 0.6662) * limb_speed",
+	                                                    "-sin(limb_swing * 0.6662 + pi) * 1.4 * limb_speed",
+	                                                    "torad(45) * 2 + 0 * limb_swing",
+	                                                    "if(is_in_water && !is_on_ground, sin(age * 0.3) * 0.2, 0)",
+	                                                    "clamp(-0.5 * head2:x.rx, 0, 90)",
+	                                                    "head.rx + (body.rx - 1) / 2",
+	                                                    "!is_alive");
+	private              String[]     corpus;
+	
+	@Setup
+	public void setup(){
+		ArrayList<String> corpus = new ArrayList<>(SAMPLES);
+		Random random = new Random(7);
+		while(corpus.size() < 1000){
+			String expression = TokenParserTest.generate(random, 4);
+			try{
+				LegacyTokenParser.parse(expression);
+				corpus.add(expression);
+			} catch(RuntimeException ignored){
+				//both parsers have to be able to read the whole corpus
+			}
+		}
+		this.corpus = corpus.toArray(new String[0]);
+	}
+	
+	@Benchmark
+	public void legacy(Blackhole blackhole){
+		for(String expression : this.corpus){
+			blackhole.consume(LegacyTokenParser.parse(expression));
+		}
+	}
+	
+	@Benchmark
+	public void current(Blackhole blackhole){
+		for(String expression : this.corpus){
+			blackhole.consume(new TokenParser(expression).parse());
+		}
+	}
+}
@@ -1,13 +1,20 @@
 package net.dorianpb.cem.internal;
 
+import com.mojang.brigadier.arguments.IntegerArgumentType;
 import net.dorianpb.cem.internal.api.CemEntityInitializer;
 import net.dorianpb.cem.internal.config.CemConfigFairy;
 import net.dorianpb.cem.internal.util.CemFairy;
+import net.dorianpb.cem.internal.util.CemProfiler;
 import net.dorianpb.cem.mixins.BlockEntityRendererAccessor;
 import net.dorianpb.cem.mixins.EntityRendererAccessor;
 import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.fabric.api.client.command.v1.ClientCommandManager;
+import net.fabricmc.fabric.api.client.command.v1.FabricClientCommandSource;
 import net.fabricmc.loader.api.FabricLoader;
 import net.fabricmc.loader.api.metadata.ModMetadata;
+import net.minecraft.text.TranslatableText;
+
+import java.nio.file.Path;
 
 
 public class CemInit implements ClientModInitializer{
@@ -15,6 +22,7 @@ public class CemInit implements ClientModInitializer{
 	@SuppressWarnings({"unchecked", "RedundantSuppression"})
 	public void onInitializeClient(){
 		CemConfigFairy.loadConfig();
+		registerCommands();
 		FabricLoader.getInstance().getEntrypointContainers("cem", CemEntityInitializer.class).forEach((container) -> {
 			ModMetadata provider = container.getProvider().getMetadata();
 			CemEntityInitializer entrypoint = container.getEntrypoint();
@@ -44,6 +52,33 @@ public class CemInit implements ClientModInitializer{
 			});
 		});
 	}
+	
+	/** "/cem_profiler start|stop|dump [count]", see {@link CemProfiler} */
+	private static void registerCommands(){
+		ClientCommandManager.DISPATCHER.register(ClientCommandManager.literal("cem_profiler").then(ClientCommandManager.literal("start").executes((context) -> {
+			CemProfiler.reset();
+			CemProfiler.start();
+			context.getSource().sendFeedback(new TranslatableText("commands.cem_profiler.start"));
+			return 1;
+		})).then(ClientCommandManager.literal("stop").executes((context) -> {
+			CemProfiler.stop();
+			context.getSource().sendFeedback(new TranslatableText("commands.cem_profiler.stop"));
+			return 1;
+		})).then(ClientCommandManager.literal("dump").executes((context) -> dumpProfile(context.getSource(), 20))
+		                                             .then(ClientCommandManager.argument("count", IntegerArgumentType.integer(1))
+		                                                                       .executes((context) -> dumpProfile(context.getSource(),
+		                                                                                                          IntegerArgumentType.getInteger(context, "count"))))));
+	}
+	
+	private static int dumpProfile(FabricClientCommandSource source, int count){
+		Path path = CemProfiler.dump(count);
+		if(path == null){
+			source.sendError(new TranslatableText("commands.cem_profiler.dump.failed"));
+			return 0;
+		}
+		source.sendFeedback(new TranslatableText("commands.cem_profiler.dump", count, path.getFileName().toString()));
+		return 1;
+	}
 }
 
 //TODO write documentation for everything so people can adopt the mod and use it like a good boi
\ No newline at end of file
@@ -14,6 +14,7 @@ public interface CemModel{
 		}
 	}
 	
+	/** Builds the vanilla model whose pivots transparent parts get; it should build the same model every time, as a factory that captures nothing is only called once */
 	@FunctionalInterface
 	interface VanillaReferenceModelFactory{
 		ModelPart get();
@@ -12,6 +12,11 @@ public final class CemConfig extends Config implements ConfigContainer, CemOptio
 	@ConfigEntry private boolean use_optifine_folder        = CemOptions.instance.useOptifineFolder();
 	@ConfigEntry private boolean use_new_model_creation_fix = CemOptions.instance.useTransparentParts();
 	@ConfigEntry private boolean use_relative_animations    = CemOptions.instance.useRelativeAnimations();
+	@ConfigEntry private boolean use_compiled_animations    = CemOptions.instance.useCompiledAnimations();
+	@ConfigEntry private boolean use_fast_math              = CemOptions.instance.useFastMath();
+	@ConfigEntry private boolean remove_hidden_faces        = CemOptions.instance.removeHiddenFaces();
+	@ConfigEntry private boolean remove_transparent_faces   = CemOptions.instance.removeTransparentFaces();
+	@ConfigEntry private boolean batch_animations           = CemOptions.instance.batchAnimations();
 	
 	private CemConfig(){
 		super("cem");
@@ -43,4 +48,29 @@ public final class CemConfig extends Config implements ConfigContainer, CemOptio
 	public boolean useRelativeAnimations(){
 		return this.use_relative_animations;
 	}
+	
+	@Override
+	public boolean useCompiledAnimations(){
+		return this.use_compiled_animations;
+	}
+	
+	@Override
+	public boolean useFastMath(){
+		return this.use_fast_math;
+	}
+	
+	@Override
+	public boolean removeHiddenFaces(){
+		return this.remove_hidden_faces;
+	}
+	
+	@Override
+	public boolean removeTransparentFaces(){
+		return this.remove_transparent_faces;
+	}
+	
+	@Override
+	public boolean batchAnimations(){
+		return this.batch_animations;
+	}
 }
\ No newline at end of file
@@ -16,4 +16,24 @@ public interface CemOptions{
 	default boolean useRelativeAnimations(){
 		return false;
 	}
+	
+	default boolean useCompiledAnimations(){
+		return true;
+	}
+	
+	default boolean useFastMath(){
+		return false;
+	}
+	
+	default boolean removeHiddenFaces(){
+		return false;
+	}
+	
+	default boolean removeTransparentFaces(){
+		return false;
+	}
+	
+	default boolean batchAnimations(){
+		return false;
+	}
 }
\ No newline at end of file
@@ -1,7 +1,9 @@
 package net.dorianpb.cem.internal.file;
 
 import com.google.gson.internal.LinkedTreeMap;
+import net.dorianpb.cem.internal.config.CemConfigFairy;
 import net.dorianpb.cem.internal.util.CemFairy;
+import net.dorianpb.cem.internal.util.CemTextureAlpha;
 import net.minecraft.resource.ResourceManager;
 import net.minecraft.util.Identifier;
 
@@ -11,17 +13,18 @@ import java.nio.charset.StandardCharsets;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Set;
 import java.util.regex.Pattern;
 
 public class JemFile{
-	public static final Pattern                   allowTextureChars = Pattern.compile("^[a-z0-9/._\\-]+$");
-	private final       String                    texture;
-	private final       ArrayList<Double>         textureSize;
-	private final       Float                     shadowsize;
-	private final       HashMap<String, JemModel> models;
-	private final       Identifier                path;
+	public static final Pattern                         allowTextureChars = Pattern.compile("^[a-z0-9/._\\-]+$");
+	private final       String                          texture;
+	private final       ArrayList<Double>               textureSize;
+	private final       Float                           shadowsize;
+	private final       LinkedHashMap<String, JemModel> models;
+	private final       Identifier                      path;
+	private final       CemTextureAlpha                 textureAlpha;
 	
 	
 	@SuppressWarnings({"unchecked", "rawtypes"})
@@ -30,12 +33,16 @@ public class JemFile{
 		this.textureSize = CemFairy.JSONparseDoubleList(json.get("textureSize"));
 		this.shadowsize = CemFairy.JSONparseFloat(json.get("shadowSize"));
 		this.path = path;
-		models = new HashMap<>();
+		//models are animated in the order they are in the file, so that variables set by one model can be read by the next
+		models = new LinkedHashMap<>();
 		for(LinkedTreeMap model : (ArrayList<LinkedTreeMap>) json.get("models")){
 			JemModel newmodel = new JemModel(model, this.path, resourceManager);
 			models.put(newmodel.getPart(), newmodel);
 		}
 		this.validate();
+		//only a texture named here is sure to be the one the model is drawn with, the default texture of a mob can depend on the mob
+		boolean removeTransparentFaces = CemConfigFairy.getConfig() != null && CemConfigFairy.getConfig().removeTransparentFaces();
+		this.textureAlpha = (removeTransparentFaces && this.getTexture() != null)? CemTextureAlpha.get(resourceManager, this.getTexture()) : null;
 	}
 	
 	private void validate(){
@@ -57,6 +64,11 @@ public class JemFile{
 		return null;
 	}
 	
+	/** Which pixels of the texture can be seen, or null if transparent faces aren't removed from this model */
+	public CemTextureAlpha getTextureAlpha(){
+		return this.textureAlpha;
+	}
+	
 	public ArrayList<Double> getTextureSize(){
 		return textureSize;
 	}
@@ -108,8 +120,8 @@ public class JemFile{
 					}
 					temp = new JpmFile(file);
 				} catch(Exception exception){
-					CemFairy.postReadError(exception, id);
-					throw new Exception("Error loading dependent file: " + id);
+					//files are read in parallel, the error is logged along with the one for this file
+					throw new Exception("Error loading dependent file: " + id, exception);
 				}
 			}
 			else{
@@ -0,0 +1,233 @@
+package net.dorianpb.cem.internal.models;
+
+import net.dorianpb.cem.internal.util.CemAnimationCache;
+import net.dorianpb.cem.internal.util.CemAnimationCache.Cursor;
+import net.dorianpb.cem.internal.util.CemStringParser.DexEnvironment;
+import net.minecraft.entity.LivingEntity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * The visible entities of one model in a frame, so that every animation can be run over all of them in one go, before any of them is drawn, instead of
+ * once per entity while drawing. The poses of the parts the animations use and the results of the animations are kept as one array per value, indexed by
+ * entity.
+ * <p>
+ * Between {@link CemAnimationBatch#beginCollecting()} and {@link CemAnimationBatch#evaluateCollected()}, {@link CemModelRegistry#applyAnimations} only adds
+ * the entity to the batch of its model. When the entity is drawn afterwards, the results are put on the model if the entity has been posed like it was when
+ * it was added, as far as the animations can tell, otherwise it is animated on its own as usual. What is left on the model from the entity drawn before
+ * doesn't matter unless an animation reads it, like "head.rx + 1" does.
+ */
+public class CemAnimationBatch{
+	/** translate xyz, rotation xyz, scale xyz, and the vanilla angles added to the rotation */
+	private static final int                                    VALUES    = 12;
+	private static final ArrayList<CemAnimationBatch>           COLLECTED = new ArrayList<>();
+	private static       boolean                                collecting;
+	private final        CemModelRegistry                       registry;
+	private final        CemAnimationCache                      cache;
+	private final        DexEnvironment                         prototype; //environment of the registry, copied for every entity
+	private final        CemModelEntry[]                        parts; //parts read or set by the animations
+	private final        int[]                                  offsets; //first pose row of every part by index, -1 for the parts that aren't kept track of
+	private final        int[]                                  reads; //bits of the pose rows of every part the animations read before setting them
+	private final        IdentityHashMap<LivingEntity, Integer> indices;
+	private final        int                                    animations;
+	private              DexEnvironment[]                       environments;
+	private              Cursor[]                               cursors;
+	private              float[][]                              arguments; //limb angle, limb distance, age, head yaw and head pitch
+	private              float[][]                              start; //pose of the parts before the animations ran
+	private              float[][]                              pose; //pose of the parts as changed by the animations run so far
+	private              float[][]                              results; //by animation
+	private              int                                    size;
+	private              int                                    frame;
+	private              boolean                                evaluated; //whether the results are those of the entities added since the last evaluation
+	
+	CemAnimationBatch(CemModelRegistry registry, CemAnimationCache cache, DexEnvironment prototype, CemModelEntry[] parts, int[] reads, int animations){
+		this.registry = registry;
+		this.cache = cache;
+		this.prototype = prototype;
+		this.parts = parts;
+		this.reads = reads;
+		this.offsets = new int[registry.getPartCount()];
+		Arrays.fill(this.offsets, -1);
+		for(int i = 0; i < parts.length; i++){
+			this.offsets[parts[i].getIndex()] = i * VALUES;
+		}
+		this.indices = new IdentityHashMap<>();
+		this.animations = animations;
+		this.frame = -1;
+		this.allocate(4);
+	}
+	
+	/** From now on, {@link CemModelRegistry#applyAnimations} adds entities to batches rather than animating the model; the batches of the last frame are emptied */
+	public static void beginCollecting(){
+		for(CemAnimationBatch batch : COLLECTED){
+			batch.size = 0;
+			batch.indices.clear();
+		}
+		COLLECTED.clear();
+		collecting = true;
+	}
+	
+	public static boolean isCollecting(){
+		return collecting;
+	}
+	
+	/** Runs the animations of all batches entities were added to since {@link CemAnimationBatch#beginCollecting()}, and goes back to animating models */
+	public static void evaluateCollected(){
+		collecting = false;
+		for(CemAnimationBatch batch : COLLECTED){
+			batch.registry.evaluate(batch);
+			batch.evaluated = true;
+		}
+	}
+	
+	/** Adds an entity, remembering the current pose of all parts the animations use; an entity added twice in a frame only keeps the second pose */
+	void add(float limbAngle, float limbDistance, float age, float head_yaw, float head_pitch, LivingEntity livingEntity){
+		int frame = DexEnvironment.getFrame();
+		if(this.frame != frame){
+			this.frame = frame;
+			this.size = 0;
+			this.indices.clear();
+		}
+		this.evaluated = false;
+		if(!COLLECTED.contains(this)){
+			COLLECTED.add(this);
+		}
+		Integer known = this.indices.get(livingEntity);
+		int index = (known == null)? this.size++ : known;
+		if(index == this.environments.length){
+			this.allocate(index * 2);
+		}
+		this.indices.put(livingEntity, index);
+		this.arguments[0][index] = limbAngle;
+		this.arguments[1][index] = limbDistance;
+		this.arguments[2][index] = age;
+		this.arguments[3][index] = head_yaw;
+		this.arguments[4][index] = head_pitch;
+		if(this.environments[index] == null){
+			this.environments[index] = new DexEnvironment(this.prototype);
+			this.cursors[index] = new Cursor();
+		}
+		DexEnvironment environment = this.environments[index];
+		environment.setEnv(limbAngle, limbDistance, age, head_yaw, head_pitch, livingEntity, this.registry);
+		environment.setBatch(this, index);
+		this.cache.begin(environment, livingEntity, this.cursors[index]);
+		//values set before they are read don't need to be known
+		for(int i = 0; i < this.parts.length; i++){
+			CemModelEntry part = this.parts[i];
+			int offset = i * VALUES;
+			int reads = this.reads[i];
+			for(int axis = 0; axis < 3 && reads != 0; axis++){
+				char c = (char) ('x' + axis);
+				if((reads & (1 << axis)) != 0){
+					this.start[offset + axis][index] = part.getTranslate(c);
+				}
+				if((reads & (1 << (3 + axis))) != 0){
+					this.start[offset + 3 + axis][index] = part.getModel().getOwnRotation(c);
+				}
+				if((reads & (1 << (6 + axis))) != 0){
+					this.start[offset + 6 + axis][index] = part.getModel().getScale(c);
+				}
+				if((reads & (1 << (9 + axis))) != 0){
+					this.start[offset + 9 + axis][index] = part.getModel().getRotationOffset(c);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return Index of the entity if the animations have been run for it this frame with the same arguments, and the values the animations read from the model
+	 * 		are the same as when it was added, -1 otherwise
+	 */
+	int find(float limbAngle, float limbDistance, float age, float head_yaw, float head_pitch, LivingEntity livingEntity){
+		Integer index = (this.evaluated && this.frame == DexEnvironment.getFrame())? this.indices.get(livingEntity) : null;
+		if(index == null || !same(this.arguments[0][index], limbAngle) || !same(this.arguments[1][index], limbDistance) || !same(this.arguments[2][index], age) ||
+		   !same(this.arguments[3][index], head_yaw) || !same(this.arguments[4][index], head_pitch)){
+			return -1;
+		}
+		for(int i = 0; i < this.parts.length; i++){
+			CemModelEntry part = this.parts[i];
+			int offset = i * VALUES;
+			int reads = this.reads[i];
+			for(int axis = 0; axis < 3 && reads != 0; axis++){
+				char c = (char) ('x' + axis);
+				if(((reads & (1 << axis)) != 0 && !same(this.start[offset + axis][index], part.getTranslate(c))) ||
+				   ((reads & (1 << (3 + axis))) != 0 && !same(this.start[offset + 3 + axis][index], part.getModel().getOwnRotation(c))) ||
+				   ((reads & (1 << (6 + axis))) != 0 && !same(this.start[offset + 6 + axis][index], part.getModel().getScale(c))) ||
+				   ((reads & (1 << (9 + axis))) != 0 && !same(this.start[offset + 9 + axis][index], part.getModel().getRotationOffset(c)))){
+					return -1;
+				}
+			}
+		}
+		return index;
+	}
+	
+	/** Puts every entity back into the pose it was added in, before the animations are run over the batch */
+	void reset(){
+		for(int row = 0; row < this.start.length; row++){
+			if((this.reads[row / VALUES] & (1 << (row % VALUES))) != 0){
+				System.arraycopy(this.start[row], 0, this.pose[row], 0, this.size);
+			}
+		}
+	}
+	
+	public int size(){
+		return this.size;
+	}
+	
+	/**
+	 * @param value 0-8 for translate, rotation and scale xyz
+	 * @return The value as it is for the entity at {@code index}, including the changes made by the animations so far
+	 */
+	public float get(CemModelEntry entry, int value, int index){
+		int offset = this.offsets[entry.getIndex()];
+		if(value >= 3 && value < 6){
+			return this.pose[offset + value + 6][index] + this.pose[offset + value][index];
+		}
+		return this.pose[offset + value][index];
+	}
+	
+	/** Changes a value the same way the setters of {@link CemModelEntry} would change the part */
+	void set(CemModelEntry entry, int value, int index, float val){
+		int offset = this.offsets[entry.getIndex()];
+		this.pose[offset + value][index] = val;
+		if(value >= 3 && value < 6 && !entry.getModel().hasTransparentParent()){
+			this.pose[offset + value + 6][index] = 0;
+		}
+	}
+	
+	DexEnvironment getEnvironment(int index){
+		return this.environments[index];
+	}
+	
+	Cursor getCursor(int index){
+		return this.cursors[index];
+	}
+	
+	/** Results of an animation for every entity, by index */
+	float[] getResults(int animation){
+		return this.results[animation];
+	}
+	
+	private void allocate(int capacity){
+		this.environments = (this.environments == null)? new DexEnvironment[capacity] : Arrays.copyOf(this.environments, capacity);
+		this.cursors = (this.cursors == null)? new Cursor[capacity] : Arrays.copyOf(this.cursors, capacity);
+		this.arguments = grow(this.arguments, 5, capacity);
+		this.start = grow(this.start, this.parts.length * VALUES, capacity);
+		this.pose = grow(this.pose, this.parts.length * VALUES, capacity);
+		this.results = grow(this.results, this.animations, capacity);
+	}
+	
+	private static float[][] grow(float[][] columns, int rows, int capacity){
+		float[][] grown = new float[rows][];
+		for(int row = 0; row < rows; row++){
+			grown[row] = (columns == null)? new float[capacity] : Arrays.copyOf(columns[row], capacity);
+		}
+		return grown;
+	}
+	
+	private static boolean same(float a, float b){
+		return Float.floatToRawIntBits(a) == Float.floatToRawIntBits(b);
+	}
+}
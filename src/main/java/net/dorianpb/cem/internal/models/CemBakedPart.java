@@ -0,0 +1,137 @@
+package net.dorianpb.cem.internal.models;
+
+import net.dorianpb.cem.internal.models.CemModelEntry.CemModelPart;
+import net.minecraft.client.model.ModelPart;
+import net.minecraft.client.model.ModelPart.Cuboid;
+import net.minecraft.client.model.ModelPart.Quad;
+import net.minecraft.client.model.ModelPart.Vertex;
+import net.minecraft.client.render.VertexConsumer;
+import net.minecraft.client.util.math.MatrixStack;
+import net.minecraft.util.math.Matrix3f;
+import net.minecraft.util.math.Matrix4f;
+import net.minecraft.util.math.Vec3f;
+import net.minecraft.util.math.Vector4f;
+
+/**
+ * The cuboids of a part whose subtree never moves (see {@link CemModelPart#isFixed()}), already moved by the transforms of every part in it. Rendering it
+ * only transforms the vertices by the matrix of the parent of the part, instead of pushing, translating and rotating a matrix for every part in the subtree.
+ */
+class CemBakedPart{
+	private final float[] vertices; //x, y, z, u and v of every vertex, relative to the parent of the part
+	private final float[] normals; //x, y and z of the normal of every quad, the vertices of which come in fours
+	
+	CemBakedPart(CemModelPart part){
+		int quads = count(part);
+		this.vertices = new float[quads * 4 * 5];
+		this.normals = new float[quads * 3];
+		bake(part, new MatrixStack(), new int[2]);
+	}
+	
+	/**
+	 * Whether {@code part} and everything below it can be baked: they are plain CEM parts that are fixed. The part itself mustn't be scaled, as a scale is
+	 * applied before the matrix of the part is pushed and so carries over to its siblings.
+	 */
+	static boolean canBake(ModelPart part){
+		return part.getClass() == CemModelPart.class && !((CemModelPart) part).isScaled() && isFixed(part);
+	}
+	
+	private static boolean isFixed(ModelPart part){
+		if(part.getClass() != CemModelPart.class || !((CemModelPart) part).isFixed()){
+			return false;
+		}
+		for(ModelPart child : part.children.values()){
+			if(!isFixed(child)){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/** Counts the quads that rendering {@code part} would draw */
+	private static int count(ModelPart part){
+		if(!part.visible){
+			return 0;
+		}
+		int count = 0;
+		for(Cuboid cuboid : part.cuboids){
+			count += cuboid.sides.length;
+		}
+		for(ModelPart child : part.children.values()){
+			count += count(child);
+		}
+		return count;
+	}
+	
+	/** Same walk as {@link CemRenderPlan#render}, writing the transformed quads into the arrays; {@code written} holds the number of vertices and quads so far */
+	private void bake(CemModelPart part, MatrixStack matrices, int[] written){
+		part.scale(matrices);
+		if(!part.visible || (part.cuboids.isEmpty() && part.children.isEmpty())){
+			return;
+		}
+		matrices.push();
+		part.rotate(matrices, part.pitch, part.yaw, part.roll);
+		Matrix4f model = matrices.peek().getModel();
+		Matrix3f normal = matrices.peek().getNormal();
+		for(Cuboid cuboid : part.cuboids){
+			for(Quad quad : cuboid.sides){
+				Vec3f direction = quad.direction.copy();
+				direction.transform(normal);
+				this.normals[written[1] * 3] = direction.getX();
+				this.normals[written[1] * 3 + 1] = direction.getY();
+				this.normals[written[1] * 3 + 2] = direction.getZ();
+				written[1]++;
+				for(Vertex vertex : quad.vertices){
+					Vector4f position = new Vector4f(vertex.pos.getX() / 16.0F, vertex.pos.getY() / 16.0F, vertex.pos.getZ() / 16.0F, 1.0F);
+					position.transform(model);
+					this.vertices[written[0] * 5] = position.getX();
+					this.vertices[written[0] * 5 + 1] = position.getY();
+					this.vertices[written[0] * 5 + 2] = position.getZ();
+					this.vertices[written[0] * 5 + 3] = vertex.u;
+					this.vertices[written[0] * 5 + 4] = vertex.v;
+					written[0]++;
+				}
+			}
+		}
+		for(ModelPart child : part.children.values()){
+			this.bake((CemModelPart) child, matrices, written);
+		}
+		matrices.pop();
+	}
+	
+	boolean isEmpty(){
+		return this.normals.length == 0;
+	}
+	
+	/**
+	 * Does what {@link Cuboid#renderCuboid} does for every cuboid, with the matrices of the parent of the part
+	 * @param position Scratch vector the vertices are transformed in, so that nothing is allocated per render
+	 * @param direction Scratch vector the normals are transformed in
+	 */
+	void render(MatrixStack.Entry entry, VertexConsumer vertices, int light, int overlay, float red, float green, float blue, float alpha, Vector4f position, Vec3f direction){
+		Matrix4f model = entry.getModel();
+		Matrix3f normal = entry.getNormal();
+		for(int quad = 0; quad < this.normals.length / 3; quad++){
+			direction.set(this.normals[quad * 3], this.normals[quad * 3 + 1], this.normals[quad * 3 + 2]);
+			direction.transform(normal);
+			for(int vertex = quad * 4; vertex < quad * 4 + 4; vertex++){
+				position.set(this.vertices[vertex * 5], this.vertices[vertex * 5 + 1], this.vertices[vertex * 5 + 2], 1.0F);
+				position.transform(model);
+				vertices.vertex(position.getX(),
+				                position.getY(),
+				                position.getZ(),
+				                red,
+				                green,
+				                blue,
+				                alpha,
+				                this.vertices[vertex * 5 + 3],
+				                this.vertices[vertex * 5 + 4],
+				                overlay,
+				                light,
+				                direction.getX(),
+				                direction.getY(),
+				                direction.getZ()
+				               );
+			}
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package net.dorianpb.cem.internal.models;
+
+import java.util.*;
+
+/**
+ * The family tree a model passes to {@link CemModelRegistry#prepRootPart}, indexed so that the parent and the ancestors of a part are found without searching
+ * every family. Model classes pass the same static map every time they are built, so each map is only indexed once per resource reload.
+ */
+public class CemFamilyTree{
+	private static final CemFamilyTree                                             EMPTY    = new CemFamilyTree(Collections.emptyMap());
+	private static final IdentityHashMap<Map<String, List<String>>, CemFamilyTree> COMPILED = new IdentityHashMap<>(); //keyed by the static maps of the model classes
+	private final        List<String>                                              parents; //every parent, last listed first
+	private final        HashMap<String, List<String>>                             ancestors; //ancestors of every child, outermost first
+	
+	private CemFamilyTree(Map<String, List<String>> familyTree){
+		HashMap<String, String> parentOf = new HashMap<>();
+		for(Map.Entry<String, List<String>> family : familyTree.entrySet()){
+			for(String child : family.getValue()){
+				//a part listed in two families belongs to the first one
+				parentOf.putIfAbsent(child, family.getKey());
+			}
+		}
+		ArrayList<String> parents = new ArrayList<>(familyTree.keySet());
+		Collections.reverse(parents);
+		this.parents = Collections.unmodifiableList(parents);
+		this.ancestors = new HashMap<>();
+		for(String child : parentOf.keySet()){
+			ArrayList<String> ancestors = new ArrayList<>();
+			for(String parent = parentOf.get(child); parent != null; parent = parentOf.get(parent)){
+				if(ancestors.contains(parent) || parent.equals(child)){
+					throw new IllegalArgumentException("Part \"" + child + "\" is its own ancestor in the family tree " + familyTree);
+				}
+				ancestors.add(parent);
+			}
+			Collections.reverse(ancestors);
+			this.ancestors.put(child, Collections.unmodifiableList(ancestors));
+		}
+	}
+	
+	/** The index of {@code familyTree}, which is only made the first time the map is passed in */
+	static CemFamilyTree of(Map<String, List<String>> familyTree){
+		if(familyTree.isEmpty()){
+			return EMPTY;
+		}
+		return COMPILED.computeIfAbsent(familyTree, CemFamilyTree::new);
+	}
+	
+	/** Forgets every index, called on reload */
+	public static void clear(){
+		COMPILED.clear();
+	}
+	
+	/** Every part that has children, in the reverse order of the family tree */
+	List<String> getParents(){
+		return this.parents;
+	}
+	
+	/** The parent, grandparent and so on of {@code name}, outermost first; empty for parts that aren't in any family */
+	List<String> getAncestors(String name){
+		return this.ancestors.getOrDefault(name, Collections.emptyList());
+	}
+}
@@ -0,0 +1,177 @@
+package net.dorianpb.cem.internal.models;
+
+import net.dorianpb.cem.internal.config.CemConfigFairy;
+import net.dorianpb.cem.internal.models.CemModelEntry.CemCuboid;
+import net.dorianpb.cem.internal.util.CemTextureAlpha;
+import net.minecraft.client.model.ModelPart.Cuboid;
+import net.minecraft.client.model.ModelPart.Quad;
+import net.minecraft.client.model.ModelPart.Vertex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Removes the quads of a part that can't be seen: faces with no area, faces of uv mapped boxes whose texture has no area (which is how a face is left out
+ * of a box), boxes inside another box, and faces lying inside or against another box. Boxes only hide each other if they have the same sizeAdd, since a
+ * bigger one is usually a see-through layer over the other. Everything is compared in the space of the part, so nothing is hidden across parts.
+ */
+class CemMeshOptimizer{
+	/** Whether hidden faces are removed, which is off by default since boxes with see-through textures don't hide what's behind them */
+	static boolean isEnabled(){
+		return CemConfigFairy.getConfig() != null && CemConfigFairy.getConfig().removeHiddenFaces();
+	}
+	
+	/** Removes the hidden quads from {@code cuboids}, the cuboids of one part, dropping cuboids that have none left; returns how many quads were removed */
+	static int optimize(List<Cuboid> cuboids){
+		int removed = 0;
+		float[][] bounds = new float[cuboids.size()][];
+		for(int i = 0; i < cuboids.size(); i++){
+			bounds[i] = (cuboids.get(i) instanceof CemCuboid)? bounds(cuboids.get(i).sides) : null;
+		}
+		ArrayList<Cuboid> kept = new ArrayList<>(cuboids.size());
+		for(int i = 0; i < cuboids.size(); i++){
+			Cuboid cuboid = cuboids.get(i);
+			if(bounds[i] == null){
+				kept.add(cuboid);
+				continue;
+			}
+			if(isEnclosed(cuboids, bounds, i)){
+				removed += cuboid.sides.length;
+				continue;
+			}
+			ArrayList<Quad> sides = new ArrayList<>(cuboid.sides.length);
+			for(Quad quad : cuboid.sides){
+				if(!isHidden(quad, ((CemCuboid) cuboid).isUvMapped(), cuboids, bounds, i)){
+					sides.add(quad);
+				}
+			}
+			if(sides.size() < cuboid.sides.length){
+				removed += cuboid.sides.length - sides.size();
+				cuboid.sides = sides.toArray(new Quad[0]);
+			}
+			if(cuboid.sides.length > 0){
+				kept.add(cuboid);
+			}
+		}
+		if(removed > 0){
+			cuboids.clear();
+			cuboids.addAll(kept);
+		}
+		return removed;
+	}
+	
+	/**
+	 * Removes the quads of {@code cuboids} that only show fully transparent pixels of {@code texture}, dropping cuboids that have none left; returns how many
+	 * quads were removed. Boxes with transparent faces don't hide anything, so this comes after {@link #optimize}.
+	 */
+	static int removeTransparent(List<Cuboid> cuboids, CemTextureAlpha texture){
+		int removed = 0;
+		ArrayList<Cuboid> kept = new ArrayList<>(cuboids.size());
+		for(Cuboid cuboid : cuboids){
+			ArrayList<Quad> sides = new ArrayList<>(cuboid.sides.length);
+			for(Quad quad : cuboid.sides){
+				if(!texture.isTransparent(quad)){
+					sides.add(quad);
+				}
+			}
+			if(sides.size() < cuboid.sides.length){
+				removed += cuboid.sides.length - sides.size();
+				cuboid.sides = sides.toArray(new Quad[0]);
+			}
+			if(cuboid.sides.length > 0){
+				kept.add(cuboid);
+			}
+		}
+		if(removed > 0){
+			cuboids.clear();
+			cuboids.addAll(kept);
+		}
+		return removed;
+	}
+	
+	/** Lowest x, y and z, then highest x, y and z of the vertices of {@code quads} */
+	private static float[] bounds(Quad[] quads){
+		float[] bounds = new float[]{Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+		                             Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY,
+		                             };
+		for(Quad quad : quads){
+			for(Vertex vertex : quad.vertices){
+				for(int axis = 0; axis < 3; axis++){
+					bounds[axis] = Math.min(bounds[axis], get(vertex, axis));
+					bounds[axis + 3] = Math.max(bounds[axis + 3], get(vertex, axis));
+				}
+			}
+		}
+		return bounds;
+	}
+	
+	private static float get(Vertex vertex, int axis){
+		return switch(axis){
+			case 0 -> vertex.pos.getX();
+			case 1 -> vertex.pos.getY();
+			default -> vertex.pos.getZ();
+		};
+	}
+	
+	private static boolean sameSizeAdd(List<Cuboid> cuboids, int a, int b){
+		return ((CemCuboid) cuboids.get(a)).getSizeAdd() == ((CemCuboid) cuboids.get(b)).getSizeAdd();
+	}
+	
+	/** Whether box {@code i} is inside another box; of two equal boxes, the first one stays */
+	private static boolean isEnclosed(List<Cuboid> cuboids, float[][] bounds, int i){
+		for(int j = 0; j < cuboids.size(); j++){
+			if(j != i && bounds[j] != null && sameSizeAdd(cuboids, i, j) && contains(bounds[j], bounds[i]) && (j < i || !contains(bounds[i], bounds[j]))){
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static boolean contains(float[] outer, float[] inner){
+		for(int axis = 0; axis < 3; axis++){
+			if(inner[axis] < outer[axis] || inner[axis + 3] > outer[axis + 3]){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/** Whether {@code quad} of box {@code i} has no area, or lies inside another box or against it while facing into it */
+	private static boolean isHidden(Quad quad, boolean uvMapped, List<Cuboid> cuboids, float[][] bounds, int i){
+		float[] face = bounds(new Quad[]{quad});
+		int normal = (quad.direction.getX() != 0)? 0 : (quad.direction.getY() != 0)? 1 : 2;
+		boolean positive = ((normal == 0)? quad.direction.getX() : (normal == 1)? quad.direction.getY() : quad.direction.getZ()) > 0;
+		int u = (normal + 1) % 3;
+		int v = (normal + 2) % 3;
+		if(face[u] == face[u + 3] || face[v] == face[v + 3]){
+			return true;
+		}
+		if(uvMapped){
+			float minU = Float.POSITIVE_INFINITY, maxU = Float.NEGATIVE_INFINITY, minV = Float.POSITIVE_INFINITY, maxV = Float.NEGATIVE_INFINITY;
+			for(Vertex vertex : quad.vertices){
+				minU = Math.min(minU, vertex.u);
+				maxU = Math.max(maxU, vertex.u);
+				minV = Math.min(minV, vertex.v);
+				maxV = Math.max(maxV, vertex.v);
+			}
+			if(minU == maxU || minV == maxV){
+				return true;
+			}
+		}
+		float plane = face[normal];
+		for(int j = 0; j < cuboids.size(); j++){
+			float[] box = bounds[j];
+			if(j == i || box == null || !sameSizeAdd(cuboids, i, j)){
+				continue;
+			}
+			if(face[u] < box[u] || face[u + 3] > box[u + 3] || face[v] < box[v] || face[v + 3] > box[v + 3]){
+				continue;
+			}
+			//a face on the far side of the box faces away from it, and so is still seen
+			if(positive? (box[normal] <= plane && plane < box[normal + 3]) : (box[normal] < plane && plane <= box[normal + 3])){
+				return true;
+			}
+		}
+		return false;
+	}
+}
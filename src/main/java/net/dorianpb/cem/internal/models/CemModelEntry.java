@@ -10,20 +10,22 @@ import net.minecraft.client.model.ModelTransform;
 import net.minecraft.client.render.VertexConsumer;
 import net.minecraft.client.util.math.MatrixStack;
 import net.minecraft.util.math.Direction;
+import net.minecraft.util.math.Vec3f;
 
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
+import java.util.Objects;
 
 public class CemModelEntry{
-	private final String                                    id;
-	private final String                                    part;
-	private final HashMap<ArrayList<String>, CemModelEntry> children;
-	private final CemModelPart                              model;
-	private final float[]                                   translates;
-	private final float[]                                   rotates;
-	private final boolean[]                                 invertAxis;
+	private final String                   id;
+	private final String                   part;
+	private final ArrayList<CemModelEntry> children;
+	private final CemModelPart             model;
+	private final float[]                  translates;
+	private final float[]                  rotates;
+	private final boolean[]                invertAxis;
+	private       int                      index; //position in the registry, see CemModelRegistry#getPart(int)
 	
 	
 	CemModelEntry(JemModel file, int textureWidth, int textureHeight){
@@ -40,7 +42,7 @@ public class CemModelEntry{
 	private CemModelEntry(String part, JpmFile data, float[] parents, int gen, float scale, int textureWidth, int textureHeight){
 		this.id = data.getId();
 		this.part = part;
-		this.children = new HashMap<>();
+		this.children = new ArrayList<>();
 		this.invertAxis = data.getInvertAxis();
 		this.translates = new float[]{(data.getTranslate().get(0).floatValue()) * (this.invertAxis[0]? -1 : 1),
 		                              (data.getTranslate().get(1).floatValue()) * (this.invertAxis[1]? -1 : 1),
@@ -66,6 +68,20 @@ public class CemModelEntry{
 		//END CHILD INIT
 	}
 	
+	/** Copies the part and its children for another registry, sharing the cuboids; the copies end up with the same indices as the originals */
+	CemModelEntry(CemModelEntry entry){
+		this.id = entry.id;
+		this.part = entry.part;
+		this.children = new ArrayList<>();
+		this.invertAxis = entry.invertAxis;
+		this.translates = entry.translates.clone();
+		this.rotates = entry.rotates.clone();
+		this.model = new CemModelPart(entry.model);
+		for(CemModelEntry child : entry.children){
+			this.addChild(new CemModelEntry(child));
+		}
+	}
+	
 	private void initmodel(JpmFile data, float[] parents, int gen, float scale){
 		float[] pivot = new float[]{((gen == 0)
 		                             ? (parents[0] - (data.getTranslate().get(0).floatValue() * (this.invertAxis[0]? -1 : 1)))
@@ -142,16 +158,12 @@ public class CemModelEntry{
 	}
 	
 	private void addChild(CemModelEntry child){
-		ArrayList<String> key = new ArrayList<>(Collections.singletonList(child.getId()));
-		if(this.children.containsKey(key)){
-			throw new InvalidParameterException("Child " + key + " already exists for parent " + this.getId());
-		}
-		this.children.put(key, child);
-		for(ArrayList<String> refs : child.children.keySet()){
-			CemModelEntry val = child.children.get(refs);
-			refs.add(0, child.getId());
-			this.children.put(refs, val);
+		for(CemModelEntry sibling : this.children){
+			if(Objects.equals(sibling.getId(), child.getId())){
+				throw new InvalidParameterException("Child [" + child.getId() + "] already exists for parent " + this.getId());
+			}
 		}
+		this.children.add(child);
 		this.model.addChild(child.getId(), child.getModel());
 	}
 	
@@ -159,6 +171,15 @@ public class CemModelEntry{
 		return id;
 	}
 	
+	/** Position of the part in its registry, parts are numbered parent first in the order of the .jem file */
+	public int getIndex(){
+		return index;
+	}
+	
+	void setIndex(int index){
+		this.index = index;
+	}
+	
 	public CemModelPart getModel(){
 		return model;
 	}
@@ -199,7 +220,8 @@ public class CemModelEntry{
 		}
 	}
 	
-	HashMap<ArrayList<String>, CemModelEntry> getChildren(){
+	/** The direct children of this part */
+	ArrayList<CemModelEntry> getChildren(){
 		return this.children;
 	}
 	
@@ -209,6 +231,11 @@ public class CemModelEntry{
 		private final int                     textureWidth;
 		private final int                     textureHeight;
 		private       TransparentCemModelPart parent;
+		private       CemModelPart            owner; //the part this was last added to as a child
+		private       CemRenderPlan           plan; //made when the part is first rendered, see render()
+		private       int                     structure; //bumped whenever this part or one below it gets a child or is exposed
+		private       boolean                 animated; //an animation sets its transform
+		private       boolean                 exposed; //handed out by getChild or the registry, so anything might move it
 		
 		public CemModelPart(){
 			this(0, 0);
@@ -222,10 +249,22 @@ public class CemModelEntry{
 			this.rotation = new float[]{0, 0, 0};
 		}
 		
+		/** Copies everything but the children of {@code part}; cuboids never change once made, so they are shared */
+		CemModelPart(CemModelPart part){
+			this(part.textureWidth, part.textureHeight);
+			this.cuboids.addAll(part.cuboids);
+			this.copyTransform(part);
+			this.visible = part.visible;
+			System.arraycopy(part.scale, 0, this.scale, 0, this.scale.length);
+			System.arraycopy(part.rotation, 0, this.rotation, 0, this.rotation.length);
+		}
+		
 		public static CemModelPart of(ModelPart modelPart){
 			CemModelPart yeet = new CemModelPart();
 			for(String key : modelPart.children.keySet()){
-				yeet.children.put(key, of(modelPart.children.get(key)));
+				CemModelPart child = of(modelPart.children.get(key));
+				child.owner = yeet;
+				yeet.children.put(key, child);
 			}
 			yeet.cuboids.addAll(modelPart.cuboids);
 			yeet.copyTransform(modelPart);
@@ -343,12 +382,45 @@ public class CemModelEntry{
 			};
 		}
 		
+		/** The rotation set with {@link CemModelPart#setRotation(char, float)}, without the vanilla angle {@link CemModelPart#getRotation(char)} adds to it */
+		float getOwnRotation(char axis){
+			return switch(axis){
+				case 'x' -> this.rotation[0];
+				case 'y' -> this.rotation[1];
+				case 'z' -> this.rotation[2];
+				default -> throw new IllegalStateException("Unknown axis \"" + axis + "\"");
+			};
+		}
+		
+		/** The vanilla angle {@link CemModelPart#getRotation(char)} adds to {@link CemModelPart#getOwnRotation(char)} */
+		float getRotationOffset(char axis){
+			return switch(axis){
+				case 'x' -> (this.parent == null)? this.pitch : parent.pitch;
+				case 'y' -> (this.parent == null)? this.yaw : parent.yaw;
+				case 'z' -> (this.parent == null)? this.roll : parent.roll;
+				default -> throw new IllegalStateException("Unknown axis \"" + axis + "\"");
+			};
+		}
+		
+		/** Whether {@link CemModelPart#setRotation(char, float)} leaves the vanilla angle alone, as it belongs to a transparent parent */
+		boolean hasTransparentParent(){
+			return this.parent != null;
+		}
+		
 		public void addChild(String name, ModelPart modelPart){
 			this.children.put(name, modelPart);
+			if(modelPart instanceof CemModelPart cemModelPart){
+				cemModelPart.owner = this;
+			}
+			this.structureChanged();
 		}
 		
 		public void inflate(float scale){
 			this.cuboids.replaceAll(cuboid -> ((CemCuboid) cuboid).inflate(scale));
+			//inflated cuboids have all their faces again; growing every box by the same amount keeps hidden faces hidden
+			if(CemMeshOptimizer.isEnabled()){
+				CemMeshOptimizer.optimize(this.cuboids);
+			}
 			for(ModelPart child : this.children.values()){
 				((CemModelPart) child).inflate(scale);
 			}
@@ -359,18 +431,59 @@ public class CemModelEntry{
 		public ModelPart getChild(String name){
 			ModelPart child = this.children.get(name);
 			if(child == null){
-				this.children.put(name, new CemModelPart());
+				this.addChild(name, new CemModelPart());
 				return this.getChild(name);
 			}
 			else{
+				if(child instanceof CemModelPart cemModelPart){
+					cemModelPart.expose();
+				}
 				return super.getChild(name);
 			}
 		}
 		
+		void setAnimated(){
+			this.animated = true;
+		}
+		
+		/** Called when the part is handed out, it can't be baked from then on, see {@link CemModelPart#isFixed()} */
+		void expose(){
+			if(!this.exposed){
+				this.exposed = true;
+				this.structureChanged();
+			}
+		}
+		
+		/**
+		 * Makes the plans of this part and of every part above it outdated, as what they render has changed. Only the tree the part was last added to is
+		 * told, plans of other trees the part was added to before keep rendering it the way they did.
+		 */
+		private void structureChanged(){
+			for(CemModelPart part = this; part != null; part = part.owner){
+				part.structure++;
+			}
+		}
+		
+		/** Changes whenever the part or any part below it gets a child or is exposed, see {@link CemRenderPlan#isValid()} */
+		int getStructure(){
+			return this.structure;
+		}
+		
+		/**
+		 * Whether the transform and visibility of this part can't change: no animation sets it, vanilla angles aren't handed to it by a transparent part, and
+		 * neither vanilla code nor anything else has been handed the part to change it
+		 */
+		boolean isFixed(){
+			return !this.animated && !this.exposed && this.parent == null;
+		}
+		
+		/** Renders the whole tree below this part in one go, see {@link CemRenderPlan} */
 		@Override
 		public void render(MatrixStack matrices, VertexConsumer vertices, int light, int overlay, float red, float green, float blue, float alpha){
-			matrices.scale(scale[0], scale[1], scale[2]);
-			super.render(matrices, vertices, light, overlay, red, green, blue, alpha);
+			if(this.plan == null || !this.plan.isValid()){
+				this.plan = new CemRenderPlan(this);
+			}
+			this.plan.render(matrices, vertices, light, overlay, red, green, blue, alpha);
 		}
 		
 		@Override
@@ -384,6 +497,50 @@ public class CemModelEntry{
 			this.roll -= this.rotation[2];
 		}
 		
+		/** Applies the scale of this part, unless it is 1 anyway */
+		void scale(MatrixStack matrices){
+			if(this.isScaled()){
+				matrices.scale(this.scale[0], this.scale[1], this.scale[2]);
+			}
+		}
+		
+		/** Same as {@link CemModelPart#rotate(MatrixStack)} with the given vanilla angles, but without translating by a pivot of 0 */
+		void rotate(MatrixStack matrices, float pitch, float yaw, float roll){
+			translate(matrices, this.pivotX, this.pivotY, this.pivotZ);
+			this.turn(matrices, pitch, yaw, roll);
+		}
+		
+		/** The rotating half of {@link CemModelPart#rotate(MatrixStack, float, float, float)}, for when the pivot has been translated by already */
+		void turn(MatrixStack matrices, float pitch, float yaw, float roll){
+			pitch += this.rotation[0];
+			yaw += this.rotation[1];
+			roll += this.rotation[2];
+			if(roll != 0){
+				matrices.multiply(Vec3f.POSITIVE_Z.getRadialQuaternion(roll));
+			}
+			if(yaw != 0){
+				matrices.multiply(Vec3f.POSITIVE_Y.getRadialQuaternion(yaw));
+			}
+			if(pitch != 0){
+				matrices.multiply(Vec3f.POSITIVE_X.getRadialQuaternion(pitch));
+			}
+		}
+		
+		/** Translates by a pivot, unless it is 0 */
+		static void translate(MatrixStack matrices, float pivotX, float pivotY, float pivotZ){
+			if(pivotX != 0 || pivotY != 0 || pivotZ != 0){
+				matrices.translate(pivotX / 16.0F, pivotY / 16.0F, pivotZ / 16.0F);
+			}
+		}
+		
+		boolean isScaled(){
+			return this.scale[0] != 1 || this.scale[1] != 1 || this.scale[2] != 1;
+		}
+		
+		boolean isRotated(){
+			return this.rotation[0] != 0 || this.rotation[1] != 0 || this.rotation[2] != 0;
+		}
+		
 		private void setParent(TransparentCemModelPart transparentCemModelPart){
 			this.parent = transparentCemModelPart;
 		}
@@ -413,18 +570,37 @@ public class CemModelEntry{
 			return part.getChild(name);
 		}
 		
-		@Override
-		public void render(MatrixStack matrices, VertexConsumer vertices, int light, int overlay, float red, float green, float blue, float alpha){
-			var rotations = this.getTransform();
-			this.part.pitch = rotations.pitch;
-			this.part.yaw = rotations.yaw;
-			this.part.roll = rotations.roll;
-			this.pitch = 0;
-			this.yaw = 0;
-			this.roll = 0;
-			super.render(matrices, vertices, light, overlay, red, green, blue, alpha);
-			this.setTransform(rotations);
-			
+		/** Hands the vanilla angles of this part to the part it wraps, which is rendered with them while this part itself isn't rotated by them */
+		void passAngles(){
+			this.part.pitch = this.pitch;
+			this.part.yaw = this.yaw;
+			this.part.roll = this.roll;
+		}
+		
+		CemModelPart getPart(){
+			return this.part;
+		}
+		
+		/** Whether the part this wraps is the only child of this part, so that both can share one matrix, see {@link TransparentCemModelPart#fold} */
+		boolean isFoldable(){
+			return this.children.size() == 1 && this.children.get("my_precious") == this.part && this.part.getClass() == CemModelPart.class;
+		}
+		
+		/**
+		 * Applies the transforms of this part and then those of the part it wraps, the way rendering both would, but in the one matrix of this part. The
+		 * wrapped part is its only child, so its own matrix would be popped together with this one. Unless something is scaled or rotated in between, the vanilla
+		 * pivot of this part and the pivot correction of the wrapped part are translated by at once.
+		 */
+		void fold(MatrixStack matrices){
+			if(!this.isRotated() && !this.part.isScaled()){
+				translate(matrices, this.pivotX + this.part.pivotX, this.pivotY + this.part.pivotY, this.pivotZ + this.part.pivotZ);
+			}
+			else{
+				this.rotate(matrices, 0, 0, 0);
+				this.part.scale(matrices);
+				translate(matrices, this.part.pivotX, this.part.pivotY, this.part.pivotZ);
+			}
+			this.part.turn(matrices, this.pitch, this.yaw, this.roll);
 		}
 	}
 	
@@ -533,6 +709,16 @@ public class CemModelEntry{
 			       );
 		}
 		
+		/** How much the cuboid is grown by on every side: its sizeAdd, plus the scale of any {@link #inflate} */
+		float getSizeAdd(){
+			return this.params.getExtraX();
+		}
+		
+		/** Whether the texture of every face was given on its own, rather than unfolded from a texture offset */
+		boolean isUvMapped(){
+			return this.params instanceof CemCuboidUvParams;
+		}
+		
 		private abstract static class CemCuboidParams{
 			private final float x, y, z, sizeX, sizeY, sizeZ, extraX, extraY, extraZ;
 			private final boolean mirror;
@@ -1,14 +1,19 @@
 package net.dorianpb.cem.internal.models;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import net.dorianpb.cem.internal.api.CemModel.VanillaReferenceModelFactory;
 import net.dorianpb.cem.internal.config.CemConfigFairy;
 import net.dorianpb.cem.internal.file.JemFile;
 import net.dorianpb.cem.internal.file.JemFile.JemModel;
 import net.dorianpb.cem.internal.models.CemModelEntry.CemModelPart;
 import net.dorianpb.cem.internal.models.CemModelEntry.TransparentCemModelPart;
+import net.dorianpb.cem.internal.util.CemAnimationCache;
+import net.dorianpb.cem.internal.util.CemExpressionGraph;
 import net.dorianpb.cem.internal.util.CemFairy;
-import net.dorianpb.cem.internal.util.CemStringParser;
+import net.dorianpb.cem.internal.util.CemProfiler;
+import net.dorianpb.cem.internal.util.CemStringParser.DexEnvironment;
 import net.dorianpb.cem.internal.util.CemStringParser.ParsedExpression;
+import net.dorianpb.cem.internal.util.CemVariableStore;
 import net.minecraft.client.model.ModelPart;
 import net.minecraft.client.model.ModelTransform;
 import net.minecraft.entity.LivingEntity;
@@ -16,41 +21,284 @@ import net.minecraft.util.Identifier;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.function.Function;
 
 /** Contains all of the data for the CEM model */
 public class CemModelRegistry{
-	private final HashMap<ArrayList<String>, CemModelEntry> database; //actual storage of cemModelEntries
-	private final ArrayList<CemAnimation>                   animations; //actual storage of all the cemAnimations
-	private final HashMap<String, CemModelEntry>            partNameRefs; //used to refer to parts by their model names rather than id names
-	private final JemFile                                   file; //stores the jemFile
-	private       CemModelPart                              prePreparedPart; //stores output of prepRootPart
+	private final ArrayList<CemModelEntry>                      parts; //actual storage of cemModelEntries, by index
+	private final IntArrayList                                  parents; //index of the parent of every part, -1 for top level parts
+	private final IntArrayList                                  depths; //number of parts on the path to every part, including itself
+	private final ArrayList<String>                             refs; //id of every part, or the part name for top level parts without one
+	private final HashMap<String, IntArrayList>                 ids; //indices of the parts with every ref, shallowest first, used by findChild
+	private final ArrayList<CemAnimation>                       animations; //actual storage of all the cemAnimations
+	private final HashMap<String, CemModelEntry>                partNameRefs; //used to refer to parts by their model names rather than id names
+	private final JemFile                                       file; //stores the jemFile
+	private final DexEnvironment                                environment; //stores the entity being animated and the values of shared subexpressions
+	private final CemAnimationCache                             cache; //results of animations whose inputs haven't changed
+	private final CemVariableStore                              variables; //values of var.* and varb.* for every entity
+	private final ArrayList<Runnable>                           log; //messages from loading the model, kept until flushLog()
+	private final int[]                                         batchParts; //indices of the parts animations read or set, null if the model can't be batched
+	private final int[]                                         batchReads; //values of each of the batchParts that are read before being set, see CemAnimationBatch
+	private       CemAnimationBatch                             batch; //visible entities of this frame, made once batching is first used
+	private       CemModelPart                                  prePreparedPart; //stores output of prepRootPart
 	
 	public CemModelRegistry(JemFile file){
-		this.database = new HashMap<>();
+		this(file, true);
+	}
+	
+	/**
+	 * @param flushLog Whether to log the problems found while loading right away; pass false when building several models in parallel, and call
+	 *                 {@link CemModelRegistry#flushLog()} for each of them in a fixed order afterwards
+	 */
+	public CemModelRegistry(JemFile file, boolean flushLog){
+		this.parts = new ArrayList<>();
+		this.parents = new IntArrayList();
+		this.depths = new IntArrayList();
+		this.refs = new ArrayList<>();
+		this.ids = new HashMap<>();
+		this.log = new ArrayList<>();
 		this.animations = new ArrayList<>();
 		this.partNameRefs = new HashMap<>();
+		this.variables = new CemVariableStore();
 		this.file = file;
 		//models
 		for(String part : this.file.getModelList()){
 			JemModel data = this.file.getModel(part);
-			this.addEntry(new CemModelEntry(data, file.getTextureSize().get(0).intValue(), file.getTextureSize().get(1).intValue()), new ArrayList<>());
+			this.addEntry(new CemModelEntry(data, file.getTextureSize().get(0).intValue(), file.getTextureSize().get(1).intValue()), -1);
+		}
+		//hidden faces
+		if(CemMeshOptimizer.isEnabled()){
+			int quads = 0;
+			for(CemModelEntry entry : this.parts){
+				quads += CemMeshOptimizer.optimize(entry.getModel().cuboids);
+			}
+			if(quads > 0){
+				int removed = quads;
+				this.log.add(() -> CemFairy.getLogger().info("Removed " + removed + " hidden quads from \"" + file.getPath() + "\""));
+			}
+		}
+		//transparent faces, after the hidden ones as those are found from the whole boxes
+		if(file.getTextureAlpha() != null){
+			int quads = 0;
+			for(CemModelEntry entry : this.parts){
+				quads += CemMeshOptimizer.removeTransparent(entry.getModel().cuboids, file.getTextureAlpha());
+			}
+			if(quads > 0){
+				int removed = quads;
+				this.log.add(() -> CemFairy.getLogger().info("Removed " + removed + " transparent quads from \"" + file.getPath() + "\""));
+			}
 		}
 		//animations
+		CemExpressionGraph graph = new CemExpressionGraph();
 		for(String part : this.file.getModelList()){
 			JemModel data = this.file.getModel(part);
 			for(String key : data.getAnimations().keySet()){
 				try{
-					animations.add(new CemAnimation(this.findChild(key.substring(0, key.indexOf(".")), this.findChild(part)),
-					                                data.getAnimations().get(key),
-					                                key.substring(key.indexOf(".") + 1),
-					                                this
-					));
+					String target = key.substring(0, key.indexOf("."));
+					if(target.equals("var") || target.equals("varb")){
+						animations.add(new CemAnimation(key, data.getAnimations().get(key), this.findChild(part), this, graph));
+					}
+					else{
+						animations.add(new CemAnimation(this.findChild(target, this.findChild(part)),
+						                                data.getAnimations().get(key),
+						                                key.substring(key.indexOf(".") + 1),
+						                                this,
+						                                graph
+						));
+					}
 				} catch(Exception e){
-					CemFairy.getLogger().error("Error applying animation \"" + data.getAnimations().get(key) + "\" in \"" + file.getPath() + "\":");
-					CemFairy.getLogger().error(e.getMessage());
+					this.log.add(() -> {
+						CemFairy.getLogger().error("Error applying animation \"" + data.getAnimations().get(key) + "\" in \"" + file.getPath() + "\":");
+						CemFairy.getLogger().error(e.getMessage());
+					});
+				}
+			}
+		}
+		this.schedule(graph);
+		this.batchParts = this.findBatchParts(graph);
+		this.batchReads = (this.batchParts == null)? null : this.findBatchReads(graph);
+		graph.build();
+		long[] inputs = new long[this.animations.size()];
+		for(int i = 0; i < this.animations.size(); i++){
+			this.animations.get(i).link(graph, i, this.file.getPath());
+			inputs[i] = graph.getInputs(this.animations.get(i).handle);
+		}
+		this.environment = graph.createEnvironment();
+		this.cache = new CemAnimationCache(inputs);
+		CemProfiler.register(file.getPath(), this.cache);
+		if(graph.getRemoved() > 0){
+			this.log.add(() -> CemFairy.getLogger().info("Removed " + graph.getRemoved() + " redundant animation nodes from \"" + file.getPath() + "\""));
+		}
+		if(graph.getSaved() > 0){
+			this.log.add(() -> CemFairy.getLogger().info("Sharing " + graph.getSlots() + " subexpressions saves " + graph.getSaved() + " evaluations per frame in \"" + file.getPath() + "\""));
+		}
+		if(flushLog){
+			this.flushLog();
+		}
+	}
+	
+	/**
+	 * Makes a registry that shares everything that doesn't change with {@code prototype}: the cuboids of the parts, and the parsed and compiled animations,
+	 * which get pointed to the copied parts. Only the parts, their pose and what the animations remember between frames belong to the new registry.
+	 * @see CemModelTemplate
+	 */
+	CemModelRegistry(CemModelRegistry prototype){
+		this.parts = new ArrayList<>();
+		this.parents = new IntArrayList();
+		this.depths = new IntArrayList();
+		this.refs = new ArrayList<>();
+		this.ids = new HashMap<>();
+		this.log = new ArrayList<>();
+		this.animations = new ArrayList<>();
+		this.partNameRefs = new HashMap<>();
+		this.variables = new CemVariableStore(prototype.variables);
+		this.file = prototype.file;
+		for(int i = 0; i < prototype.parts.size(); i++){
+			if(prototype.parents.getInt(i) < 0){
+				this.addEntry(new CemModelEntry(prototype.parts.get(i)), -1);
+			}
+		}
+		for(CemAnimation animation : prototype.animations){
+			this.animations.add(new CemAnimation(animation, (part) -> this.getPart(part.getIndex())));
+		}
+		this.environment = new DexEnvironment(prototype.environment);
+		this.cache = new CemAnimationCache(prototype.cache);
+		this.batchParts = prototype.batchParts;
+		this.batchReads = prototype.batchReads;
+	}
+	
+	/** Logs the problems found while loading the model, see {@link CemModelRegistry#CemModelRegistry(JemFile, boolean)} */
+	public void flushLog(){
+		this.log.forEach(Runnable::run);
+		this.log.clear();
+	}
+	
+	/**
+	 * Sorts the animations so that every animation runs after the ones setting the part values and variables it reads, rather than seeing what they were set to
+	 * in the last frame. Animations that don't depend on each other stay in the order of the file. Animations that depend on each other in a loop can't be
+	 * sorted, so they are left out with an error; those that merely depend on a loop still run, seeing what the parts of the loop were loaded as.
+	 */
+	private void schedule(CemExpressionGraph graph){
+		int size = this.animations.size();
+		ArrayList<ArrayList<Integer>> dependents = new ArrayList<>();
+		int[] pending = new int[size];
+		for(int i = 0; i < size; i++){
+			dependents.add(new ArrayList<>());
+			for(int j = 0; j < size; j++){
+				//an animation reading its own target sees the last frame's value, that's what it's for
+				if(i != j && this.animations.get(i).isReadBy(graph, this.animations.get(j))){
+					dependents.get(i).add(j);
+					pending[j]++;
+				}
+			}
+		}
+		PriorityQueue<Integer> ready = new PriorityQueue<>();
+		for(int i = 0; i < size; i++){
+			if(pending[i] == 0){
+				ready.add(i);
+			}
+		}
+		ArrayList<CemAnimation> schedule = new ArrayList<>();
+		boolean[] done = new boolean[size];
+		StringBuilder loop = new StringBuilder();
+		while(true){
+			while(!ready.isEmpty()){
+				int next = ready.poll();
+				done[next] = true;
+				schedule.add(this.animations.get(next));
+				for(int dependent : dependents.get(next)){
+					if(--pending[dependent] == 0){
+						ready.add(dependent);
+					}
 				}
 			}
+			//everything left waits on a loop, which is only broken by leaving out all of the animations in it
+			ArrayList<Integer> looped = new ArrayList<>();
+			for(int i = 0; i < size; i++){
+				if(!done[i] && reaches(dependents, done, i, i)){
+					looped.add(i);
+				}
+			}
+			if(looped.isEmpty()){
+				break;
+			}
+			for(int i : looped){
+				done[i] = true;
+				loop.append((loop.length() == 0)? "" : ", ").append(this.animations.get(i).getName());
+			}
+			for(int i : looped){
+				for(int dependent : dependents.get(i)){
+					if(!done[dependent] && --pending[dependent] == 0){
+						ready.add(dependent);
+					}
+				}
+			}
+		}
+		if(loop.length() > 0){
+			this.log.add(() -> CemFairy.getLogger().error("Animations in \"" + this.file.getPath() + "\" depend on each other in a loop, leaving them out: " + loop));
+		}
+		this.animations.clear();
+		this.animations.addAll(schedule);
+	}
+	
+	/** Whether {@code to} depends on {@code from} through animations that aren't done, see {@link CemModelRegistry#schedule} */
+	private static boolean reaches(ArrayList<ArrayList<Integer>> dependents, boolean[] done, int from, int to){
+		boolean[] visited = new boolean[done.length];
+		ArrayDeque<Integer> queue = new ArrayDeque<>(dependents.get(from));
+		while(!queue.isEmpty()){
+			int next = queue.poll();
+			if(next == to){
+				return true;
+			}
+			if(!done[next] && !visited[next]){
+				visited[next] = true;
+				queue.addAll(dependents.get(next));
+			}
 		}
+		return false;
+	}
+	
+	/**
+	 * Variables keep their values between frames, and running the animations of a batch changes them before the entities are drawn, so models setting any
+	 * can't be batched; neither can models without animations, there is nothing to run
+	 * @return Indices of the parts the animations read or set, null if the model can't be batched
+	 */
+	private int[] findBatchParts(CemExpressionGraph graph){
+		if(this.animations.isEmpty()){
+			return null;
+		}
+		Set<CemModelEntry> parts = new LinkedHashSet<>();
+		for(CemAnimation animation : this.animations){
+			if(animation.target == null){
+				return null;
+			}
+			parts.add(animation.target);
+			parts.addAll(graph.getReadParts(animation.handle).keySet());
+		}
+		return parts.stream().mapToInt(CemModelEntry::getIndex).toArray();
+	}
+	
+	/**
+	 * The values of a part the animations read before setting them, which are all that have to be the same for the results of a batch to fit, see
+	 * {@link CemAnimationBatch#find}. The vanilla angle is counted as read along with the rotation it is added to.
+	 * @return Bits of the values of every one of the {@link #batchParts}, in the order of {@link CemAnimationBatch}
+	 */
+	private int[] findBatchReads(CemExpressionGraph graph){
+		HashMap<CemModelEntry, Integer> written = new HashMap<>();
+		HashMap<CemModelEntry, Integer> reads = new HashMap<>();
+		for(CemAnimation animation : this.animations){
+			graph.getReadParts(animation.handle).forEach((part, values) -> {
+				int rows = values & ~written.getOrDefault(part, 0);
+				for(int axis = 0; axis < 3; axis++){
+					if((values & (1 << (3 + axis))) != 0){
+						rows |= 1 << (9 + axis);
+					}
+				}
+				reads.merge(part, rows, (a, b) -> a | b);
+			});
+			written.merge(animation.target, 1 << animation.value, (a, b) -> a | b);
+		}
+		return Arrays.stream(this.batchParts).map((index) -> reads.getOrDefault(this.getPart(index), 0)).toArray();
 	}
 	
 	/** Retrieves the model part created by the last invocation of {@link CemModelRegistry#prepRootPart(Map, Map, VanillaReferenceModelFactory, Map, Float)} */
@@ -109,16 +357,14 @@ public class CemModelRegistry{
 				this.prepChild(parent, child);
 			}
 		}
+		CemFamilyTree index = CemFamilyTree.of(familyTree);
 		CemModelPart newRoot = new CemModelPart();
-		Set<String> partList = new LinkedHashSet<>();
-		for(int i = familyTree.keySet().size() - 1; i >= 0; i--){
-			partList.add((String) familyTree.keySet().toArray()[i]);
-		}
+		Set<String> partList = new LinkedHashSet<>(index.getParents());
 		partList.addAll(this.partNameRefs.keySet());
 		for(String partName : partList){
 			CemModelEntry entry = this.getEntryByPartName(partName);
 			if(entry != null){
-				this.getParent(partNameMap, familyTree, newRoot, partName).addChild(partNameMap.getOrDefault(partName, partName), entry.getModel());
+				this.getParent(partNameMap, index, newRoot, partName).addChild(partNameMap.getOrDefault(partName, partName), entry.getModel());
 			}
 		}
 		if(inflate != null){
@@ -130,7 +376,7 @@ public class CemModelRegistry{
 			if(fixes != null){
 				fixes.forEach(((key, modelTransform) -> newFixes.put(partNameMap.getOrDefault(key, key), modelTransform)));
 			}
-			this.makePartTransparent(newRoot, vanillaReferenceModelFactory.get(), newFixes);
+			this.makePartTransparent(newRoot, CemReferenceModel.get(vanillaReferenceModelFactory), newFixes);
 		}
 		this.prePreparedPart = newRoot;
 		return newRoot;
@@ -153,37 +399,12 @@ public class CemModelRegistry{
 		return this.prepRootPart(partNameMap, new HashMap<>(), vanillaReferenceModelFactory, fixes, inflate);
 	}
 	
-	private CemModelPart getParent(Map<String, String> partNameMap, Map<String, List<String>> familyTree, ModelPart root, String name){
-		ArrayList<String> names = new ArrayList<>();
-		while(true){
-			name = this.findParent(familyTree, name);
-			if(name != null){
-				names.add(name);
-			}
-			else{
-				break;
-			}
-		}
-		if(names.size() == 0){
-			return (CemModelPart) root;
-		}
-		else{
-			ModelPart part = root;
-			for(int i = names.size() - 1; i >= 0; i--){
-				part = part.getChild(partNameMap.getOrDefault(names.get(i), names.get(i)));
-			}
-			return (CemModelPart) part;
+	private CemModelPart getParent(Map<String, String> partNameMap, CemFamilyTree familyTree, CemModelPart root, String name){
+		ModelPart part = root;
+		for(String ancestor : familyTree.getAncestors(name)){
+			part = part.getChild(partNameMap.getOrDefault(ancestor, ancestor));
 		}
-		
-	}
-	
-	private String findParent(Map<String, List<String>> familyTree, String name){
-		for(String key : familyTree.keySet()){
-			if(familyTree.get(key).contains(name)){
-				return key;
-			}
-		}
-		return null;
+		return (CemModelPart) part;
 	}
 	
 	private void makePartTransparent(CemModelPart target, ModelPart vanillaModel, @Nullable Map<String, ModelTransform> fixes){
@@ -231,32 +452,48 @@ public class CemModelRegistry{
 	
 	public CemModelEntry getEntryByPartName(String key){
 		if(this.partNameRefs.containsKey(key)){
-			return this.partNameRefs.get(key);
+			CemModelEntry entry = this.partNameRefs.get(key);
+			entry.getModel().expose();
+			return entry;
 		}
 		CemFairy.getLogger().warn("Model part " + key + " isn't specified in " + this.file.getPath());
 		return null;
 	}
 	
-	private void addEntry(CemModelEntry entry, ArrayList<String> parentRefmap){
-		ArrayList<String> refmap;
-		if(parentRefmap != null && parentRefmap.size() > 0){
-			@SuppressWarnings("unchecked")
-			ArrayList<String> temp = (ArrayList<String>) parentRefmap.clone();
-			refmap = temp;
+	/** Numbers the part and its children, parent first */
+	private void addEntry(CemModelEntry entry, int parent){
+		int index = this.parts.size();
+		int depth = (parent < 0)? 1 : this.depths.getInt(parent) + 1;
+		String ref = (entry.getId() == null)? entry.getPart() : entry.getId();
+		if(parent < 0 && entry.getPart() != null){
+			this.partNameRefs.put(entry.getPart(), entry);
 		}
-		else{
-			refmap = new ArrayList<>();
-			if(entry.getPart() != null){
-				this.partNameRefs.put(entry.getPart(), entry);
-			}
+		entry.setIndex(index);
+		this.parts.add(entry);
+		this.parents.add(parent);
+		this.depths.add(depth);
+		this.refs.add(ref);
+		IntArrayList sameRef = this.ids.computeIfAbsent(ref, (key) -> new IntArrayList());
+		int position = sameRef.size();
+		while(position > 0 && this.depths.getInt(sameRef.getInt(position - 1)) > depth){
+			position--;
 		}
-		refmap.add((entry.getId() == null)? entry.getPart() : entry.getId());
-		this.database.put(refmap, entry);
-		for(CemModelEntry child : entry.getChildren().values()){
-			this.addEntry(child, refmap);
+		sameRef.add(position, index);
+		for(CemModelEntry child : entry.getChildren()){
+			this.addEntry(child, index);
 		}
 	}
 	
+	/** The refs of the parts on the path to a part, starting at the top level */
+	private ArrayList<String> getRefmap(int index){
+		ArrayList<String> refmap = new ArrayList<>(this.depths.getInt(index));
+		for(int i = index; i >= 0; i = this.parents.getInt(i)){
+			refmap.add(this.refs.get(i));
+		}
+		Collections.reverse(refmap);
+		return refmap;
+	}
+	
 	/**
 	 * Test if the user specified a special texture to use
 	 * @return If a texture is specified in the .jem file
@@ -291,23 +528,73 @@ public class CemModelRegistry{
 		return this.file.getShadowsize();
 	}
 	
+	/**
+	 * Animates the model for an entity. While {@link CemAnimationBatch#isCollecting() collecting}, the entity is only added to the batch of this model instead,
+	 * and when it is drawn the results of the batch are used if they still fit.
+	 */
 	public void applyAnimations(float limbAngle, float limbDistance, float age, float head_yaw, float head_pitch, LivingEntity livingEntity){
+		if(CemAnimationBatch.isCollecting()){
+			if(this.batchParts != null && livingEntity != null){
+				if(this.batch == null){
+					CemModelEntry[] parts = Arrays.stream(this.batchParts).mapToObj(this::getPart).toArray(CemModelEntry[]::new);
+					this.batch = new CemAnimationBatch(this, this.cache, this.environment, parts, this.batchReads, this.animations.size());
+				}
+				this.batch.add(limbAngle, limbDistance, age, head_yaw, head_pitch, livingEntity);
+			}
+			return;
+		}
+		int index = (this.batch == null)? -1 : this.batch.find(limbAngle, limbDistance, age, head_yaw, head_pitch, livingEntity);
+		if(index >= 0){
+			for(CemAnimation anim : this.animations){
+				anim.set(this.batch.getResults(anim.index)[index]);
+			}
+			return;
+		}
+		this.environment.setEnv(limbAngle, limbDistance, age, head_yaw, head_pitch, livingEntity, this);
+		this.cache.begin(this.environment, livingEntity);
+		for(CemAnimation anim : this.animations){
+			anim.apply(this.environment, this.cache);
+		}
+	}
+	
+	/** Runs every animation over all entities of the batch, one animation at a time; the model itself is left alone */
+	void evaluate(CemAnimationBatch batch){
+		batch.reset();
 		for(CemAnimation anim : this.animations){
-			anim.apply(limbAngle, limbDistance, age, head_yaw, head_pitch, livingEntity);
+			anim.apply(batch, this.cache);
 		}
 	}
 	
+	/** The var.* and varb.* variables of this model, see {@link CemVariableStore} */
+	public CemVariableStore getVariables(){
+		return this.variables;
+	}
+	
+	/**
+	 * @return Where the part is in the model, this is the same for every registry made from the same .jem file
+	 */
+	public String getPath(CemModelEntry entry){
+		return String.join(":", this.getRefmap(entry.getIndex()));
+	}
+	
+	/** @see CemModelEntry#getIndex() */
+	public CemModelEntry getPart(int index){
+		return this.parts.get(index);
+	}
+	
+	public int getPartCount(){
+		return this.parts.size();
+	}
+	
 	public CemModelEntry findChild(String target, CemModelEntry parent){
 		CemModelEntry victim = null;
-		ArrayList<String> hit = null;
 		ArrayList<String> refmap = new ArrayList<>(Arrays.asList(target.split(":")));
 		if(refmap.size() == 1 && this.partNameRefs.containsKey(refmap.get(0))){
 			victim = this.partNameRefs.get(refmap.get(0));
-			return victim;
 		}
 		else if(parent != null && (refmap.get(0).equals("this") || refmap.get(0).equals("part"))){
 			if(refmap.size() == 1){
-				return parent;
+				victim = parent;
 			}
 			else{
 				StringBuilder newTarget = new StringBuilder();
@@ -319,48 +606,151 @@ public class CemModelRegistry{
 			}
 		}
 		else{
-			for(ArrayList<String> part : this.database.keySet()){
-				ArrayList<Integer> hello = new ArrayList<>();
-				for(String ref : refmap){
-					hello.add(part.indexOf(ref));
-				}
-				boolean hi = hello.size() != 1 || hello.get(0) > -1;
-				for(int i = 0; i < hello.size() - 1; i++){
-					hi = hi && hello.get(i) < hello.get(i + 1) && hello.get(i) > -1;
-				}
-				if(hi && (hit == null || part.size() < hit.size())){
-					hit = part;
+			//the shortest path with the ids in order ends in the last one, as the path of its parent doesn't contain it
+			IntArrayList candidates = this.ids.get(refmap.get(refmap.size() - 1));
+			if(candidates != null){
+				for(int candidate : candidates){
+					if(containsInOrder(this.getRefmap(candidate), refmap)){
+						victim = this.parts.get(candidate);
+						break;
+					}
 				}
-				victim = this.database.get(hit);
 			}
 		}
 		if(victim == null){
 			throw new NullPointerException("Model part " + target + " isn't specified in " + this.file.getPath());
 		}
+		victim.getModel().expose();
 		return victim;
 	}
 	
+	/** Whether every id of {@code refmap} is in {@code path}, each first showing up after the one before it */
+	private static boolean containsInOrder(ArrayList<String> path, ArrayList<String> refmap){
+		int last = -1;
+		for(String ref : refmap){
+			int index = path.indexOf(ref);
+			if(index <= last){
+				return false;
+			}
+			last = index;
+		}
+		return true;
+	}
+	
 	private CemModelEntry findChild(String target){
 		return this.findChild(target, null);
 	}
 	
 	private static class CemAnimation{
-		private final CemModelRegistry registry;
-		private final CemModelEntry    target;
-		private final ParsedExpression expression;
-		private final char             operation;
-		private final char             axis;
+		private final String            name;
+		private final CemModelEntry     target; //null for animations setting variables
+		private final int               handle;
+		private final char              operation; //t, r or s for parts, v for var.* and b for varb.*
+		private final char              axis;
+		private final int               value; //value of the part, or id of the variable
+		private       int               index;
+		private       ParsedExpression  expression;
+		private       CemProfiler.Entry profile;
 		
-		CemAnimation(CemModelEntry target, String expr, String var, CemModelRegistry registry){
+		CemAnimation(CemModelEntry target, String expr, String var, CemModelRegistry registry, CemExpressionGraph graph){
+			this.name = registry.getPath(target) + "." + var;
 			this.target = target;
-			this.registry = registry;
-			this.expression = CemStringParser.parse(expr, this.registry, this.target);
+			this.handle = graph.add(expr, registry, this.target);
 			this.operation = var.charAt(0);
 			this.axis = var.charAt(1);
+			if("trs".indexOf(this.operation) < 0 || "xyz".indexOf(this.axis) < 0){
+				throw new IllegalArgumentException("\"" + var + "\" isn't a part value that can be animated");
+			}
+			else if(graph.isBool(this.handle)){
+				throw new IllegalArgumentException("\"" + expr + "\" is a bool, but \"" + var + "\" needs a number");
+			}
+			this.value = "trs".indexOf(this.operation) * 3 + "xyz".indexOf(this.axis);
+			this.target.getModel().setAnimated();
+		}
+		
+		/** An animation setting a variable, {@code parent} is the part "this" refers to */
+		CemAnimation(String variable, String expr, CemModelEntry parent, CemModelRegistry registry, CemExpressionGraph graph){
+			this.name = variable;
+			this.target = null;
+			this.handle = graph.add(expr, registry, parent);
+			this.operation = variable.startsWith("varb.")? 'b' : 'v';
+			this.axis = 0;
+			String name = variable.substring(variable.indexOf(".") + 1);
+			if(graph.isBool(this.handle) != (this.operation == 'b')){
+				throw new IllegalArgumentException("\"" + expr + "\" is a " + (graph.isBool(this.handle)? "bool" : "number") + ", but \"" + variable + "\" isn't");
+			}
+			this.value = (this.operation == 'b')? registry.getVariables().getBool(name) : registry.getVariables().getFloat(name);
+		}
+		
+		/** Copies an animation for a registry made from the same file, {@code parts} maps the parts of the original registry to those of the new one */
+		CemAnimation(CemAnimation animation, Function<CemModelEntry, CemModelEntry> parts){
+			this.name = animation.name;
+			this.target = (animation.target == null)? null : parts.apply(animation.target);
+			if(this.target != null){
+				this.target.getModel().setAnimated();
+			}
+			this.handle = animation.handle;
+			this.operation = animation.operation;
+			this.axis = animation.axis;
+			this.value = animation.value;
+			this.index = animation.index;
+			this.expression = CemExpressionGraph.bind(animation.expression, parts);
+			this.profile = animation.profile;
+		}
+		
+		/** Whether {@code animation} reads what this animation sets */
+		boolean isReadBy(CemExpressionGraph graph, CemAnimation animation){
+			return switch(this.operation){
+				case 'b' -> graph.readsVariable(animation.handle, this.value, true);
+				case 'v' -> graph.readsVariable(animation.handle, this.value, false);
+				default -> graph.readsPart(animation.handle, this.target, this.value);
+			};
+		}
+		
+		String getName(){
+			return this.name;
+		}
+		
+		/** Picks up the finished expression once all the animations of the model have been added to the graph */
+		void link(CemExpressionGraph graph, int index, String file){
+			this.expression = graph.get(this.handle);
+			this.index = index;
+			this.profile = CemProfiler.get(file, this.name, this.expression);
+		}
+		
+		void apply(DexEnvironment environment, CemAnimationCache cache){
+			if(CemProfiler.isEnabled() && this.profile.sample()){
+				long start = System.nanoTime();
+				this.evaluate(environment, cache);
+				this.profile.record(System.nanoTime() - start);
+			}
+			else{
+				this.evaluate(environment, cache);
+			}
+		}
+		
+		/** Evaluates the animation for every entity of the batch, which only changes the poses kept by the batch */
+		void apply(CemAnimationBatch batch, CemAnimationCache cache){
+			long start = CemProfiler.isEnabled()? System.nanoTime() : 0;
+			float[] results = batch.getResults(this.index);
+			for(int i = 0; i < batch.size(); i++){
+				results[i] = cache.evaluate(this.index, this.expression, batch.getEnvironment(i), batch.getCursor(i));
+				batch.set(this.target, this.value, i, results[i]);
+			}
+			if(CemProfiler.isEnabled()){
+				this.profile.record(batch.size(), System.nanoTime() - start);
+			}
+		}
+		
+		private void evaluate(DexEnvironment environment, CemAnimationCache cache){
+			switch(this.operation){
+				case 'b' -> environment.setBoolVariable(this.value, this.expression.evalBool(environment));
+				case 'v' -> environment.setVariable(this.value, cache.evaluate(this.index, this.expression, environment));
+				default -> this.set(cache.evaluate(this.index, this.expression, environment));
+			}
 		}
 		
-		void apply(float limbAngle, float limbDistance, float age, float head_yaw, float head_pitch, LivingEntity livingEntity){
-			float val = this.expression.eval(limbAngle, limbDistance, age, head_yaw, head_pitch, livingEntity, this.registry);
+		private void set(float val){
 			switch(operation){
 				case 't' -> this.target.setTranslate(this.axis, val);
 				case 'r' -> this.target.getModel().setRotation(this.axis, val);
@@ -0,0 +1,33 @@
+package net.dorianpb.cem.internal.models;
+
+import net.dorianpb.cem.internal.file.JemFile;
+
+/**
+ * Everything about a .jem file that is the same for every model made from it: the cuboids of its parts and its parsed, optimized and compiled animations.
+ * A template is built once per file and resource reload; every renderer then gets a registry of its own from {@link CemModelTemplate#instantiate()}, which
+ * only has to copy the part tree and create empty caches.
+ */
+public class CemModelTemplate{
+	private final CemModelRegistry prototype; //never handed out, so nothing poses or animates it
+	
+	public CemModelTemplate(JemFile file){
+		this(file, true);
+	}
+	
+	/**
+	 * @param flushLog Whether to log the problems found while loading right away, see {@link CemModelRegistry#CemModelRegistry(JemFile, boolean)}
+	 */
+	public CemModelTemplate(JemFile file, boolean flushLog){
+		this.prototype = new CemModelRegistry(file, flushLog);
+	}
+	
+	/** Logs the problems found while loading the model, see {@link CemModelRegistry#flushLog()} */
+	public void flushLog(){
+		this.prototype.flushLog();
+	}
+	
+	/** Creates a registry with parts of its own, which shares the geometry and animations of this template */
+	public CemModelRegistry instantiate(){
+		return new CemModelRegistry(this.prototype);
+	}
+}
@@ -0,0 +1,34 @@
+package net.dorianpb.cem.internal.models;
+
+import net.dorianpb.cem.internal.api.CemModel.VanillaReferenceModelFactory;
+import net.minecraft.client.model.ModelPart;
+
+import java.util.Collections;
+import java.util.HashMap;
+
+/**
+ * The pivots and angles of the vanilla models that transparent parts are made from. Building a vanilla model makes every cuboid of it, while
+ * {@link CemModelRegistry#prepRootPart} only reads the transforms of its parts; so the model is built once per factory, and only a tree of empty parts with
+ * the same transforms is kept. Vanilla models come from code rather than resources, so the trees are kept across reloads.
+ */
+class CemReferenceModel{
+	private static final HashMap<Class<?>, ModelPart> REFERENCES = new HashMap<>(); //keyed by the class of the factory lambda, which is one per model class
+	
+	/** The transforms of the model {@code factory} builds, which is only built the first time */
+	static ModelPart get(VanillaReferenceModelFactory factory){
+		//a lambda that captures something might build a different model every time, so it can't be cached by its class
+		if(factory.getClass().getDeclaredFields().length > 0){
+			return factory.get();
+		}
+		return REFERENCES.computeIfAbsent(factory.getClass(), (key) -> strip(factory.get()));
+	}
+	
+	private static ModelPart strip(ModelPart part){
+		HashMap<String, ModelPart> children = new HashMap<>();
+		part.children.forEach((name, child) -> children.put(name, strip(child)));
+		ModelPart stripped = new ModelPart(Collections.emptyList(), children);
+		stripped.copyTransform(part);
+		stripped.visible = part.visible;
+		return stripped;
+	}
+}
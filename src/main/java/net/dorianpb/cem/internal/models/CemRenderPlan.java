@@ -0,0 +1,161 @@
+package net.dorianpb.cem.internal.models;
+
+import net.dorianpb.cem.internal.models.CemModelEntry.CemModelPart;
+import net.dorianpb.cem.internal.models.CemModelEntry.TransparentCemModelPart;
+import net.minecraft.client.model.ModelPart;
+import net.minecraft.client.model.ModelPart.Cuboid;
+import net.minecraft.client.render.VertexConsumer;
+import net.minecraft.client.util.math.MatrixStack;
+import net.minecraft.util.math.Vec3f;
+import net.minecraft.util.math.Vector4f;
+
+import java.util.ArrayList;
+
+/**
+ * The parts of a {@link CemModelPart} tree in the order {@link ModelPart#render} visits them, so that the whole tree is rendered in one loop instead of
+ * recursing through every part. Only the shape of the tree is fixed, poses and visibility are read from the parts on every render; a plan is made again once
+ * a part in its tree gets a child or is exposed. Parts that aren't plain CEM parts render themselves, the way they always did.
+ */
+class CemRenderPlan{
+	private static final byte           CEM         = 0;
+	private static final byte           TRANSPARENT = 1;
+	private static final byte           OTHER       = 2;
+	private static final byte           FOLDED      = 3; //a transparent part rendered together with the part it wraps, see TransparentCemModelPart.fold
+	private static final byte           BAKED       = 4; //a part rendered with its whole subtree from a CemBakedPart
+	private final        ModelPart[]    parts;
+	private final        byte[]         kinds;
+	private final        int[]          ends; //index after the last part of the subtree of every part
+	private final        CemBakedPart[] baked; //geometry of the parts that are baked, null for the others
+	private final        int[]          open; //parts whose matrix is pushed, innermost last
+	private final        Vector4f       position; //scratch for the baked parts, plans are only rendered on the render thread
+	private final        Vec3f          direction; //scratch for the baked parts
+	private final        CemModelPart   root;
+	private final        int            madeFor; //structure of the root the plan was made for
+	
+	CemRenderPlan(CemModelPart root){
+		ArrayList<ModelPart> parts = new ArrayList<>();
+		ArrayList<Byte> kinds = new ArrayList<>();
+		ArrayList<Integer> ends = new ArrayList<>();
+		ArrayList<CemBakedPart> baked = new ArrayList<>();
+		add(root, parts, kinds, ends, baked);
+		this.parts = parts.toArray(new ModelPart[0]);
+		this.kinds = new byte[this.parts.length];
+		this.ends = new int[this.parts.length];
+		this.baked = baked.toArray(new CemBakedPart[0]);
+		for(int i = 0; i < this.parts.length; i++){
+			this.kinds[i] = kinds.get(i);
+			this.ends[i] = ends.get(i);
+		}
+		this.open = new int[this.parts.length];
+		this.position = new Vector4f(0, 0, 0, 1.0F);
+		this.direction = new Vec3f(0, 0, 0);
+		this.root = root;
+		this.madeFor = root.getStructure();
+	}
+	
+	/** Whether no part in the tree has got a child or been exposed since the plan was made */
+	boolean isValid(){
+		return this.madeFor == this.root.getStructure();
+	}
+	
+	private static void add(ModelPart part, ArrayList<ModelPart> parts, ArrayList<Byte> kinds, ArrayList<Integer> ends, ArrayList<CemBakedPart> baked){
+		int index = parts.size();
+		//subclasses might render differently, so only parts that are exactly these classes are rendered by the plan
+		byte kind = (part.getClass() == CemModelPart.class)? CEM : (part.getClass() == TransparentCemModelPart.class)? TRANSPARENT : OTHER;
+		if(kind == TRANSPARENT && ((TransparentCemModelPart) part).isFoldable()){
+			kind = FOLDED;
+		}
+		//whoever renders the root holds on to it, so it might be moved
+		else if(kind == CEM && index > 0 && CemBakedPart.canBake(part)){
+			kind = BAKED;
+		}
+		parts.add(part);
+		kinds.add(kind);
+		ends.add(index + 1);
+		baked.add((kind == BAKED)? new CemBakedPart((CemModelPart) part) : null);
+		if(kind != OTHER && kind != BAKED){
+			//the wrapped part of a folded part takes no place of its own, its children follow right away
+			ModelPart parent = (kind == FOLDED)? ((TransparentCemModelPart) part).getPart() : part;
+			for(ModelPart child : parent.children.values()){
+				add(child, parts, kinds, ends, baked);
+			}
+			ends.set(index, parts.size());
+		}
+	}
+	
+	/**
+	 * Does what calling {@link CemModelPart#render} recursively would do, down to the scale of a part being applied before its matrix is pushed (and so
+	 * carrying over to the siblings rendered after it). Matrix operations that wouldn't change anything are skipped.
+	 */
+	void render(MatrixStack matrices, VertexConsumer vertices, int light, int overlay, float red, float green, float blue, float alpha){
+		int depth = 0;
+		int i = 0;
+		while(i < this.parts.length){
+			while(depth > 0 && this.ends[this.open[depth - 1]] <= i){
+				matrices.pop();
+				depth--;
+			}
+			ModelPart part = this.parts[i];
+			if(this.kinds[i] == OTHER){
+				part.render(matrices, vertices, light, overlay, red, green, blue, alpha);
+				i++;
+				continue;
+			}
+			if(this.kinds[i] == BAKED){
+				//the transforms of the part are in the geometry already, and it isn't scaled
+				if(!this.baked[i].isEmpty()){
+					this.baked[i].render(matrices.peek(), vertices, light, overlay, red, green, blue, alpha, this.position, this.direction);
+				}
+				i++;
+				continue;
+			}
+			CemModelPart cemPart = (CemModelPart) part;
+			cemPart.scale(matrices);
+			if(!part.visible || (part.cuboids.isEmpty() && part.children.isEmpty())){
+				i = this.ends[i];
+				continue;
+			}
+			if(this.kinds[i] == FOLDED){
+				TransparentCemModelPart transparentPart = (TransparentCemModelPart) part;
+				CemModelPart inner = transparentPart.getPart();
+				transparentPart.passAngles();
+				//nothing would be rendered in the matrix of the transparent part, so it isn't pushed at all
+				if(!inner.visible || (inner.cuboids.isEmpty() && inner.children.isEmpty())){
+					i = this.ends[i];
+					continue;
+				}
+				matrices.push();
+				this.open[depth++] = i;
+				transparentPart.fold(matrices);
+				renderCuboids(inner, matrices, vertices, light, overlay, red, green, blue, alpha);
+				i++;
+				continue;
+			}
+			matrices.push();
+			this.open[depth++] = i;
+			if(this.kinds[i] == TRANSPARENT){
+				//the vanilla angles belong to the part being wrapped, which rotates around its own pivot
+				((TransparentCemModelPart) part).passAngles();
+				cemPart.rotate(matrices, 0, 0, 0);
+			}
+			else{
+				cemPart.rotate(matrices, part.pitch, part.yaw, part.roll);
+			}
+			renderCuboids(part, matrices, vertices, light, overlay, red, green, blue, alpha);
+			i++;
+		}
+		while(depth > 0){
+			matrices.pop();
+			depth--;
+		}
+	}
+	
+	private static void renderCuboids(ModelPart part, MatrixStack matrices, VertexConsumer vertices, int light, int overlay, float red, float green, float blue, float alpha){
+		if(!part.cuboids.isEmpty()){
+			MatrixStack.Entry entry = matrices.peek();
+			for(Cuboid cuboid : part.cuboids){
+				cuboid.renderCuboid(entry, vertices, light, overlay, red, green, blue, alpha);
+			}
+		}
+	}
+}
@@ -0,0 +1,192 @@
+package net.dorianpb.cem.internal.util;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.dorianpb.cem.internal.util.CemStringParser.DexEnvironment;
+import net.dorianpb.cem.internal.util.CemStringParser.FLOAT_PARAMETER;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedExpression;
+import net.minecraft.entity.LivingEntity;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the results of the animations of a model, so that an animation only gets evaluated again once one of the inputs it reads has changed. Animations
+ * that only read frame-global inputs are evaluated once per frame for all entities, the others once per entity whenever the entity's inputs change. Results
+ * only depend on the inputs, so an entity whose id gets reused can't pick up wrong results. Entities that haven't been animated for a while are dropped every
+ * few seconds. How many evaluations were run and skipped is counted for the model, shared by every copy of the cache. Where the cache is at with the entity
+ * being animated is kept in a {@link Cursor}, so that a {@link net.dorianpb.cem.internal.models.CemAnimationBatch} can go back and forth between entities.
+ */
+public class CemAnimationCache{
+	/** Frames between looking for entities that haven't been animated, and how long they are kept without being animated */
+	private static final int                          SWEEP_INTERVAL = 600;
+	private static final long                         GLOBAL         = 1L << FLOAT_PARAMETER.TIME.input();
+	private final        LongAdder                    executed;
+	private final        LongAdder                    skipped;
+	private final        long[]                       inputs;
+	private final        int[]                        compared;
+	private final        float[]                      globalResults;
+	private final        int[]                        globalFrames;
+	private final        Int2ObjectOpenHashMap<Entry> entries;
+	private final        Cursor                       cursor;
+	private              int                          swept;
+	
+	/**
+	 * @param inputs Inputs of every animation, see {@link CemExpressionGraph#getInputs(int)}
+	 */
+	public CemAnimationCache(long[] inputs){
+		this.executed = new LongAdder();
+		this.skipped = new LongAdder();
+		this.inputs = inputs;
+		long union = 0;
+		for(long input : inputs){
+			if(input != CemExpressionGraph.VOLATILE && !isGlobal(input)){
+				union |= input;
+			}
+		}
+		this.compared = new int[Long.bitCount(union)];
+		for(int i = 0, bit = 0; i < this.compared.length; bit++){
+			if((union & (1L << bit)) != 0){
+				this.compared[i++] = bit;
+			}
+		}
+		this.globalResults = new float[inputs.length];
+		this.globalFrames = new int[inputs.length];
+		Arrays.fill(this.globalFrames, -1);
+		this.entries = new Int2ObjectOpenHashMap<>();
+		this.cursor = new Cursor();
+	}
+	
+	/** Creates an empty cache for the same animations as {@code cache}, counting to the same model */
+	public CemAnimationCache(CemAnimationCache cache){
+		this.executed = cache.executed;
+		this.skipped = cache.skipped;
+		this.inputs = cache.inputs;
+		this.compared = cache.compared;
+		this.globalResults = new float[cache.inputs.length];
+		this.globalFrames = new int[cache.inputs.length];
+		Arrays.fill(this.globalFrames, -1);
+		this.entries = new Int2ObjectOpenHashMap<>();
+		this.cursor = new Cursor();
+	}
+	
+	/** Finds out which inputs have changed since the last time this entity was animated, call after {@link DexEnvironment#setEnv} */
+	public void begin(DexEnvironment env, LivingEntity livingEntity){
+		this.begin(env, livingEntity, this.cursor);
+	}
+	
+	/** Same as {@link CemAnimationCache#begin(DexEnvironment, LivingEntity)}, keeping track of the entity in {@code cursor} */
+	public void begin(DexEnvironment env, LivingEntity livingEntity, Cursor cursor){
+		if(livingEntity == null){
+			cursor.current = null;
+			cursor.changed = CemExpressionGraph.VOLATILE;
+			return;
+		}
+		int frame = DexEnvironment.getFrame();
+		this.sweep(frame);
+		Entry entry = this.entries.get(livingEntity.getId());
+		if(entry == null){
+			entry = new Entry(this.compared.length, this.inputs.length);
+			this.entries.put(livingEntity.getId(), entry);
+			cursor.changed = CemExpressionGraph.VOLATILE;
+		}
+		else{
+			cursor.changed = 0;
+		}
+		for(int i = 0; i < this.compared.length; i++){
+			float value = env.getInput(this.compared[i]);
+			if(Float.floatToRawIntBits(value) != Float.floatToRawIntBits(entry.inputs[i])){
+				entry.inputs[i] = value;
+				cursor.changed |= 1L << this.compared[i];
+			}
+		}
+		entry.seen = frame;
+		cursor.current = entry;
+	}
+	
+	/**
+	 * Evaluates an animation, unless its inputs haven't changed since the last time
+	 * @param animation Index of the animation in the array passed to the constructor
+	 */
+	public float evaluate(int animation, ParsedExpression expression, DexEnvironment env){
+		return this.evaluate(animation, expression, env, this.cursor);
+	}
+	
+	/** Same as {@link CemAnimationCache#evaluate(int, ParsedExpression, DexEnvironment)}, for the entity {@code cursor} was passed to {@link #begin} with */
+	public float evaluate(int animation, ParsedExpression expression, DexEnvironment env, Cursor cursor){
+		long inputs = this.inputs[animation];
+		if(inputs == CemExpressionGraph.VOLATILE){
+			this.executed.increment();
+			return expression.evalFloat(env);
+		}
+		else if(isGlobal(inputs)){
+			int frame = DexEnvironment.getFrame();
+			if(this.globalFrames[animation] != frame){
+				this.executed.increment();
+				this.globalResults[animation] = expression.evalFloat(env);
+				this.globalFrames[animation] = frame;
+			}
+			else{
+				this.skipped.increment();
+			}
+			return this.globalResults[animation];
+		}
+		else if(cursor.current == null){
+			this.executed.increment();
+			return expression.evalFloat(env);
+		}
+		else if((inputs & cursor.changed) != 0){
+			this.executed.increment();
+			cursor.current.results[animation] = expression.evalFloat(env);
+		}
+		else{
+			this.skipped.increment();
+		}
+		return cursor.current.results[animation];
+	}
+	
+	/** Number of evaluations run by this cache and its copies */
+	public long getExecuted(){
+		return this.executed.sum();
+	}
+	
+	/** Number of evaluations skipped by this cache and its copies */
+	public long getSkipped(){
+		return this.skipped.sum();
+	}
+	
+	/** Forgets the counted evaluations */
+	public void resetCounts(){
+		this.executed.reset();
+		this.skipped.reset();
+	}
+	
+	/** Drops the entities that haven't been animated for {@link #SWEEP_INTERVAL} frames, looking only once every as many frames */
+	private void sweep(int frame){
+		if(frame - this.swept >= SWEEP_INTERVAL){
+			this.swept = frame;
+			this.entries.values().removeIf((entry) -> frame - entry.seen >= SWEEP_INTERVAL);
+		}
+	}
+	
+	/** Animations that read nothing at all, or nothing but the time of day */
+	private static boolean isGlobal(long inputs){
+		return (inputs & ~GLOBAL) == 0;
+	}
+	
+	/** The entity being animated, and which of its inputs have changed */
+	public static final class Cursor{
+		private Entry current;
+		private long  changed;
+	}
+	
+	private static class Entry{
+		private final float[] inputs;
+		private final float[] results;
+		private       int     seen; //frame this entity was last animated on
+		
+		private Entry(int inputs, int animations){
+			this.inputs = new float[inputs];
+			this.results = new float[animations];
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package net.dorianpb.cem.internal.util;
+
+import net.dorianpb.cem.internal.models.CemModelEntry;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedExpression;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedVar;
+
+import java.lang.invoke.MethodHandle;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Keeps parsed and compiled animations around, so that building another registry from the same .jem file (or another file with the same animations) doesn't
+ * parse, optimize and compile everything again. Nothing in here points to a registry: parsed animations are stored with their model parts unbound, and
+ * compiled ones only as the constructor of their class, so the caches never keep an old model alive. Both caches forget the least recently used entry once
+ * full, and are cleared on every resource reload.
+ */
+public class CemExpressionCache{
+	private static final int                                     MAX_SIZE = 4096;
+	private static final LinkedHashMap<String, Parsed>           PARSED   = createCache();
+	private static final LinkedHashMap<String, MethodHandle>     COMPILED = createCache();
+	private static       long                                    parsedHits;
+	private static       long                                    parsedMisses;
+	private static       long                                    compiledHits;
+	private static       long                                    compiledMisses;
+	
+	/**
+	 * @param key Expression source and where the parts it refers to are in the model
+	 * @return Parsed and optimized expression with unbound model parts, or null if it isn't cached
+	 */
+	static synchronized Parsed getParsed(String key){
+		Parsed expression = PARSED.get(key);
+		if(expression != null){
+			parsedHits++;
+		}
+		else{
+			parsedMisses++;
+		}
+		return expression;
+	}
+	
+	/** @param removed Number of nodes the optimizer removed from the expression, counted again whenever it is taken from the cache */
+	static synchronized void putParsed(String key, ParsedExpression expression, int removed){
+		PARSED.put(key, new Parsed(expression, removed));
+	}
+	
+	/**
+	 * @param key Shape of the expression, see {@link CemExpressionCompiler#compile(CemStringParser.ParsedExpressionFloat)}
+	 * @return Constructor of the generated class, or null if it isn't cached
+	 */
+	static synchronized MethodHandle getCompiled(String key){
+		MethodHandle constructor = COMPILED.get(key);
+		if(constructor != null){
+			compiledHits++;
+		}
+		else{
+			compiledMisses++;
+		}
+		return constructor;
+	}
+	
+	static synchronized void putCompiled(String key, MethodHandle constructor){
+		COMPILED.put(key, constructor);
+	}
+	
+	/** Copies an expression, pointing all of its part references to the parts returned by {@code resolver} */
+	static ParsedExpression bind(ParsedExpression expression, Function<String, CemModelEntry> resolver){
+		if(expression instanceof ParsedVar var){
+			return var.bind(resolver.apply(var.name));
+		}
+		ParsedExpression[] children = CemExpressionOptimizer.children(expression);
+		if(children.length == 0){
+			return expression;
+		}
+		for(int i = 0; i < children.length; i++){
+			children[i] = bind(children[i], resolver);
+		}
+		return CemExpressionOptimizer.withChildren(expression, children);
+	}
+	
+	/** Empties the caches and zeroes the counters, so that these only cover the models of the current reload */
+	public static synchronized void clear(){
+		PARSED.clear();
+		COMPILED.clear();
+		parsedHits = 0;
+		parsedMisses = 0;
+		compiledHits = 0;
+		compiledMisses = 0;
+	}
+	
+	public static synchronized long getParsedHits(){
+		return parsedHits;
+	}
+	
+	public static synchronized long getParsedMisses(){
+		return parsedMisses;
+	}
+	
+	public static synchronized long getCompiledHits(){
+		return compiledHits;
+	}
+	
+	public static synchronized long getCompiledMisses(){
+		return compiledMisses;
+	}
+	
+	private static <T> LinkedHashMap<String, T> createCache(){
+		return new LinkedHashMap<>(16, 0.75F, true){
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, T> eldest){
+				return this.size() > MAX_SIZE;
+			}
+		};
+	}
+	
+	/** A parsed expression, and how many nodes the optimizer removed from it */
+	static class Parsed{
+		final ParsedExpression expression;
+		final int              removed;
+		
+		private Parsed(ParsedExpression expression, int removed){
+			this.expression = expression;
+			this.removed = removed;
+		}
+	}
+}
@@ -0,0 +1,474 @@
+package net.dorianpb.cem.internal.util;
+
+import net.dorianpb.cem.internal.models.CemModelEntry;
+import net.dorianpb.cem.internal.util.CemStringParser.BOOL_FUNCTION_BOOL;
+import net.dorianpb.cem.internal.util.CemStringParser.DexEnvironment;
+import net.dorianpb.cem.internal.util.CemStringParser.FLOAT_FUNCTION;
+import net.dorianpb.cem.internal.util.CemStringParser.FLOAT_PARAMETER;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedBetween;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedBinary;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedComparison;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedEquals;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedExpression;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedExpressionBool;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedExpressionFloat;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedIf;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedIn;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedLogic;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedNot;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedNullary;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedNumber;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedParameterBool;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedParameterFloat;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedShared;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedTernary;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedUnary;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedVar;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedVariableBool;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedVariableFloat;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedVariadic;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Turns a parsed animation into a hidden class with a single straight-line {@code eval} method, so that the JIT sees plain float arithmetic instead of the
+ * interpreter's virtual calls and enum switches. Anything the compiler can't handle makes {@link CemExpressionCompiler#compile(ParsedExpressionFloat)} return the
+ * original tree, in which case the interpreter is used instead.
+ */
+public class CemExpressionCompiler implements Opcodes{
+	private static final String CLASS_NAME  = Type.getInternalName(CemExpressionCompiler.class) + "$Generated";
+	private static final String FUNCTIONS   = Type.getInternalName(FLOAT_FUNCTION.class);
+	private static final String VARS        = Type.getInternalName(ParsedVar.class);
+	private static final String ENVIRONMENT = Type.getInternalName(DexEnvironment.class);
+	private static final String ENTRY       = Type.getInternalName(CemModelEntry.class);
+	
+	/**
+	 * Compiles an expression, falling back to the interpreter if anything goes wrong. Expressions with the same shape share their generated class, even if
+	 * they read different model parts
+	 * @param expression Root of a parsed animation
+	 * @return Compiled expression, or the expression itself if it couldn't be compiled
+	 */
+	static ParsedExpressionFloat compile(ParsedExpressionFloat expression){
+		try{
+			Generator generator = new Generator();
+			StringBuilder key = new StringBuilder();
+			generator.describe(expression, key, new HashSet<>());
+			MethodHandle constructor = CemExpressionCache.getCompiled(key.toString());
+			if(constructor == null){
+				byte[] bytes = generator.generate(expression);
+				Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+				constructor = lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class, Object[].class));
+				CemExpressionCache.putCompiled(key.toString(), constructor);
+			}
+			CompiledFloat compiled = (CompiledFloat) constructor.invoke((Object) generator.refs.toArray());
+			return new CompiledExpression(expression, compiled, constructor);
+		} catch(Throwable throwable){
+			CemFairy.getLogger().warn("Unable to compile animation \"" + expression.getName() + "\", it will be interpreted instead:");
+			CemFairy.getLogger().warn(throwable);
+			return expression;
+		}
+	}
+	
+	/**
+	 * Creates another instance of a compiled expression's class without generating anything
+	 * @param source Copy of the expression's source reading different model parts, see {@link CemExpressionGraph#bind}
+	 */
+	static ParsedExpressionFloat bind(CompiledExpression expression, ParsedExpressionFloat source){
+		try{
+			Generator generator = new Generator();
+			generator.describe(source, new StringBuilder(), new HashSet<>());
+			CompiledFloat compiled = (CompiledFloat) expression.constructor.invoke((Object) generator.refs.toArray());
+			return new CompiledExpression(source, compiled, expression.constructor);
+		} catch(Throwable throwable){
+			CemFairy.getLogger().warn("Unable to compile animation \"" + source.getName() + "\", it will be interpreted instead:");
+			CemFairy.getLogger().warn(throwable);
+			return source;
+		}
+	}
+	
+	@FunctionalInterface
+	interface CompiledFloat{
+		float eval(DexEnvironment env);
+	}
+	
+	/** Writes the bytecode for a single expression; every model part the expression reads becomes a final field of the generated class */
+	private static class Generator{
+		private final ArrayList<CemModelEntry> refs = new ArrayList<>();
+		private       MethodVisitor            mv;
+		
+		/**
+		 * Collects the model parts the expression reads and writes down everything else the generated code depends on, so that two expressions with the same
+		 * description can use the same class
+		 */
+		void describe(ParsedExpression expression, StringBuilder key, Set<ParsedShared> visited){
+			key.append(expression.getClass().getSimpleName()).append(':');
+			if(expression instanceof ParsedNumber number){
+				key.append(Integer.toHexString(Float.floatToIntBits(number.num)));
+			}
+			else if(expression instanceof ParsedVar var){
+				key.append("ref").append(this.ref(var.entry)).append(var.val).append(var.axis);
+			}
+			else if(expression instanceof ParsedShared shared){
+				key.append(shared.slot);
+				if(!visited.add(shared)){
+					return;
+				}
+			}
+			else if(expression instanceof ParsedVariableFloat variable){
+				key.append(variable.id);
+			}
+			else if(expression instanceof ParsedVariableBool variable){
+				key.append(variable.id);
+			}
+			else{
+				key.append(expression.getName());
+			}
+			key.append('(');
+			for(ParsedExpression child : CemExpressionOptimizer.children(expression)){
+				this.describe(child, key, visited);
+				key.append(',');
+			}
+			key.append(')');
+		}
+		
+		byte[] generate(ParsedExpressionFloat expression){
+			ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS){
+				@Override
+				protected String getCommonSuperClass(String type1, String type2){
+					//the generated code never merges two different reference types, so there's no need to load anything
+					return "java/lang/Object";
+				}
+			};
+			cw.visit(V16, ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC, CLASS_NAME, null, "java/lang/Object", new String[]{Type.getInternalName(CompiledFloat.class)});
+			
+			this.mv = cw.visitMethod(ACC_PUBLIC, "eval", "(L" + ENVIRONMENT + ";)F", null, null);
+			this.mv.visitCode();
+			this.emitFloat(expression);
+			this.mv.visitInsn(FRETURN);
+			this.mv.visitMaxs(0, 0);
+			this.mv.visitEnd();
+			
+			MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", "([Ljava/lang/Object;)V", null, null);
+			init.visitCode();
+			init.visitVarInsn(ALOAD, 0);
+			init.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+			for(int i = 0; i < this.refs.size(); i++){
+				cw.visitField(ACC_PRIVATE | ACC_FINAL, "ref" + i, "L" + ENTRY + ";", null, null).visitEnd();
+				init.visitVarInsn(ALOAD, 0);
+				init.visitVarInsn(ALOAD, 1);
+				init.visitLdcInsn(i);
+				init.visitInsn(AALOAD);
+				init.visitTypeInsn(CHECKCAST, ENTRY);
+				init.visitFieldInsn(PUTFIELD, CLASS_NAME, "ref" + i, "L" + ENTRY + ";");
+			}
+			init.visitInsn(RETURN);
+			init.visitMaxs(0, 0);
+			init.visitEnd();
+			
+			cw.visitEnd();
+			return cw.toByteArray();
+		}
+		
+		private void emitFloat(ParsedExpressionFloat expression){
+			if(expression instanceof ParsedNumber number){
+				mv.visitLdcInsn(number.num);
+			}
+			else if(expression instanceof ParsedVar var){
+				this.emitVar(var);
+			}
+			else if(expression instanceof ParsedIf parsedIf){
+				this.emitIf(parsedIf);
+			}
+			else if(expression instanceof ParsedParameterFloat parameter){
+				this.emitParameter(parameter.parameter);
+			}
+			else if(expression instanceof ParsedNullary nullary){
+				this.emitFunction(nullary.function);
+			}
+			else if(expression instanceof ParsedUnary unary){
+				this.emitFunction(unary.function, unary.arg);
+			}
+			else if(expression instanceof ParsedBinary binary){
+				this.emitFunction(binary.function, binary.left, binary.right);
+			}
+			else if(expression instanceof ParsedTernary ternary){
+				this.emitFunction(ternary.function, ternary.first, ternary.second, ternary.third);
+			}
+			else if(expression instanceof ParsedShared shared){
+				this.emitShared(shared);
+			}
+			else if(expression instanceof ParsedVariableFloat variable){
+				mv.visitVarInsn(ALOAD, 1);
+				mv.visitLdcInsn(variable.id);
+				mv.visitMethodInsn(INVOKEVIRTUAL, ENVIRONMENT, "getVariable", "(I)F", false);
+			}
+			else if(expression instanceof ParsedVariadic variadic){
+				this.emitFloat(variadic.args[0]);
+				for(int i = 1; i < variadic.args.length; i++){
+					this.emitFloat(variadic.args[i]);
+					mv.visitMethodInsn(INVOKESTATIC, FUNCTIONS, variadic.function.name().toLowerCase(), "(FF)F", false);
+				}
+			}
+			else{
+				throw new IllegalStateException("Unable to compile \"" + expression.getName() + "\"");
+			}
+		}
+		
+		/** Shared nodes get inlined into every animation using them, the environment decides which of them actually runs the code */
+		private void emitShared(ParsedShared shared){
+			Label cached = new Label();
+			Label end = new Label();
+			mv.visitVarInsn(ALOAD, 1);
+			mv.visitLdcInsn(shared.slot);
+			mv.visitMethodInsn(INVOKEVIRTUAL, ENVIRONMENT, "isCached", "(I)Z", false);
+			mv.visitJumpInsn(IFNE, cached);
+			mv.visitVarInsn(ALOAD, 1);
+			mv.visitLdcInsn(shared.slot);
+			this.emitFloat(shared.value);
+			mv.visitMethodInsn(INVOKEVIRTUAL, ENVIRONMENT, "store", "(IF)F", false);
+			mv.visitJumpInsn(GOTO, end);
+			mv.visitLabel(cached);
+			mv.visitVarInsn(ALOAD, 1);
+			mv.visitLdcInsn(shared.slot);
+			mv.visitMethodInsn(INVOKEVIRTUAL, ENVIRONMENT, "load", "(I)F", false);
+			mv.visitLabel(end);
+		}
+		
+		/** Render parameters are read straight off the environment, everything else goes through {@link FLOAT_PARAMETER#value} */
+		private void emitParameter(FLOAT_PARAMETER parameter){
+			String getter = switch(parameter){
+				case LIMB_SWING -> "getLimbAngle";
+				case LIMB_SPEED -> "getLimbDistance";
+				case AGE -> "getAge";
+				case HEAD_YAW -> "getHead_yaw";
+				case HEAD_PITCH -> "getHead_pitch";
+				default -> null;
+			};
+			if(parameter == FLOAT_PARAMETER.PI){
+				mv.visitLdcInsn(parameter.value(null));
+			}
+			else if(parameter == FLOAT_PARAMETER.TIME){
+				mv.visitMethodInsn(INVOKESTATIC, ENVIRONMENT, "getTime", "()F", false);
+			}
+			else if(getter != null){
+				mv.visitVarInsn(ALOAD, 1);
+				mv.visitMethodInsn(INVOKEVIRTUAL, ENVIRONMENT, getter, "()F", false);
+			}
+			else{
+				mv.visitVarInsn(ALOAD, 1);
+				mv.visitLdcInsn(parameter.ordinal());
+				mv.visitMethodInsn(INVOKEVIRTUAL, ENVIRONMENT, "getFloatParameter", "(I)F", false);
+			}
+		}
+		
+		private void emitFunction(FLOAT_FUNCTION function, ParsedExpressionFloat... args){
+			for(ParsedExpressionFloat arg : args){
+				this.emitFloat(arg);
+			}
+			switch(function){
+				case ADD -> mv.visitInsn(FADD);
+				case SUB -> mv.visitInsn(FSUB);
+				case MULT -> mv.visitInsn(FMUL);
+				case DIV -> mv.visitInsn(FDIV);
+				case MOD -> mv.visitInsn(FREM);
+				default -> mv.visitMethodInsn(INVOKESTATIC, FUNCTIONS, function.name().toLowerCase(), "(" + "F".repeat(args.length) + ")F", false);
+			}
+		}
+		
+		private void emitVar(ParsedVar var){
+			mv.visitVarInsn(ALOAD, 1);
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitFieldInsn(GETFIELD, CLASS_NAME, "ref" + this.ref(var.entry), "L" + ENTRY + ";");
+			mv.visitLdcInsn((int) var.axis);
+			String name = switch(var.val){
+				case 't' -> "translate";
+				case 'r' -> "rotation";
+				case 's' -> "scale";
+				default -> throw new IllegalStateException("Unknown operation \"" + var.val + "\"");
+			};
+			mv.visitMethodInsn(INVOKESTATIC, VARS, name, "(L" + ENVIRONMENT + ";L" + ENTRY + ";C)F", false);
+		}
+		
+		private int ref(CemModelEntry entry){
+			int index = this.refs.indexOf(entry);
+			if(index < 0){
+				index = this.refs.size();
+				this.refs.add(entry);
+			}
+			return index;
+		}
+		
+		private void emitIf(ParsedIf parsedIf){
+			Label end = new Label();
+			for(int i = 0; i < parsedIf.conditions.length; i++){
+				Label next = new Label();
+				this.emitBool(parsedIf.conditions[i]);
+				mv.visitJumpInsn(IFEQ, next);
+				this.emitFloat(parsedIf.expressions[i]);
+				mv.visitJumpInsn(GOTO, end);
+				mv.visitLabel(next);
+			}
+			this.emitFloat(parsedIf.expressions[parsedIf.expressions.length - 1]);
+			mv.visitLabel(end);
+		}
+		
+		private void emitBool(ParsedExpressionBool expression){
+			if(expression instanceof ParsedParameterBool parameter){
+				switch(parameter.parameter){
+					case TRUE -> mv.visitInsn(ICONST_1);
+					case FALSE -> mv.visitInsn(ICONST_0);
+					default -> {
+						mv.visitVarInsn(ALOAD, 1);
+						mv.visitLdcInsn(parameter.parameter.ordinal());
+						mv.visitMethodInsn(INVOKEVIRTUAL, ENVIRONMENT, "getBoolParameter", "(I)Z", false);
+					}
+				}
+			}
+			else if(expression instanceof ParsedVariableBool variable){
+				mv.visitVarInsn(ALOAD, 1);
+				mv.visitLdcInsn(variable.id);
+				mv.visitMethodInsn(INVOKEVIRTUAL, ENVIRONMENT, "getBoolVariable", "(I)Z", false);
+			}
+			else if(expression instanceof ParsedNot not){
+				this.emitBool(not.arg);
+				mv.visitInsn(ICONST_1);
+				mv.visitInsn(IXOR);
+			}
+			else if(expression instanceof ParsedLogic logic){
+				Label shortCircuit = new Label();
+				Label end = new Label();
+				this.emitBool(logic.left);
+				mv.visitJumpInsn((logic.function == BOOL_FUNCTION_BOOL.AND)? IFEQ : IFNE, shortCircuit);
+				this.emitBool(logic.right);
+				mv.visitJumpInsn(GOTO, end);
+				mv.visitLabel(shortCircuit);
+				mv.visitInsn((logic.function == BOOL_FUNCTION_BOOL.AND)? ICONST_0 : ICONST_1);
+				mv.visitLabel(end);
+			}
+			else{
+				this.emitComparison(expression);
+			}
+		}
+		
+		/** Comparisons are written with the same fcmpl/fcmpg and jump pairs javac uses, so NaN behaves exactly like it does in the interpreter */
+		private void emitComparison(ParsedExpressionBool expression){
+			Label isFalse = new Label();
+			Label isTrue = new Label();
+			Label end = new Label();
+			if(expression instanceof ParsedBetween between){
+				//min <= value && value <= max
+				this.emitFloat(between.min);
+				this.emitFloat(between.value);
+				mv.visitInsn(FCMPG);
+				mv.visitJumpInsn(IFGT, isFalse);
+				this.emitFloat(between.value);
+				this.emitFloat(between.max);
+				mv.visitInsn(FCMPG);
+				mv.visitJumpInsn(IFGT, isFalse);
+			}
+			else if(expression instanceof ParsedEquals equals){
+				//target - epsilon <= value && value <= target + epsilon
+				this.emitFloat(equals.target);
+				this.emitFloat(equals.epsilon);
+				mv.visitInsn(FSUB);
+				this.emitFloat(equals.value);
+				mv.visitInsn(FCMPG);
+				mv.visitJumpInsn(IFGT, isFalse);
+				this.emitFloat(equals.value);
+				this.emitFloat(equals.target);
+				this.emitFloat(equals.epsilon);
+				mv.visitInsn(FADD);
+				mv.visitInsn(FCMPG);
+				mv.visitJumpInsn(IFGT, isFalse);
+			}
+			else if(expression instanceof ParsedIn in){
+				//stops evaluating as soon as a match is found
+				for(ParsedExpressionFloat option : in.options){
+					this.emitFloat(in.value);
+					this.emitFloat(option);
+					mv.visitInsn(FCMPL);
+					mv.visitJumpInsn(IFEQ, isTrue);
+				}
+				mv.visitJumpInsn(GOTO, isFalse);
+			}
+			else if(expression instanceof ParsedComparison comparison){
+				this.emitFloat(comparison.left);
+				this.emitFloat(comparison.right);
+				switch(comparison.function){
+					case GREATER -> {
+						mv.visitInsn(FCMPL);
+						mv.visitJumpInsn(IFLE, isFalse);
+					}
+					case GREATEREQ -> {
+						mv.visitInsn(FCMPL);
+						mv.visitJumpInsn(IFLT, isFalse);
+					}
+					case LESS -> {
+						mv.visitInsn(FCMPG);
+						mv.visitJumpInsn(IFGE, isFalse);
+					}
+					case LESSEQ -> {
+						mv.visitInsn(FCMPG);
+						mv.visitJumpInsn(IFGT, isFalse);
+					}
+					case EQ -> {
+						mv.visitInsn(FCMPL);
+						mv.visitJumpInsn(IFNE, isFalse);
+					}
+					case NOTEQ -> {
+						mv.visitInsn(FCMPL);
+						mv.visitJumpInsn(IFEQ, isFalse);
+					}
+					default -> throw new IllegalStateException("Unexpected value: " + comparison.function);
+				}
+			}
+			else{
+				throw new IllegalStateException("Unable to compile \"" + expression.getName() + "\"");
+			}
+			mv.visitLabel(isTrue);
+			mv.visitInsn(ICONST_1);
+			mv.visitJumpInsn(GOTO, end);
+			mv.visitLabel(isFalse);
+			mv.visitInsn(ICONST_0);
+			mv.visitLabel(end);
+		}
+	}
+	
+	/** The node {@link #compile(ParsedExpressionFloat)} hands back; it keeps the source tree around for its name and for anything that wants to inspect it */
+	static final class CompiledExpression extends ParsedExpressionFloat{
+		private final ParsedExpressionFloat source;
+		private final CompiledFloat         compiled;
+		private final MethodHandle          constructor;
+		
+		CompiledExpression(ParsedExpressionFloat source, CompiledFloat compiled, MethodHandle constructor){
+			this.source = source;
+			this.compiled = compiled;
+			this.constructor = constructor;
+		}
+		
+		@Override
+		public float evalFloat(DexEnvironment env){
+			return this.compiled.eval(env);
+		}
+		
+		@Override
+		public String getName(){
+			return this.source.getName();
+		}
+		
+		ParsedExpressionFloat getSource(){
+			return source;
+		}
+	}
+}
@@ -0,0 +1,327 @@
+package net.dorianpb.cem.internal.util;
+
+import net.dorianpb.cem.internal.config.CemConfigFairy;
+import net.dorianpb.cem.internal.models.CemModelEntry;
+import net.dorianpb.cem.internal.models.CemModelRegistry;
+import net.dorianpb.cem.internal.util.CemExpressionCompiler.CompiledExpression;
+import net.dorianpb.cem.internal.util.CemStringParser.BOOL_PARAMETER;
+import net.dorianpb.cem.internal.util.CemStringParser.DexEnvironment;
+import net.dorianpb.cem.internal.util.CemStringParser.FLOAT_PARAMETER;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedFunction.ParsedFunctionType;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedExpression;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedExpressionFloat;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedNullary;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedNumber;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedParameterBool;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedParameterFloat;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedShared;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedVar;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedVariableBool;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedVariableFloat;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Holds all of the animations of a model as one graph, so that a subexpression used by several animations is only evaluated once per entity per frame.
+ * Subexpressions that read model parts or variables can't be shared, as earlier animations change those while later ones are being evaluated.
+ */
+public class CemExpressionGraph{
+	/** Inputs of an expression whose result can change even if none of its inputs do, because it reads model parts, variables or random numbers */
+	public static final long VOLATILE = -1L;
+	
+	private final CemExpressionOptimizer        optimizer;
+	private final ArrayList<ParsedExpression>   roots;
+	private final HashMap<String, Integer>      occurrences;
+	private final HashMap<String, ParsedShared> shared;
+	private final EnumSet<FLOAT_PARAMETER>      floatParameters;
+	private final EnumSet<BOOL_PARAMETER>       boolParameters;
+	private       long[]                        inputs;
+	private       boolean                       built;
+	private       int                           saved;
+	
+	public CemExpressionGraph(){
+		this.optimizer = new CemExpressionOptimizer();
+		this.roots = new ArrayList<>();
+		this.occurrences = new HashMap<>();
+		this.shared = new HashMap<>();
+		this.floatParameters = EnumSet.noneOf(FLOAT_PARAMETER.class);
+		this.boolParameters = EnumSet.noneOf(BOOL_PARAMETER.class);
+	}
+	
+	/**
+	 * Parses and optimizes an animation and adds it to the graph
+	 * @return Handle to retrieve the finished expression with after {@link CemExpressionGraph#build()}
+	 */
+	public int add(String expr, CemModelRegistry registry, CemModelEntry parent){
+		if(this.built){
+			throw new IllegalStateException("Can't add animations to a graph that has already been built");
+		}
+		this.roots.add(CemStringParser.parse(expr, registry, parent, this.optimizer));
+		return this.roots.size() - 1;
+	}
+	
+	/** Merges the subexpressions shared between animations and compiles them if enabled */
+	public void build(){
+		int before = 0;
+		this.inputs = new long[this.roots.size()];
+		for(int i = 0; i < this.roots.size(); i++){
+			ParsedExpression root = this.roots.get(i);
+			this.key(root, true);
+			before += CemExpressionOptimizer.count(root);
+			this.collect(root);
+			this.inputs[i] = inputs(root);
+		}
+		boolean compile = CemConfigFairy.getConfig() == null || CemConfigFairy.getConfig().useCompiledAnimations();
+		Set<ParsedShared> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		int after = 0;
+		ParsedExpression[] roots = new ParsedExpression[this.roots.size()];
+		ArrayList<ForkJoinTask<?>> compiling = new ArrayList<>();
+		for(int i = 0; i < roots.length; i++){
+			int index = i;
+			roots[i] = this.share(this.roots.get(i));
+			after += countEvaluated(roots[i], visited);
+			if(compile && roots[i] instanceof ParsedExpressionFloat expression){
+				//defining the classes takes longer than everything else, so every animation is compiled as a task of its own
+				compiling.add(ForkJoinTask.adapt(() -> roots[index] = CemExpressionCompiler.compile(expression)));
+			}
+		}
+		ForkJoinTask.invokeAll(compiling);
+		for(int i = 0; i < roots.length; i++){
+			this.roots.set(i, roots[i]);
+		}
+		this.saved = before - after;
+		this.occurrences.clear();
+		this.built = true;
+	}
+	
+	public ParsedExpression get(int handle){
+		return this.roots.get(handle);
+	}
+	
+	/**
+	 * Copies a finished expression for another registry made from the same file, so that it reads the parts {@code parts} maps its own parts to. Nodes that
+	 * don't read any parts are kept, shared ones never do.
+	 */
+	public static ParsedExpression bind(ParsedExpression expression, Function<CemModelEntry, CemModelEntry> parts){
+		if(expression instanceof CompiledExpression compiled){
+			ParsedExpression source = bind(compiled.getSource(), parts);
+			return (source == compiled.getSource())? compiled : CemExpressionCompiler.bind(compiled, (ParsedExpressionFloat) source);
+		}
+		else if(expression instanceof ParsedVar var){
+			return var.bind(parts.apply(var.entry));
+		}
+		else if(expression instanceof ParsedShared){
+			return expression;
+		}
+		ParsedExpression[] children = CemExpressionOptimizer.children(expression);
+		boolean changed = false;
+		for(int i = 0; i < children.length; i++){
+			ParsedExpression child = bind(children[i], parts);
+			changed |= child != children[i];
+			children[i] = child;
+		}
+		return changed? CemExpressionOptimizer.withChildren(expression, children) : expression;
+	}
+	
+	/**
+	 * Whether the animation reads a value of a model part, has to be called before {@link CemExpressionGraph#build()}
+	 * @param value 0-8 for translate, rotation and scale xyz
+	 */
+	public boolean readsPart(int handle, CemModelEntry entry, int value){
+		return this.reads(handle, expression -> expression instanceof ParsedVar var && var.entry == entry && var.value == value);
+	}
+	
+	/** Whether the animation reads a var.* or varb.* variable, has to be called before {@link CemExpressionGraph#build()} */
+	public boolean readsVariable(int handle, int id, boolean bool){
+		if(bool){
+			return this.reads(handle, expression -> expression instanceof ParsedVariableBool variable && variable.id == id);
+		}
+		return this.reads(handle, expression -> expression instanceof ParsedVariableFloat variable && variable.id == id);
+	}
+	
+	/**
+	 * Model parts the animation reads, has to be called before {@link CemExpressionGraph#build()}
+	 * @return The values read of every part, one bit each for translate, rotation and scale xyz
+	 */
+	public IdentityHashMap<CemModelEntry, Integer> getReadParts(int handle){
+		IdentityHashMap<CemModelEntry, Integer> parts = new IdentityHashMap<>();
+		this.reads(handle, expression -> {
+			if(expression instanceof ParsedVar var){
+				parts.merge(var.entry, 1 << var.value, (a, b) -> a | b);
+			}
+			return false;
+		});
+		return parts;
+	}
+	
+	private boolean reads(int handle, Predicate<ParsedExpression> leaf){
+		if(this.built){
+			throw new IllegalStateException("Built graphs don't keep track of what their animations read");
+		}
+		return reads(this.roots.get(handle), leaf);
+	}
+	
+	/** Whether the animation is a bool, which only varb.* variables can be set to */
+	public boolean isBool(int handle){
+		return this.roots.get(handle).getType() == ParsedFunctionType.BOOL;
+	}
+	
+	/** Creates an environment with room for all of the shared nodes of this graph, which only takes the parameters the graph reads from the entity */
+	public DexEnvironment createEnvironment(){
+		return new DexEnvironment(this.getSlots(), this.floatParameters, this.boolParameters);
+	}
+	
+	/**
+	 * @return Bit mask of the inputs the expression reads, with bits as in {@link DexEnvironment#getInput(int)}, or {@link CemExpressionGraph#VOLATILE}
+	 */
+	public long getInputs(int handle){
+		return this.inputs[handle];
+	}
+	
+	public int getSlots(){
+		return this.shared.size();
+	}
+	
+	/** Number of nodes the optimizer removed */
+	public int getRemoved(){
+		return this.optimizer.getRemoved();
+	}
+	
+	/** Number of node evaluations per frame saved by sharing, not counting branches of if() that don't get taken */
+	public int getSaved(){
+		return this.saved;
+	}
+	
+	/**
+	 * Builds a key that is the same for identical subexpressions
+	 * @param record Whether to count how often each subexpression shows up
+	 * @return The key, or null if the subexpression reads a model part or a variable, or calls random() and can't be shared
+	 */
+	private String key(ParsedExpression expression, boolean record){
+		boolean shareable = !isVolatile(expression);
+		StringBuilder key = new StringBuilder(expression.getClass().getSimpleName()).append(':');
+		if(expression instanceof ParsedNumber number){
+			key.append(Integer.toHexString(Float.floatToIntBits(number.num)));
+		}
+		else{
+			key.append(expression.getName());
+		}
+		key.append('(');
+		for(ParsedExpression child : CemExpressionOptimizer.children(expression)){
+			String childKey = this.key(child, record);
+			if(childKey == null){
+				shareable = false;
+				if(!record){
+					return null;
+				}
+			}
+			key.append(childKey).append(',');
+		}
+		key.append(')');
+		if(!shareable){
+			return null;
+		}
+		if(record && isWorthSharing(expression)){
+			this.occurrences.merge(key.toString(), 1, Integer::sum);
+		}
+		return key.toString();
+	}
+	
+	private ParsedExpression share(ParsedExpression expression){
+		String key = isWorthSharing(expression)? this.key(expression, false) : null;
+		if(key != null && this.occurrences.getOrDefault(key, 0) > 1){
+			ParsedShared node = this.shared.get(key);
+			if(node == null){
+				//children first, so that nested shared nodes get their slots before this one
+				ParsedExpressionFloat value = (ParsedExpressionFloat) this.shareChildren(expression);
+				node = new ParsedShared(this.shared.size(), value);
+				this.shared.put(key, node);
+			}
+			return node;
+		}
+		return this.shareChildren(expression);
+	}
+	
+	private ParsedExpression shareChildren(ParsedExpression expression){
+		ParsedExpression[] children = CemExpressionOptimizer.children(expression);
+		if(children.length == 0){
+			return expression;
+		}
+		for(int i = 0; i < children.length; i++){
+			children[i] = this.share(children[i]);
+		}
+		return CemExpressionOptimizer.withChildren(expression, children);
+	}
+	
+	/** Finds the parameters the expression reads */
+	private void collect(ParsedExpression expression){
+		if(expression instanceof ParsedParameterFloat parameter){
+			this.floatParameters.add(parameter.parameter);
+		}
+		else if(expression instanceof ParsedParameterBool parameter){
+			this.boolParameters.add(parameter.parameter);
+		}
+		for(ParsedExpression child : CemExpressionOptimizer.children(expression)){
+			this.collect(child);
+		}
+	}
+	
+	private static boolean reads(ParsedExpression expression, Predicate<ParsedExpression> leaf){
+		if(leaf.test(expression)){
+			return true;
+		}
+		for(ParsedExpression child : CemExpressionOptimizer.children(expression)){
+			if(reads(child, leaf)){
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static long inputs(ParsedExpression expression){
+		if(isVolatile(expression)){
+			return VOLATILE;
+		}
+		long inputs = 0;
+		if(expression instanceof ParsedParameterFloat parameter && parameter.parameter != FLOAT_PARAMETER.PI){
+			inputs = 1L << parameter.parameter.input();
+		}
+		else if(expression instanceof ParsedParameterBool parameter && parameter.parameter.isEntityParameter()){
+			inputs = 1L << parameter.parameter.input();
+		}
+		for(ParsedExpression child : CemExpressionOptimizer.children(expression)){
+			long childInputs = inputs(child);
+			if(childInputs == VOLATILE){
+				return VOLATILE;
+			}
+			inputs |= childInputs;
+		}
+		return inputs;
+	}
+	
+	private static boolean isVolatile(ParsedExpression expression){
+		return expression instanceof ParsedVar ||
+		       expression instanceof ParsedVariableFloat ||
+		       expression instanceof ParsedVariableBool ||
+		       expression instanceof ParsedNullary;
+	}
+	
+	/** Leaves are as cheap to evaluate as the cache lookup, and only numbers can be cached */
+	private static boolean isWorthSharing(ParsedExpression expression){
+		return expression instanceof ParsedExpressionFloat && !(expression instanceof ParsedNumber) && !(expression instanceof ParsedParameterFloat);
+	}
+	
+	private static int countEvaluated(ParsedExpression expression, Set<ParsedShared> visited){
+		if(expression instanceof ParsedShared shared){
+			return visited.add(shared)? countEvaluated(shared.value, visited) : 1;
+		}
+		int count = 1;
+		for(ParsedExpression child : CemExpressionOptimizer.children(expression)){
+			count += countEvaluated(child, visited);
+		}
+		return count;
+	}
+}
@@ -0,0 +1,388 @@
+package net.dorianpb.cem.internal.util;
+
+import net.dorianpb.cem.internal.util.CemStringParser.BOOL_FUNCTION_BOOL;
+import net.dorianpb.cem.internal.util.CemStringParser.BOOL_PARAMETER;
+import net.dorianpb.cem.internal.util.CemStringParser.FLOAT_FUNCTION;
+import net.dorianpb.cem.internal.util.CemStringParser.FLOAT_PARAMETER;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedBetween;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedBinary;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedComparison;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedEquals;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedExpression;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedExpressionBool;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedExpressionFloat;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedIf;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedIn;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedLogic;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedNot;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedNullary;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedNumber;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedParameterBool;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedParameterFloat;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedShared;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedTernary;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedUnary;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedVar;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedVariadic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Rewrites parsed animations before they get compiled: folds constants, drops identities, collapses constant {@code if} branches and puts the cheaper side of
+ * {@code &&}/{@code ||} first. Every rewrite gives bit-identical results, so things like {@code x * 0} or {@code x + 0} are left alone, as they aren't
+ * the same as {@code 0} and {@code x} when {@code x} is NaN or -0.
+ */
+public class CemExpressionOptimizer{
+	private int removed;
+	
+	/** Number of nodes removed by this optimizer so far */
+	public int getRemoved(){
+		return removed;
+	}
+	
+	/** Counts nodes removed from an expression that was optimized before, see {@link CemExpressionCache} */
+	void addRemoved(int removed){
+		this.removed += removed;
+	}
+	
+	ParsedExpressionFloat optimize(ParsedExpressionFloat expression){
+		ParsedExpressionFloat result = this.simplifyFloat(expression);
+		this.removed += count(expression) - count(result);
+		return result;
+	}
+	
+	ParsedExpressionBool optimize(ParsedExpressionBool expression){
+		ParsedExpressionBool result = this.simplifyBool(expression);
+		this.removed += count(expression) - count(result);
+		return result;
+	}
+	
+	private ParsedExpressionFloat simplifyFloat(ParsedExpressionFloat expression){
+		if(expression instanceof ParsedParameterFloat parameter && parameter.parameter == FLOAT_PARAMETER.PI){
+			return new ParsedNumber(parameter.parameter.value(null));
+		}
+		else if(expression instanceof ParsedUnary unary){
+			ParsedExpressionFloat arg = this.simplifyFloat(unary.arg);
+			return fold(new ParsedUnary(unary.function, arg), arg);
+		}
+		else if(expression instanceof ParsedBinary binary){
+			return this.simplifyBinary(binary);
+		}
+		else if(expression instanceof ParsedTernary ternary){
+			ParsedExpressionFloat first = this.simplifyFloat(ternary.first);
+			ParsedExpressionFloat second = this.simplifyFloat(ternary.second);
+			ParsedExpressionFloat third = this.simplifyFloat(ternary.third);
+			return fold(new ParsedTernary(ternary.function, first, second, third), first, second, third);
+		}
+		else if(expression instanceof ParsedVariadic variadic){
+			return this.simplifyVariadic(variadic);
+		}
+		else if(expression instanceof ParsedIf parsedIf){
+			return this.simplifyIf(parsedIf);
+		}
+		return expression;
+	}
+	
+	private ParsedExpressionFloat simplifyBinary(ParsedBinary binary){
+		ParsedExpressionFloat left = this.simplifyFloat(binary.left);
+		ParsedExpressionFloat right = this.simplifyFloat(binary.right);
+		ParsedExpressionFloat folded = fold(new ParsedBinary(binary.function, left, right), left, right);
+		if(folded instanceof ParsedNumber){
+			return folded;
+		}
+		return switch(binary.function){
+			case MULT -> is(left, 1F)? right : is(right, 1F)? left : folded;
+			case DIV, POW -> is(right, 1F)? left : folded;
+			//only -0 is the identity for addition, since -0 + 0 is 0
+			case ADD -> is(left, -0F)? right : is(right, -0F)? left : folded;
+			case SUB -> is(right, 0F)? left : folded;
+			default -> folded;
+		};
+	}
+	
+	/** min() and max() pick from a total order, so all the constant arguments can be merged into one no matter where they are */
+	private ParsedExpressionFloat simplifyVariadic(ParsedVariadic variadic){
+		ArrayList<ParsedExpressionFloat> args = new ArrayList<>();
+		ParsedNumber constant = null;
+		for(ParsedExpressionFloat arg : variadic.args){
+			ParsedExpressionFloat simplified = this.simplifyFloat(arg);
+			if(simplified instanceof ParsedNumber number){
+				constant = (constant == null)? number : new ParsedNumber(variadic.function.apply(constant.num, number.num));
+			}
+			else{
+				args.add(simplified);
+			}
+		}
+		if(constant != null){
+			args.add(constant);
+		}
+		return (args.size() == 1)? args.get(0) : new ParsedVariadic(variadic.function, args.toArray(new ParsedExpressionFloat[0]));
+	}
+	
+	private ParsedExpressionFloat simplifyIf(ParsedIf parsedIf){
+		ArrayList<ParsedExpressionBool> conditions = new ArrayList<>();
+		ArrayList<ParsedExpressionFloat> expressions = new ArrayList<>();
+		ParsedExpressionFloat otherwise = null;
+		for(int i = 0; i < parsedIf.conditions.length; i++){
+			ParsedExpressionBool condition = this.simplifyBool(parsedIf.conditions[i]);
+			if(is(condition, true)){
+				otherwise = this.simplifyFloat(parsedIf.expressions[i]);
+				break;
+			}
+			else if(!is(condition, false)){
+				conditions.add(condition);
+				expressions.add(this.simplifyFloat(parsedIf.expressions[i]));
+			}
+		}
+		if(otherwise == null){
+			otherwise = this.simplifyFloat(parsedIf.expressions[parsedIf.expressions.length - 1]);
+		}
+		if(conditions.isEmpty()){
+			return otherwise;
+		}
+		expressions.add(otherwise);
+		return new ParsedIf(conditions.toArray(new ParsedExpressionBool[0]), expressions.toArray(new ParsedExpressionFloat[0]));
+	}
+	
+	private ParsedExpressionBool simplifyBool(ParsedExpressionBool expression){
+		if(expression instanceof ParsedNot not){
+			ParsedExpressionBool arg = this.simplifyBool(not.arg);
+			if(arg instanceof ParsedNot inner){
+				return inner.arg;
+			}
+			return fold(new ParsedNot(arg), arg);
+		}
+		else if(expression instanceof ParsedLogic logic){
+			return this.simplifyLogic(logic);
+		}
+		else if(expression instanceof ParsedComparison comparison){
+			ParsedExpressionFloat left = this.simplifyFloat(comparison.left);
+			ParsedExpressionFloat right = this.simplifyFloat(comparison.right);
+			return fold(new ParsedComparison(comparison.function, left, right), left, right);
+		}
+		else if(expression instanceof ParsedBetween between){
+			ParsedExpressionFloat value = this.simplifyFloat(between.value);
+			ParsedExpressionFloat min = this.simplifyFloat(between.min);
+			ParsedExpressionFloat max = this.simplifyFloat(between.max);
+			return fold(new ParsedBetween(value, min, max), value, min, max);
+		}
+		else if(expression instanceof ParsedEquals equals){
+			ParsedExpressionFloat value = this.simplifyFloat(equals.value);
+			ParsedExpressionFloat target = this.simplifyFloat(equals.target);
+			ParsedExpressionFloat epsilon = this.simplifyFloat(equals.epsilon);
+			return fold(new ParsedEquals(value, target, epsilon), value, target, epsilon);
+		}
+		else if(expression instanceof ParsedIn in){
+			ParsedExpressionFloat value = this.simplifyFloat(in.value);
+			ParsedExpressionFloat[] options = new ParsedExpressionFloat[in.options.length];
+			for(int i = 0; i < options.length; i++){
+				options[i] = this.simplifyFloat(in.options[i]);
+			}
+			ParsedExpressionFloat[] args = new ParsedExpressionFloat[options.length + 1];
+			args[0] = value;
+			System.arraycopy(options, 0, args, 1, options.length);
+			return fold(new ParsedIn(value, options), args);
+		}
+		return expression;
+	}
+	
+	private ParsedExpressionBool simplifyLogic(ParsedLogic logic){
+		ParsedExpressionBool left = this.simplifyBool(logic.left);
+		ParsedExpressionBool right = this.simplifyBool(logic.right);
+		//absorbing is what && does with false and || does with true
+		boolean absorbing = logic.function == BOOL_FUNCTION_BOOL.OR;
+		if(is(left, absorbing)){
+			return left;
+		}
+		else if(is(left, !absorbing)){
+			return right;
+		}
+		else if(is(right, !absorbing)){
+			return left;
+		}
+		else if(is(right, absorbing) && isPure(left)){
+			return right;
+		}
+		else if(isPure(left) && isPure(right) && cost(right) < cost(left)){
+			return new ParsedLogic(logic.function, right, left);
+		}
+		return new ParsedLogic(logic.function, left, right);
+	}
+	
+	/** Evaluates the node right away if all of its arguments are constants */
+	private static ParsedExpressionFloat fold(ParsedExpressionFloat expression, ParsedExpressionFloat... args){
+		for(ParsedExpressionFloat arg : args){
+			if(!(arg instanceof ParsedNumber)){
+				return expression;
+			}
+		}
+		return new ParsedNumber(expression.evalFloat(null));
+	}
+	
+	private static ParsedExpressionBool fold(ParsedExpressionBool expression, ParsedExpression... args){
+		for(ParsedExpression arg : args){
+			if(!(arg instanceof ParsedNumber) && !is(arg, true) && !is(arg, false)){
+				return expression;
+			}
+		}
+		return new ParsedParameterBool(expression.evalBool(null)? BOOL_PARAMETER.TRUE : BOOL_PARAMETER.FALSE);
+	}
+	
+	private static boolean is(ParsedExpression expression, float num){
+		return expression instanceof ParsedNumber number && Float.floatToIntBits(number.num) == Float.floatToIntBits(num);
+	}
+	
+	private static boolean is(ParsedExpression expression, boolean value){
+		return expression instanceof ParsedParameterBool parameter && parameter.parameter == (value? BOOL_PARAMETER.TRUE : BOOL_PARAMETER.FALSE);
+	}
+	
+	/** Only random() has side effects, so anything without it can be skipped or reordered */
+	private static boolean isPure(ParsedExpression expression){
+		if(expression instanceof ParsedNullary){
+			return false;
+		}
+		for(ParsedExpression child : children(expression)){
+			if(!isPure(child)){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/** Rough number of cycles an expression takes, it only needs to be good enough to pick which side of a && or || goes first */
+	static int cost(ParsedExpression expression){
+		int cost;
+		if(expression instanceof ParsedNumber){
+			cost = 0;
+		}
+		else if(expression instanceof ParsedParameterFloat parameter){
+			cost = switch(parameter.parameter){
+				case LIMB_SWING, LIMB_SPEED, AGE, HEAD_YAW, HEAD_PITCH, PI -> 1;
+				case TIME -> 8;
+				default -> 3;
+			};
+		}
+		else if(expression instanceof ParsedParameterBool parameter){
+			cost = (parameter.parameter == BOOL_PARAMETER.TRUE || parameter.parameter == BOOL_PARAMETER.FALSE)? 0 : 3;
+		}
+		else if(expression instanceof ParsedVar){
+			cost = 3;
+		}
+		else{
+			FLOAT_FUNCTION function = null;
+			if(expression instanceof ParsedUnary unary){
+				function = unary.function;
+			}
+			else if(expression instanceof ParsedBinary binary){
+				function = binary.function;
+			}
+			cost = (function == null)? 1 : switch(function){
+				case ASIN, ACOS, TAN, ATAN, ATAN2, EXP, LOG, POW, SQRT -> 20;
+				default -> 1;
+			};
+		}
+		for(ParsedExpression child : children(expression)){
+			cost += cost(child);
+		}
+		return cost;
+	}
+	
+	static int count(ParsedExpression expression){
+		int count = 1;
+		for(ParsedExpression child : children(expression)){
+			count += count(child);
+		}
+		return count;
+	}
+	
+	static ParsedExpression[] children(ParsedExpression expression){
+		if(expression instanceof ParsedUnary unary){
+			return new ParsedExpression[]{unary.arg};
+		}
+		else if(expression instanceof ParsedBinary binary){
+			return new ParsedExpression[]{binary.left, binary.right};
+		}
+		else if(expression instanceof ParsedTernary ternary){
+			return new ParsedExpression[]{ternary.first, ternary.second, ternary.third};
+		}
+		else if(expression instanceof ParsedVariadic variadic){
+			return variadic.args.clone();
+		}
+		else if(expression instanceof ParsedIf parsedIf){
+			ParsedExpression[] children = new ParsedExpression[parsedIf.conditions.length + parsedIf.expressions.length];
+			System.arraycopy(parsedIf.conditions, 0, children, 0, parsedIf.conditions.length);
+			System.arraycopy(parsedIf.expressions, 0, children, parsedIf.conditions.length, parsedIf.expressions.length);
+			return children;
+		}
+		else if(expression instanceof ParsedNot not){
+			return new ParsedExpression[]{not.arg};
+		}
+		else if(expression instanceof ParsedLogic logic){
+			return new ParsedExpression[]{logic.left, logic.right};
+		}
+		else if(expression instanceof ParsedComparison comparison){
+			return new ParsedExpression[]{comparison.left, comparison.right};
+		}
+		else if(expression instanceof ParsedBetween between){
+			return new ParsedExpression[]{between.value, between.min, between.max};
+		}
+		else if(expression instanceof ParsedEquals equals){
+			return new ParsedExpression[]{equals.value, equals.target, equals.epsilon};
+		}
+		else if(expression instanceof ParsedIn in){
+			ParsedExpression[] children = new ParsedExpression[in.options.length + 1];
+			children[0] = in.value;
+			System.arraycopy(in.options, 0, children, 1, in.options.length);
+			return children;
+		}
+		else if(expression instanceof ParsedShared shared){
+			return new ParsedExpression[]{shared.value};
+		}
+		return new ParsedExpression[0];
+	}
+	
+	/** Counterpart to {@link CemExpressionOptimizer#children(ParsedExpression)}, creates a copy of the node with different children */
+	static ParsedExpression withChildren(ParsedExpression expression, ParsedExpression[] children){
+		if(expression instanceof ParsedUnary unary){
+			return new ParsedUnary(unary.function, (ParsedExpressionFloat) children[0]);
+		}
+		else if(expression instanceof ParsedBinary binary){
+			return new ParsedBinary(binary.function, (ParsedExpressionFloat) children[0], (ParsedExpressionFloat) children[1]);
+		}
+		else if(expression instanceof ParsedTernary ternary){
+			return new ParsedTernary(ternary.function, (ParsedExpressionFloat) children[0], (ParsedExpressionFloat) children[1], (ParsedExpressionFloat) children[2]);
+		}
+		else if(expression instanceof ParsedVariadic variadic){
+			return new ParsedVariadic(variadic.function, Arrays.copyOf(children, children.length, ParsedExpressionFloat[].class));
+		}
+		else if(expression instanceof ParsedIf parsedIf){
+			int conditions = parsedIf.conditions.length;
+			return new ParsedIf(Arrays.copyOfRange(children, 0, conditions, ParsedExpressionBool[].class),
+			                    Arrays.copyOfRange(children, conditions, children.length, ParsedExpressionFloat[].class)
+			);
+		}
+		else if(expression instanceof ParsedNot){
+			return new ParsedNot((ParsedExpressionBool) children[0]);
+		}
+		else if(expression instanceof ParsedLogic logic){
+			return new ParsedLogic(logic.function, (ParsedExpressionBool) children[0], (ParsedExpressionBool) children[1]);
+		}
+		else if(expression instanceof ParsedComparison comparison){
+			return new ParsedComparison(comparison.function, (ParsedExpressionFloat) children[0], (ParsedExpressionFloat) children[1]);
+		}
+		else if(expression instanceof ParsedBetween){
+			return new ParsedBetween((ParsedExpressionFloat) children[0], (ParsedExpressionFloat) children[1], (ParsedExpressionFloat) children[2]);
+		}
+		else if(expression instanceof ParsedEquals){
+			return new ParsedEquals((ParsedExpressionFloat) children[0], (ParsedExpressionFloat) children[1], (ParsedExpressionFloat) children[2]);
+		}
+		else if(expression instanceof ParsedIn){
+			return new ParsedIn((ParsedExpressionFloat) children[0], Arrays.copyOfRange(children, 1, children.length, ParsedExpressionFloat[].class));
+		}
+		else if(expression instanceof ParsedShared shared){
+			return new ParsedShared(shared.slot, (ParsedExpressionFloat) children[0]);
+		}
+		return expression;
+	}
+}
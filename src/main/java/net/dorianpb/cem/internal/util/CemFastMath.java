@@ -0,0 +1,112 @@
+package net.dorianpb.cem.internal.util;
+
+import net.minecraft.util.math.MathHelper;
+
+/**
+ * Float versions of the math functions animations use, trading a little accuracy for not going through {@link Math}'s double routines. Used instead of the
+ * exact functions when "use_fast_math" is on. Largest errors, relative to the exact result rounded to float:
+ * <ul>
+ *     <li>tan: uses the same tables as sin and cos, so 1e-4 times (1 + tan^2) absolute, about 1e-4 near 0 and growing towards the poles</li>
+ *     <li>asin, acos, atan: 2.5e-7 absolute</li>
+ *     <li>exp, log: 3e-7 relative</li>
+ *     <li>pow: 3e-7 times (1 + |b * log(a)|) relative, as long as the result is a normal float</li>
+ * </ul>
+ * Anything outside of the range an approximation was made for (NaN, infinities, negative bases, ...) is handed to {@link Math}, so special cases stay exact.
+ */
+public class CemFastMath{
+	private static final float   HALF_PI = 1.5707964F;
+	private static final float   PI      = 3.1415927F;
+	private static final float   LOG2E   = 1.442695F;
+	private static final float   LN2_HI  = 0.693145751953125F;
+	private static final float   LN2_LO  = 1.4286068E-6F;
+	private static final float   SQRT2   = 1.4142135F;
+	private static       boolean enabled;
+	
+	public static boolean isEnabled(){
+		return enabled;
+	}
+	
+	/** Switched on reload, along with the caches, so that already folded constants agree with what is evaluated */
+	public static void setEnabled(boolean enabled){
+		CemFastMath.enabled = enabled;
+	}
+	
+	static float tan(float a){
+		return MathHelper.sin(a) / MathHelper.cos(a);
+	}
+	
+	static float asin(float a){
+		float abs = Math.abs(a);
+		float result = (abs > 0.5F)? HALF_PI - 2 * asinPoly(MathHelper.sqrt(0.5F * (1 - abs))) : asinPoly(abs);
+		return Math.copySign(result, a);
+	}
+	
+	static float acos(float a){
+		if(a < -0.5F){
+			return PI - 2 * asinPoly(MathHelper.sqrt(0.5F * (1 + a)));
+		}
+		else if(a > 0.5F){
+			return 2 * asinPoly(MathHelper.sqrt(0.5F * (1 - a)));
+		}
+		return HALF_PI - asin(a);
+	}
+	
+	/** Cephes' polynomial for asin on [0, 0.5] */
+	private static float asinPoly(float a){
+		float z = a * a;
+		return ((((0.042163199048F * z + 0.024181311049F) * z + 0.045470025998F) * z + 0.074953002686F) * z + 0.16666752422F) * z * a + a;
+	}
+	
+	/** Cephes' reduction to [-tan(pi / 8), tan(pi / 8)] and polynomial */
+	static float atan(float a){
+		float abs = Math.abs(a);
+		float offset = 0;
+		if(abs > 2.4142137F){
+			offset = HALF_PI;
+			abs = -1 / abs;
+		}
+		else if(abs > 0.41421357F){
+			offset = PI / 4;
+			abs = (abs - 1) / (abs + 1);
+		}
+		float z = abs * abs;
+		float result = offset + ((((0.0805374449538F * z - 0.138776856032F) * z + 0.199777106478F) * z - 0.333329491539F) * z * abs + abs);
+		return Math.copySign(result, a);
+	}
+	
+	/** Splits off a power of two, which is put straight into the exponent, and uses a Taylor series for the rest */
+	static float exp(float a){
+		if(!(a > -87F && a < 88F)){
+			return (float) Math.exp(a);
+		}
+		int k = Math.round(a * LOG2E);
+		float r = a - k * LN2_HI - k * LN2_LO;
+		float poly = 1 + r * (1 + r * (0.5F + r * (1 / 6F + r * (1 / 24F + r * (1 / 120F + r * (1 / 720F))))));
+		return poly * Float.intBitsToFloat((k + 127) << 23);
+	}
+	
+	/** Takes the exponent from the bits of the float, and uses the series for atanh for the mantissa */
+	static float log(float a){
+		if(!(a >= Float.MIN_NORMAL && a < Float.POSITIVE_INFINITY)){
+			return (float) Math.log(a);
+		}
+		int bits = Float.floatToRawIntBits(a);
+		int e = (bits >>> 23) - 127;
+		float m = Float.intBitsToFloat((bits & 0x7FFFFF) | 0x3F800000);
+		if(m > SQRT2){
+			m *= 0.5F;
+			e++;
+		}
+		float t = (m - 1) / (m + 1);
+		float t2 = t * t;
+		float poly = 2 * t * (1 + t2 * (1 / 3F + t2 * (1 / 5F + t2 * (1 / 7F + t2 / 9F))));
+		return e * LN2_HI + (poly + e * LN2_LO);
+	}
+	
+	static float pow(float a, float b){
+		if(a > 0 && a < Float.POSITIVE_INFINITY && Float.isFinite(b)){
+			return exp(b * log(a));
+		}
+		return (float) Math.pow(a, b);
+	}
+}
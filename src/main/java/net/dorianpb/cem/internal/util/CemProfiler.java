@@ -0,0 +1,211 @@
+package net.dorianpb.cem.internal.util;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import net.dorianpb.cem.internal.util.CemExpressionCompiler.CompiledExpression;
+import net.dorianpb.cem.internal.util.CemStringParser.ParsedExpression;
+import net.fabricmc.loader.api.FabricLoader;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * Finds out which animations are expensive. Every animation gets an {@link Entry} when its model is loaded; while the profiler is running, the entry counts
+ * how often the animation is applied and times one in every {@link #SAMPLE_RATE} of them, from which the total time is estimated. While it is stopped,
+ * applying an animation only costs a check of {@link #isEnabled()}. The {@link CemAnimationCache} of every model is registered as well, to tell how many
+ * evaluations it skipped, and the hits and misses of the {@link CemExpressionCache} since the last reload are reported with them. Only used from the render
+ * thread, apart from handing out entries.
+ */
+public class CemProfiler{
+	private static final int                                           SAMPLE_RATE = 16;
+	private static final String                                        FILE_NAME   = "cem_profile.json";
+	private static final HashMap<String, Entry>                        ENTRIES     = new HashMap<>();
+	private static final HashMap<String, ArrayList<CemAnimationCache>> CACHES      = new HashMap<>();
+	private static       boolean                                       enabled;
+	
+	public static boolean isEnabled(){
+		return enabled;
+	}
+	
+	public static void start(){
+		enabled = true;
+	}
+	
+	public static void stop(){
+		enabled = false;
+	}
+	
+	/** Forgets everything recorded so far, keeping the entries of the loaded models */
+	public static synchronized void reset(){
+		ENTRIES.values().forEach(Entry::reset);
+		CACHES.values().forEach((caches) -> caches.forEach(CemAnimationCache::resetCounts));
+	}
+	
+	/** Drops all entries, called on reload before the models are built again */
+	public static synchronized void clear(){
+		ENTRIES.clear();
+		CACHES.clear();
+	}
+	
+	/**
+	 * @param file       Path of the jem file
+	 * @param animation  Name of the animation, like "head.rx" or "var.tilt"
+	 * @param expression Finished expression of the animation, to count its nodes
+	 * @return Entry to record the animation to, shared by every model loaded from the same file
+	 */
+	public static synchronized Entry get(String file, String animation, ParsedExpression expression){
+		Entry entry = ENTRIES.computeIfAbsent(file + " " + animation, (key) -> new Entry(file, animation));
+		entry.nodes = count(expression);
+		return entry;
+	}
+	
+	/** Registers the animation cache of a model loaded from {@code file}, copies of the cache count to it as well */
+	public static synchronized void register(String file, CemAnimationCache cache){
+		CACHES.computeIfAbsent(file, (key) -> new ArrayList<>()).add(cache);
+	}
+	
+	private static int count(ParsedExpression expression){
+		if(expression instanceof CompiledExpression compiled){
+			return count(compiled.getSource());
+		}
+		int count = 1;
+		for(ParsedExpression child : CemExpressionOptimizer.children(expression)){
+			count += count(child);
+		}
+		return count;
+	}
+	
+	/**
+	 * Logs the {@code top} animations that took the most time, and writes them to "cem_profile.json" in the game directory
+	 * @return Path of the written file, null if it couldn't be written
+	 */
+	public static synchronized Path dump(int top){
+		ArrayList<Entry> entries = new ArrayList<>();
+		for(Entry entry : ENTRIES.values()){
+			if(entry.evaluations > 0){
+				entries.add(entry);
+			}
+		}
+		entries.sort(Comparator.comparingLong(Entry::getNanos).reversed());
+		long total = 0;
+		for(Entry entry : entries){
+			total += entry.getNanos();
+		}
+		
+		long executed = 0;
+		long skipped = 0;
+		JsonArray caches = new JsonArray();
+		for(String file : CACHES.keySet().stream().sorted().toList()){
+			long fileExecuted = 0;
+			long fileSkipped = 0;
+			for(CemAnimationCache cache : CACHES.get(file)){
+				fileExecuted += cache.getExecuted();
+				fileSkipped += cache.getSkipped();
+			}
+			if(fileExecuted + fileSkipped > 0){
+				JsonObject object = new JsonObject();
+				object.addProperty("file", file);
+				object.addProperty("executed", fileExecuted);
+				object.addProperty("skipped", fileSkipped);
+				caches.add(object);
+			}
+			executed += fileExecuted;
+			skipped += fileSkipped;
+		}
+		
+		CemFairy.getLogger().info("Animations took an estimated " + total / 1000000 + " ms, " + skipped + " of " + (executed + skipped) +
+		                          " evaluations were skipped by the animation cache");
+		CemFairy.getLogger().info("The expression cache reused " + CemExpressionCache.getParsedHits() + " of " +
+		                          (CemExpressionCache.getParsedHits() + CemExpressionCache.getParsedMisses()) + " parsed and " +
+		                          CemExpressionCache.getCompiledHits() + " of " +
+		                          (CemExpressionCache.getCompiledHits() + CemExpressionCache.getCompiledMisses()) + " compiled expressions");
+		JsonArray array = new JsonArray();
+		for(Entry entry : entries.subList(0, Math.min(top, entries.size()))){
+			CemFairy.getLogger().info(String.format("%8d us %10d evaluations %6.0f ns each %4d nodes  %s: %s",
+			                                        entry.getNanos() / 1000,
+			                                        entry.evaluations,
+			                                        (double) entry.getNanos() / entry.evaluations,
+			                                        entry.nodes,
+			                                        entry.file,
+			                                        entry.animation));
+			JsonObject object = new JsonObject();
+			object.addProperty("file", entry.file);
+			object.addProperty("animation", entry.animation);
+			object.addProperty("evaluations", entry.evaluations);
+			object.addProperty("nanos", entry.getNanos());
+			object.addProperty("nodes", entry.nodes);
+			array.add(object);
+		}
+		JsonObject json = new JsonObject();
+		json.addProperty("total_nanos", total);
+		json.addProperty("cache_executed", executed);
+		json.addProperty("cache_skipped", skipped);
+		json.add("caches", caches);
+		JsonObject expressions = new JsonObject();
+		expressions.addProperty("parsed_hits", CemExpressionCache.getParsedHits());
+		expressions.addProperty("parsed_misses", CemExpressionCache.getParsedMisses());
+		expressions.addProperty("compiled_hits", CemExpressionCache.getCompiledHits());
+		expressions.addProperty("compiled_misses", CemExpressionCache.getCompiledMisses());
+		json.add("expression_cache", expressions);
+		json.add("animations", array);
+		
+		Path path = FabricLoader.getInstance().getGameDir().resolve(FILE_NAME);
+		try(Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)){
+			CemFairy.getGson().toJson(json, writer);
+			return path;
+		}
+		catch(IOException exception){
+			CemFairy.getLogger().error("Couldn't write " + path + ": " + exception.getMessage());
+			return null;
+		}
+	}
+	
+	public static class Entry{
+		private final String file;
+		private final String animation;
+		private       int    nodes;
+		private       long   evaluations;
+		private       long   samples;
+		private       long   sampledNanos;
+		
+		private Entry(String file, String animation){
+			this.file = file;
+			this.animation = animation;
+		}
+		
+		/** Counts one evaluation, and says whether it should be timed */
+		public boolean sample(){
+			return this.evaluations++ % SAMPLE_RATE == 0;
+		}
+		
+		/** Records the time of a sampled evaluation */
+		public void record(long nanos){
+			this.samples++;
+			this.sampledNanos += nanos;
+		}
+		
+		/** Records {@code evaluations} evaluations that were timed together, as when a whole batch of entities is animated at once */
+		public void record(int evaluations, long nanos){
+			this.evaluations += evaluations;
+			this.samples += evaluations;
+			this.sampledNanos += nanos;
+		}
+		
+		/** Estimated time of all evaluations */
+		private long getNanos(){
+			return (this.samples == 0)? 0 : (long) ((double) this.sampledNanos / this.samples * this.evaluations);
+		}
+		
+		private void reset(){
+			this.evaluations = 0;
+			this.samples = 0;
+			this.sampledNanos = 0;
+		}
+	}
+}
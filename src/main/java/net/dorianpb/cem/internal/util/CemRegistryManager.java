@@ -1,18 +1,29 @@
 package net.dorianpb.cem.internal.util;
 
+import net.dorianpb.cem.internal.config.CemConfigFairy;
 import net.dorianpb.cem.internal.file.JemFile;
+import net.dorianpb.cem.internal.models.CemFamilyTree;
 import net.dorianpb.cem.internal.models.CemModelRegistry;
+import net.dorianpb.cem.internal.models.CemModelTemplate;
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.block.entity.BlockEntityType;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.EntityType;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class CemRegistryManager{
 	private static final HashMap<EntityType<? extends Entity>, JemFile>           EntityTypeRegistries      = new HashMap<>();
 	private static final HashMap<BlockEntityType<? extends BlockEntity>, JemFile> BlockEntityTypeRegistries = new HashMap<>();
 	private static final HashMap<String, JemFile>                                 OtherRegistries           = new HashMap<>();
+	private static final IdentityHashMap<JemFile, CemModelTemplate>               Templates                 = new IdentityHashMap<>();
 	
 	
 	public static void addRegistry(EntityType<? extends Entity> entityType, JemFile file){
@@ -46,20 +57,78 @@ public class CemRegistryManager{
 	}
 	
 	public static CemModelRegistry getRegistry(EntityType<? extends Entity> entityType){
-		return new CemModelRegistry(EntityTypeRegistries.get(entityType));
+		return getRegistry(EntityTypeRegistries.get(entityType));
 	}
 	
 	public static CemModelRegistry getRegistry(BlockEntityType<? extends BlockEntity> entityType){
-		return new CemModelRegistry(BlockEntityTypeRegistries.get(entityType));
+		return getRegistry(BlockEntityTypeRegistries.get(entityType));
 	}
 	
 	public static CemModelRegistry getRegistry(String entityType){
-		return new CemModelRegistry(OtherRegistries.get(entityType));
+		return getRegistry(OtherRegistries.get(entityType));
+	}
+	
+	/** Makes a new registry from the template of the file, building the template first if {@link CemRegistryManager#prepareTemplates()} hasn't */
+	private static CemModelRegistry getRegistry(JemFile file){
+		return Templates.computeIfAbsent(file, CemModelTemplate::new).instantiate();
+	}
+	
+	/**
+	 * Builds a template for every file at once on the common {@link ForkJoinPool}, so that the models are put together and their animations parsed and
+	 * compiled before the renderers ask for them. Problems are logged one file after another, sorted by path.
+	 */
+	public static void prepareTemplates(){
+		ArrayList<JemFile> files = new ArrayList<>();
+		files.addAll(EntityTypeRegistries.values());
+		files.addAll(BlockEntityTypeRegistries.values());
+		files.addAll(OtherRegistries.values());
+		buildTemplates(files, ForkJoinPool.commonPool(), (file, template, error) -> {
+			if(error == null){
+				template.flushLog();
+				Templates.put(file, template);
+			}
+			else{
+				CemFairy.getLogger().error("Error building model " + file.getPath() + ":");
+				CemFairy.getLogger().error(error);
+			}
+		});
+	}
+	
+	/**
+	 * Builds a template for every file on {@code pool}, and hands them to {@code done} on this thread one after another, sorted by path, however the tasks
+	 * finish. The pool is a parameter so that reloads can be timed on any number of cores.
+	 */
+	static void buildTemplates(Collection<JemFile> files, ForkJoinPool pool, TemplateConsumer done){
+		ArrayList<JemFile> sorted = new ArrayList<>(files);
+		sorted.sort(Comparator.comparing(JemFile::getPath));
+		ArrayList<ForkJoinTask<CemModelTemplate>> templates = new ArrayList<>();
+		for(JemFile file : sorted){
+			templates.add(pool.submit(() -> new CemModelTemplate(file, false)));
+		}
+		for(int i = 0; i < sorted.size(); i++){
+			try{
+				done.accept(sorted.get(i), templates.get(i).get(), null);
+			} catch(InterruptedException | ExecutionException exception){
+				done.accept(sorted.get(i), null, (exception.getCause() != null)? exception.getCause() : exception);
+			}
+		}
 	}
 	
 	public static void clearRegistries(){
 		EntityTypeRegistries.clear();
 		BlockEntityTypeRegistries.clear();
 		OtherRegistries.clear();
+		Templates.clear();
+		CemExpressionCache.clear();
+		CemProfiler.clear();
+		CemFamilyTree.clear();
+		CemTextureAlpha.clear();
+		CemFastMath.setEnabled(CemConfigFairy.getConfig() != null && CemConfigFairy.getConfig().useFastMath());
+	}
+	
+	/** Gets the template built for a file, or why it couldn't be built, see {@link CemRegistryManager#buildTemplates} */
+	@FunctionalInterface
+	interface TemplateConsumer{
+		void accept(JemFile file, CemModelTemplate template, Throwable error);
 	}
 }
\ No newline at end of file
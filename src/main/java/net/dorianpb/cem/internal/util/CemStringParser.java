@@ -1,9 +1,9 @@
 package net.dorianpb.cem.internal.util;
 
+import net.dorianpb.cem.internal.config.CemConfigFairy;
+import net.dorianpb.cem.internal.models.CemAnimationBatch;
 import net.dorianpb.cem.internal.models.CemModelEntry;
 import net.dorianpb.cem.internal.models.CemModelRegistry;
-import net.dorianpb.cem.internal.util.CemStringParser.ParsedFunction.ParsedFunctionBool;
-import net.dorianpb.cem.internal.util.CemStringParser.ParsedFunction.ParsedFunctionFloat;
 import net.dorianpb.cem.internal.util.CemStringParser.ParsedFunction.ParsedFunctionType;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.entity.LivingEntity;
@@ -14,445 +14,315 @@ import java.lang.invoke.WrongMethodTypeException;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 public class CemStringParser{
+	private static final HashMap<String, ParsedFunction> SYMBOLS = new HashMap<>();
 	
-	public static ParsedExpression parse(String expr, CemModelRegistry registry, CemModelEntry parent){
-		DexEnvironment.setRegistry(registry);
-		Token token = initParseLoop(expr);
-		ParsedFunction matched = matchToken(token);
-		ParsedVar.parent = parent;
-		if(matched.getType() == ParsedFunctionType.FLOAT){
-			return new ParsedExpressionFloat(token);
-		}
-		else{
-			return new ParsedExpressionBool(token);
+	static{
+		//same order the enums used to be searched in
+		for(ParsedFunction[] functions : new ParsedFunction[][]{FLOAT_PARAMETER.values(), FLOAT_FUNCTION.values(), BOOL_PARAMETER.values(), BOOL_FUNCTION_FLOAT.values(), BOOL_FUNCTION_BOOL.values()}){
+			for(ParsedFunction function : functions){
+				SYMBOLS.putIfAbsent(function.toString(), function);
+			}
 		}
 	}
 	
-	static ParsedFunction matchToken(Token token){
-		if(token.getName().equals("NUM")){
-			try{
-				return new ParsedNumber((NumToken) token);
-			} catch(Exception ignored){
-				throw new IllegalArgumentException("Why is there a token named \"NUM\" that is not a NumToken?");
-			}
-		}
-		else if(token.getName().contains(".")){
-			return new ParsedVar(token);
-		}
-		else if(token.getName().equalsIgnoreCase("if")){
-			return new ParsedIf(token);
-		}
-		else{
-			try{
-				return FLOAT_PARAMETER.valueOf(token.getName().toUpperCase());
-			} catch(Exception ignored){
-			}
-			try{
-				return FLOAT_FUNCTION.valueOf(token.getName().toUpperCase());
-			} catch(Exception ignored){
-			}
-			try{
-				return BOOL_PARAMETER.valueOf(token.getName().toUpperCase());
-			} catch(Exception ignored){
-			}
-			try{
-				return BOOL_FUNCTION_FLOAT.valueOf(token.getName().toUpperCase());
-			} catch(Exception ignored){
-			}
-			try{
-				return BOOL_FUNCTION_BOOL.valueOf(token.getName().toUpperCase());
-			} catch(Exception ignored){
-			}
+	/**
+	 * Parses an animation, runs it through the optimizer and compiles it if enabled. Use a {@link CemExpressionGraph} for the animations of a whole model instead.
+	 */
+	public static ParsedExpression parse(String expr, CemModelRegistry registry, CemModelEntry parent){
+		ParsedExpression expression = parse(expr, registry, parent, new CemExpressionOptimizer());
+		if(expression instanceof ParsedExpressionFloat && (CemConfigFairy.getConfig() == null || CemConfigFairy.getConfig().useCompiledAnimations())){
+			return CemExpressionCompiler.compile((ParsedExpressionFloat) expression);
 		}
-		throw new IllegalArgumentException("Unknown symbol \"" + token.getName() + "\"");
+		return expression;
 	}
 	
 	/**
-	 * This runs first to prepare the string, then sends it to the parseLoop to be turned into a giant Token
+	 * Parses an animation and runs it through the optimizer, without compiling it
+	 * @param optimizer Optimizer to use, shared between all animations of a file so that it can keep count of what it removed
 	 */
-	private static Token initParseLoop(String input){
-		ArrayList<String> work = new ArrayList<>(Arrays.asList(input.replaceAll("\\s*(\\+|-|\\*|/|%|!=|\\|\\||&&|>=|<=|==|>|<)\\s*",
-		                                                                        " $1 "
-		                                                                       ) //ensure there is whitespace between operators
-		                                                            .replaceAll("!\\s*(\\w)", " ! $1") //keep ! with expression
-		                                                            .replaceAll("\\s*([(),])\\s*", " $1 ")//ensure correct whitespace for ( and )
-		                                                            .replaceAll("(\\s)+", " ") //remove duplicate whitespace
-		                                                            .replaceAll("§", "") //just to be safe
-		                                                            .trim().split(" ")));
-		//try to eliminate garbage
-		Pattern garbagePattern = Pattern.compile("^[+\\-*/%!=|&><\\w(),].*$");
-		for(String badboi : work){
-			if(!garbagePattern.matcher(badboi).find()){
-				throw new IllegalArgumentException("Garbage symbol \"" + badboi + "\"");
-			}
-		}
-		//find functions, turn parentheses into curly braces so that we don't parse them as grouped expressions and we correctly parse them later
-		Pattern functionPattern = Pattern.compile("^(\\w\\d?)+$");
-		int j = 0;
-		while(true){
-			int i = regIndexOf(work, "^\\($", j);
-			if(i >= 0){
-				j = i + 1;
-				if(i > 0 && functionPattern.matcher(work.get(i - 1)).find()){
-					work.set(i + takeParen(work, i).size() + 1, "}");
-					work.set(i, "{");
-				}
-			}
-			else{
-				break;
-			}
-		}
-		return parseLoop(work, new ArrayList<>());
+	static ParsedExpression parse(String expr, CemModelRegistry registry, CemModelEntry parent, CemExpressionOptimizer optimizer){
+		Token token = new TokenParser(expr).parse();
+		Bindings bindings = new Bindings();
+		StringBuilder key = new StringBuilder().append(expr.length()).append(':').append(expr);
+		resolveBindings(token, registry, parent, bindings, key);
+		CemExpressionCache.Parsed template = CemExpressionCache.getParsed(key.toString());
+		if(template != null){
+			optimizer.addRemoved(template.removed);
+			return CemExpressionCache.bind(template.expression, bindings.parts::get);
+		}
+		int removed = optimizer.getRemoved();
+		ParsedExpression expression = (typeOf(token) == ParsedFunctionType.FLOAT)? optimizer.optimize(buildFloat(token, bindings)) : optimizer.optimize(buildBool(token, bindings));
+		CemExpressionCache.putParsed(key.toString(), CemExpressionCache.bind(expression, name -> null), optimizer.getRemoved() - removed);
+		return expression;
 	}
 	
 	/**
-	 * AKA the Token grinder
+	 * Finds the model parts and variables an expression refers to, and appends where they are in the model to the key, so that the same text pointing to
+	 * different parts doesn't get mixed up in the {@link CemExpressionCache}
 	 */
-	private static Token parseLoop(ArrayList<String> input, ArrayList<Token> tokens){
-		//REMEMBER P E M D A S
-		ArrayList<String> work = new ArrayList<>(input);
-		int i = -1; //used to remember position in case of failure
-		try{
-			//convert functions to tokens
-			while(true){
-				i = regIndexOf(work, "^\\{$");
-				if(i >= 0){
-					int k = indexOfEndOfArgs(work, i);
-					tokens.add(new Token(work.get(i - 1), parseArgs(work, tokens, i, k)));
-					for(int j = (k - i + 2); j > 0; j--){
-						work.remove(i - 1);
-					}
-					work.add(i - 1, "§" + (tokens.size() - 1));
-					
-				}
-				else{
-					break;
-				}
-			}
-			//parentheses
-			while(true){
-				i = regIndexOf(work, "^\\($");
-				if(i >= 0){
-					ArrayList<String> sub = takeParen(work, i);
-					if(sub.size() == 0){
-						throw new IllegalArgumentException("Invalid Syntax: " + (i > 0? work.get(i - 1) : "") + work.get(i) + (i < work.size() - 1? work.get(i + 1) : ""));
-					}
-					else{ //otherwise treat it normally
-						for(int j = sub.size() + 2; j > 0; j--){
-							work.remove(i);
-						}
-						tokens.add(parseLoop(sub, tokens));
-						work.add(i, "§" + (tokens.size() - 1)); //placeholder for evaluated parentheses expression
-						
-					}
-				}
-				else{
-					break;
-				}
-			}
-			//convert raw numbers to tokens
-			while(true){
-				i = regIndexOf(work, "^(\\d+)([.]\\d+)?$");
-				if(i >= 0){
-					tokens.add(new NumToken(Float.parseFloat(work.set(i, "§" + tokens.size()))));
-				}
-				else{
-					break;
-				}
-			}
-			//convert variable names to tokens
-			while(true){
-				i = regIndexOf(work, "^\\w(\\w\\d?:?)+([.]\\w\\w)?$");
-				if(i >= 0){
-					tokens.add(new Token(work.set(i, "§" + tokens.size())));
-				}
-				else{
-					break;
-				}
-			}
-			//handle negative numbers here
-			while(true){
-				i = regIndexOf(work, "^[-]$");
-				if(i >= 0 && (i == 0 || !work.get(i - 1).startsWith("§"))){
-					tokens.add(new NumToken(0));
-					work.add(i, "§" + (tokens.size() - 1));
-					ArrayList<Token> args = new ArrayList<>();
-					i++;
-					args.add(getToken(work.get(i - 1), tokens));
-					args.add(getToken(work.get(i + 1), tokens));
-					tokens.add(new Token("SUB", args));
-					work.remove(i);
-					work.remove(i);
-					work.set(i - 1, "§" + (tokens.size() - 1));
-				}
-				else{
-					break;
-				}
-			}
-			//exponents aren't a thing, so we go to multiplication and division(including modulo)
-			while(true){
-				i = regIndexOf(work, "^[*/%]$");
-				if(i >= 0){
-					ArrayList<Token> args = new ArrayList<>();
-					args.add(getToken(work.get(i - 1), tokens));
-					args.add(getToken(work.get(i + 1), tokens));
-					String name = switch(work.get(i)){
-						case "*" -> "MULT";
-						case "/" -> "DIV";
-						case "%" -> "MOD";
-						default -> throw new IllegalStateException("Unexpected value: " + work.get(i));
-					};
-					tokens.add(new Token(name, args));
-					work.remove(i);
-					work.remove(i);
-					work.set(i - 1, "§" + (tokens.size() - 1));
-				}
-				else{
-					break;
-				}
-			}
-			//addition & subtraction
-			while(true){
-				i = regIndexOf(work, "^[+-]$");
-				if(i >= 0){
-					ArrayList<Token> args = new ArrayList<>();
-					args.add(getToken(work.get(i - 1), tokens));
-					args.add(getToken(work.get(i + 1), tokens));
-					tokens.add(new Token(work.get(i).equals("+")? "ADD" : "SUB", args));
-					work.remove(i);
-					work.remove(i);
-					work.set(i - 1, "§" + (tokens.size() - 1));
-				}
-				else{
-					break;
-				}
-			}
-			//not
-			while(true){
-				i = regIndexOf(work, "^!$");
-				if(i >= 0){
-					ArrayList<Token> args = new ArrayList<>();
-					args.add(getToken(work.get(i + 1), tokens));
-					work.remove(i + 1);
-					tokens.add(new Token("NOT", args));
-					work.set(i, "§" + (tokens.size() - 1));
-				}
-				else{
-					break;
-				}
-			}
-			//equality
-			while(true){
-				i = regIndexOf(work, "^==|!=|<=|>=|<|>$");
-				if(i >= 0){
-					ArrayList<Token> args = new ArrayList<>();
-					args.add(getToken(work.get(i - 1), tokens));
-					args.add(getToken(work.get(i + 1), tokens));
-					String name = switch(work.get(i)){
-						case "==" -> "EQ";
-						case "!=" -> "NOTEQ";
-						case "<=" -> "LESSEQ";
-						case ">=" -> "GREATEREQ";
-						case "<" -> "LESS";
-						case ">" -> "GREATER";
-						default -> throw new IllegalStateException("Unexpected value: " + work.get(i));
-					};
-					tokens.add(new Token(name, args));
-					work.remove(i);
-					work.remove(i);
-					work.set(i - 1, "§" + (tokens.size() - 1));
-				}
-				else{
-					break;
-				}
+	private static void resolveBindings(Token token, CemModelRegistry registry, CemModelEntry parent, Bindings bindings, StringBuilder key){
+		if(token instanceof NumToken){
+			return;
+		}
+		if(isVariable(token) && registry != null){
+			if(!bindings.variables.containsKey(token.getName())){
+				String name = token.getName().substring(token.getName().indexOf(".") + 1);
+				int id = isBoolVariable(token)? registry.getVariables().getBool(name) : registry.getVariables().getFloat(name);
+				bindings.variables.put(token.getName(), id);
+				key.append('|').append(token.getName()).append('=').append(id);
 			}
-			//AND/OR
-			while(true){
-				i = regIndexOf(work, "^&&|\\|\\|$");
-				if(i >= 0){
-					ArrayList<Token> args = new ArrayList<>();
-					args.add(getToken(work.get(i - 1), tokens));
-					args.add(getToken(work.get(i + 1), tokens));
-					tokens.add(new Token(work.get(i).equals("+")? "ADD" : "SUB", args));
-					work.remove(i);
-					work.remove(i);
-					work.set(i - 1, "§" + (tokens.size() - 1));
-				}
-				else{
-					break;
-				}
+		}
+		else if(token.getName().contains(".") && registry != null){
+			String name = token.getName().substring(0, token.getName().indexOf("."));
+			if(!bindings.parts.containsKey(name)){
+				CemModelEntry entry = registry.findChild(name, parent);
+				bindings.parts.put(name, entry);
+				key.append('|').append(name).append('=').append(registry.getPath(entry));
 			}
-		} catch(Exception e){
-			StringBuilder expr = new StringBuilder();
-			input.forEach(expr::append);
-			throw new IllegalArgumentException("\"" + e + "\" occurred when trying to parse animation at index " + i + "!");
-		}
-		if(work.size() != 1){
-			//attempt to find problem symbol
-			for(String badboi : work){
-				if(badboi.charAt(0) != '§'){
-					throw new IllegalArgumentException("Unknown symbol \"" + badboi + "\"");
-				}
+		}
+		if(token.getArgs() != null){
+			for(Token arg : token.getArgs()){
+				resolveBindings(arg, registry, parent, bindings, key);
 			}
-			throw new IllegalArgumentException("Error parsing " + work);
 		}
-		return getToken(work.get(0), tokens);
 	}
 	
-	/**
-	 * Returns the sub array of values inside parentheses
-	 */
-	private static ArrayList<String> takeParen(ArrayList<String> strings, int start){
-		int lvl = 0;
-		if(!strings.get(start).equals("(")){
-			throw new IllegalArgumentException("Expecting \"(\", received \"" + strings.get(start) + "\"");
-		}
-		for(int w = start; w < strings.size(); w++){
-			if(strings.get(w).equals("(")){
-				lvl++;
-			}
-			if(strings.get(w).equals(")")){
-				lvl--;
-				if(lvl == 0){
-					return new ArrayList<>(strings.subList(start + 1, w));
-				}
-			}
+	static ParsedFunction matchToken(Token token){
+		ParsedFunction function = SYMBOLS.get(token.getName().toUpperCase(Locale.ROOT));
+		if(function == null){
+			throw new IllegalArgumentException("Unknown symbol \"" + token.getName() + "\"");
+		}
+		return function;
+	}
+	
+	/** Whether the token is a var.* or varb.* variable, rather than a model part */
+	private static boolean isVariable(Token token){
+		return !(token instanceof NumToken) && (token.getName().startsWith("var.") || isBoolVariable(token));
+	}
+	
+	private static boolean isBoolVariable(Token token){
+		return !(token instanceof NumToken) && token.getName().startsWith("varb.");
+	}
+	
+	private static ParsedFunctionType typeOf(Token token){
+		if(isBoolVariable(token)){
+			return ParsedFunctionType.BOOL;
 		}
-		throw new NullPointerException("expected \")\"");
+		else if(token instanceof NumToken || token.getName().contains(".") || token.getName().equalsIgnoreCase("if")){
+			return ParsedFunctionType.FLOAT;
+		}
+		return matchToken(token).getType();
 	}
 	
 	/**
-	 * Find index of the closing "}" to an opening "{"
+	 * Turns a Token into a tree of float nodes, picking the node class by arity so that nothing gets boxed or copied while evaluating
+	 * @param bindings Model parts and variables the expression refers to, by name
 	 */
-	private static int indexOfEndOfArgs(ArrayList<String> strings, int start){
-		int lvl = 0;
-		if(!strings.get(start).equals("{")){
-			throw new IllegalArgumentException("Expecting \"{\", received \"" + strings.get(start) + "\"");
-		}
-		//find correct area where arguments are
-		for(int w = start; w < strings.size(); w++){
-			if(strings.get(w).equals("{")){
-				lvl++;
+	private static ParsedExpressionFloat buildFloat(Token token, Bindings bindings){
+		if(token instanceof NumToken){
+			return new ParsedNumber(((NumToken) token).getNum());
+		}
+		else if(isBoolVariable(token)){
+			throw new InvalidParameterException("\"" + token.getName() + "\" is not a number and will not return a number!");
+		}
+		else if(isVariable(token)){
+			return new ParsedVariableFloat(token, bindings.variables);
+		}
+		else if(token.getName().contains(".")){
+			return new ParsedVar(token, bindings.parts);
+		}
+		else if(token.getName().equalsIgnoreCase("if")){
+			return buildIf(token, bindings);
+		}
+		ParsedFunction function = matchToken(token);
+		if(function.getType() != ParsedFunctionType.FLOAT){
+			throw new InvalidParameterException("\"" + token.getName() + "\" is not a number and will not return a number!");
+		}
+		checkArgs(token.getName(), token.getArgs(), function.getArgNumber());
+		if(function instanceof FLOAT_PARAMETER){
+			return new ParsedParameterFloat((FLOAT_PARAMETER) function);
+		}
+		FLOAT_FUNCTION floatFunction = (FLOAT_FUNCTION) function;
+		ParsedExpressionFloat[] args = buildFloatArgs(token, bindings);
+		if(floatFunction == FLOAT_FUNCTION.MIN || floatFunction == FLOAT_FUNCTION.MAX){
+			return new ParsedVariadic(floatFunction, args);
+		}
+		return switch(args.length){
+			case 0 -> new ParsedNullary(floatFunction);
+			case 1 -> new ParsedUnary(floatFunction, args[0]);
+			case 2 -> new ParsedBinary(floatFunction, args[0], args[1]);
+			case 3 -> new ParsedTernary(floatFunction, args[0], args[1], args[2]);
+			default -> throw new IllegalStateException("Unexpected argument count: " + args.length);
+		};
+	}
+	
+	private static ParsedExpressionBool buildBool(Token token, Bindings bindings){
+		if(typeOf(token) != ParsedFunctionType.BOOL){
+			throw new InvalidParameterException("\"" + token.getName() + "\" is not a bool and will not return a bool!");
+		}
+		else if(isBoolVariable(token)){
+			return new ParsedVariableBool(token, bindings.variables);
+		}
+		ParsedFunction function = matchToken(token);
+		checkArgs(token.getName(), token.getArgs(), function.getArgNumber());
+		if(function instanceof BOOL_PARAMETER){
+			return new ParsedParameterBool((BOOL_PARAMETER) function);
+		}
+		else if(function instanceof BOOL_FUNCTION_FLOAT){
+			ParsedExpressionFloat[] args = buildFloatArgs(token, bindings);
+			return switch((BOOL_FUNCTION_FLOAT) function){
+				case BETWEEN -> new ParsedBetween(args[0], args[1], args[2]);
+				case EQUALS -> new ParsedEquals(args[0], args[1], args[2]);
+				case IN -> new ParsedIn(args[0], Arrays.copyOfRange(args, 1, args.length));
+				default -> new ParsedComparison((BOOL_FUNCTION_FLOAT) function, args[0], args[1]);
+			};
+		}
+		ParsedExpressionBool[] args = new ParsedExpressionBool[token.getArgs().size()];
+		for(int i = 0; i < args.length; i++){
+			try{
+				args[i] = buildBool(token.getArgs().get(i), bindings);
+			} catch(InvalidParameterException ignored){
+				throw new IllegalArgumentException("\"" + token.getName() + "\" requires bools as arguments and \"" + token.getArgs().get(i).getName() + "\" is not a bool!");
 			}
-			if(strings.get(w).equals("}")){
-				lvl--;
-				if(lvl == 0){
-					return w;
-				}
+		}
+		return (function == BOOL_FUNCTION_BOOL.NOT)? new ParsedNot(args[0]) : new ParsedLogic((BOOL_FUNCTION_BOOL) function, args[0], args[1]);
+	}
+	
+	private static ParsedExpressionFloat[] buildFloatArgs(Token token, Bindings bindings){
+		ParsedExpressionFloat[] args = new ParsedExpressionFloat[token.getArgs().size()];
+		for(int i = 0; i < args.length; i++){
+			try{
+				args[i] = buildFloat(token.getArgs().get(i), bindings);
+			} catch(InvalidParameterException ignored){
+				throw new IllegalArgumentException("\"" + token.getName() + "\" requires numbers as arguments and \"" + token.getArgs().get(i).getName() + "\" is not a number!");
 			}
 		}
-		throw new NullPointerException("expected \"}\"");
+		return args;
 	}
 	
-	private static ArrayList<Token> parseArgs(ArrayList<String> strings, ArrayList<Token> tokens, int start, int end){
-		//count number of arguments and split them into their own ArrayLists
-		int count = 0;
-		int lvl = 0;
-		ArrayList<ArrayList<String>> args = new ArrayList<>();
-		ArrayList<Token> tokenArgs = new ArrayList<>();
-		for(int w = start + 1; w < end; w++){
-			if(strings.get(w).equals(",") && lvl == 0){
-				count++;
+	/**
+	 * The "if" operator is the only operator whose arguments alternate between bools and numbers
+	 */
+	private static ParsedIf buildIf(Token token, Bindings bindings){
+		if(token.getArgs() == null){
+			throw new IllegalArgumentException("\"" + token.getName() + "\" requires arguments!");
+		}
+		ArrayList<ParsedExpressionBool> conditions = new ArrayList<>();
+		ArrayList<ParsedExpressionFloat> expressions = new ArrayList<>();
+		for(int i = 0; i < token.getArgs().size(); i++){
+			ParsedFunctionType wantedType = (i % 2 == 1 || i == token.getArgs().size() - 1)? ParsedFunctionType.FLOAT : ParsedFunctionType.BOOL;
+			if(wantedType == ParsedFunctionType.BOOL){
+				try{
+					conditions.add(buildBool(token.getArgs().get(i), bindings));
+				} catch(InvalidParameterException ignored){
+					throw new IllegalArgumentException("\"" + token.getName() + "\" requires a bool for argument #" + (i + 1) + ", but a " + "number was provided");
+				}
 			}
 			else{
-				if(strings.get(w).equals("{")){
-					lvl++;
-				}
-				if(strings.get(w).equals("}")){
-					lvl--;
+				try{
+					expressions.add(buildFloat(token.getArgs().get(i), bindings));
+				} catch(InvalidParameterException ignored){
+					throw new IllegalArgumentException("\"" + token.getName() + "\" requires a number for argument #" + (i + 1) + ", but a " + "bool was provided");
 				}
-				if(args.size() == count){
-					args.add(new ArrayList<>());
-				}
-				args.get(count).add(strings.get(w));
 			}
 		}
-		for(ArrayList<String> arg : args){
-			tokenArgs.add(parseLoop(arg, tokens));
+		if(conditions.size() == 0){
+			throw new IllegalArgumentException("\"" + token.getName() + "\" requires at least one condition!");
 		}
-		return tokenArgs;
-	}
-	
-	private static int regIndexOf(ArrayList<String> input, String regex, int start){
-		Pattern pattern = Pattern.compile(regex);
-		return regIndexOf(input, pattern, start);
-	}
-	
-	private static int regIndexOf(ArrayList<String> input, Pattern pattern, int start){
-		for(int i = start; i < input.size(); i++){
-			if(pattern.matcher(input.get(i)).find()){
-				return i;
-			}
+		else if(conditions.size() + 1 != expressions.size()){
+			throw new IllegalArgumentException("\"" + token.getName() + "\" is missing an \"val_else\" value, please add a number at the " + "end" + ".");
 		}
-		return -1;
+		return new ParsedIf(conditions.toArray(new ParsedExpressionBool[0]), expressions.toArray(new ParsedExpressionFloat[0]));
 	}
 	
-	private static int regIndexOf(ArrayList<String> input, String regex){
-		return regIndexOf(input, regex, 0);
-	}
-	
-	private static Token getToken(String expression, ArrayList<Token> temp){
-		if(expression.charAt(0) == '§'){
-			return temp.get(Integer.parseInt(expression.substring(1)));
+	private static void checkArgs(String name, ArrayList<Token> args, int paramNum){
+		if(args == null && paramNum != -2){
+			throw new IllegalArgumentException("Function \"" + name.toLowerCase() + "\" should be be followed with \"()\", as it is not a " + "parameter!");
+		}
+		else if(args != null && paramNum == -2){
+			throw new IllegalArgumentException("Parameter \"" + name.toLowerCase() + "\" does not take arguments and should not have any \"()" + "\"!");
+		}
+		else if(paramNum > -1 && args.size() != paramNum){
+			throw new IllegalArgumentException("Function \"" +
+			                                   name.toLowerCase() +
+			                                   "\" needs exactly " +
+			                                   paramNum +
+			                                   " parameters, but " +
+			                                   args.size() +
+			                                   " " +
+			                                   ((args.size() == 1)? "was" : "were") +
+			                                   " " +
+			                                   "given!");
+		}
+		else if(paramNum == -1 && args.size() == 0){
+			throw new IllegalArgumentException("Function \"" + name.toLowerCase() + "\" needs at least one parameter!");
 		}
-		throw new IllegalArgumentException("Invalid token reference " + expression);
 	}
 	
-	enum FLOAT_PARAMETER implements ParsedFunctionFloat{
+	enum FLOAT_PARAMETER implements ParsedFunction{
 		//render parameters
 		LIMB_SWING, LIMB_SPEED, AGE, HEAD_YAW, HEAD_PITCH, //entity parameters
 		HEALTH, HURT_TIME, IDLE_TIME, MAX_HEALTH, MOVE_FORWARD, MOVE_STRAFING, POS_X, POS_Y, POS_Z, REVENGE_TIME, SWING_PROGRESS, //other
 		TIME, PI,
 		;
 		
-		@Override
-		public Float eval(ArrayList<ParsedExpression> args){
+		float value(DexEnvironment env){
 			switch(this){
 				//render parameters
 				case AGE:
-					return DexEnvironment.getAge();
+					return env.getAge();
 				case HEAD_YAW:
-					return DexEnvironment.getHead_yaw();
+					return env.getHead_yaw();
 				case HEAD_PITCH:
-					return DexEnvironment.getHead_pitch();
+					return env.getHead_pitch();
 				case LIMB_SPEED:
-					return DexEnvironment.getLimbDistance();
+					return env.getLimbDistance();
 				case LIMB_SWING:
-					return DexEnvironment.getLimbAngle();
+					return env.getLimbAngle();
 				case TIME:
-					MinecraftClient minecraft = MinecraftClient.getInstance();
-					World world = minecraft.world;
-					return (world == null)? 0F : (float) (world.getTime() % 24000L) + minecraft.getTickDelta();
+					return DexEnvironment.getTime();
 				case PI:
 					return 3.1415926F;
 				//entity parameters
-				case HEALTH:
-					return DexEnvironment.getLivingEntity().getHealth();
-				case HURT_TIME:
-					return (float) DexEnvironment.getLivingEntity().hurtTime;
-				case IDLE_TIME:
-					return (float) DexEnvironment.getLivingEntity().getLastAttackTime();
-				case MAX_HEALTH:
-					return DexEnvironment.getLivingEntity().getMaxHealth();
-				case MOVE_FORWARD:
-					return DexEnvironment.getLivingEntity().forwardSpeed;
-				case MOVE_STRAFING:
-					return DexEnvironment.getLivingEntity().sidewaysSpeed;
-				case POS_X:
-					return (float) DexEnvironment.getLivingEntity().getX();
-				case POS_Y:
-					return (float) DexEnvironment.getLivingEntity().getY();
-				case POS_Z:
-					return (float) DexEnvironment.getLivingEntity().getZ();
-				case REVENGE_TIME:
-					return (float) DexEnvironment.getLivingEntity().getLastAttackedTime();
-				case SWING_PROGRESS:
-					return DexEnvironment.getLivingEntity().handSwingProgress;
+				default:
+					return env.getFloatParameter(this.ordinal());
 			}
-			throw new NullPointerException("uwu");
+		}
+		
+		/** Whether the value comes from the entity, and is part of the snapshot {@link DexEnvironment#setEnv} takes */
+		boolean isEntityParameter(){
+			return this.compareTo(HEALTH) >= 0 && this.compareTo(SWING_PROGRESS) <= 0;
+		}
+		
+		/** Index of this parameter in {@link DexEnvironment#getInput(int)} */
+		int input(){
+			return this.ordinal();
+		}
+		
+		float fetch(LivingEntity livingEntity){
+			return switch(this){
+				case HEALTH -> livingEntity.getHealth();
+				case HURT_TIME -> (float) livingEntity.hurtTime;
+				case IDLE_TIME -> (float) livingEntity.getLastAttackTime();
+				case MAX_HEALTH -> livingEntity.getMaxHealth();
+				case MOVE_FORWARD -> livingEntity.forwardSpeed;
+				case MOVE_STRAFING -> livingEntity.sidewaysSpeed;
+				case POS_X -> (float) livingEntity.getX();
+				case POS_Y -> (float) livingEntity.getY();
+				case POS_Z -> (float) livingEntity.getZ();
+				case REVENGE_TIME -> (float) livingEntity.getLastAttackedTime();
+				case SWING_PROGRESS -> livingEntity.handSwingProgress;
+				default -> throw new IllegalStateException("\"" + this + "\" isn't an entity parameter");
+			};
 		}
 		
 		@Override
@@ -466,7 +336,11 @@ public class CemStringParser{
 		}
 	}
 	
-	enum FLOAT_FUNCTION implements ParsedFunctionFloat{
+	/**
+	 * The static methods at the bottom are the actual definitions of each function; both the interpreter and {@link CemExpressionCompiler} call them, which keeps
+	 * compiled and interpreted animations bit-identical.
+	 */
+	enum FLOAT_FUNCTION implements ParsedFunction{
 		SIN,
 		COS,
 		ASIN,
@@ -498,56 +372,62 @@ public class CemStringParser{
 		MOD,
 		;
 		
-		@Override
-		public Float eval(ArrayList<ParsedExpression> args){
+		float apply(){
+			if(this == RANDOM){
+				return random();
+			}
+			throw new IllegalStateException("\"" + this + "\" doesn't take 0 arguments");
+		}
+		
+		float apply(float a){
 			return switch(this){
-				case SIN -> MathHelper.sin(((ParsedExpressionFloat) args.get(0)).eval());
-				case COS -> MathHelper.cos(((ParsedExpressionFloat) args.get(0)).eval());
-				case ASIN -> (float) Math.asin(((ParsedExpressionFloat) args.get(0)).eval());
-				case ACOS -> (float) Math.acos(((ParsedExpressionFloat) args.get(0)).eval());
-				case TAN -> (float) Math.tan(((ParsedExpressionFloat) args.get(0)).eval());
-				case ATAN -> (float) Math.atan(((ParsedExpressionFloat) args.get(0)).eval());
-				case ATAN2 -> (float) MathHelper.atan2(((ParsedExpressionFloat) args.get(0)).eval(), ((ParsedExpressionFloat) args.get(1)).eval());
-				case TORAD -> (float) Math.toRadians(((ParsedExpressionFloat) args.get(0)).eval());
-				case TODEG -> (float) Math.toDegrees(((ParsedExpressionFloat) args.get(0)).eval());
-				case MIN -> findExtreme(args, false);
-				case MAX -> findExtreme(args, true);
-				case CLAMP -> MathHelper.clamp(((ParsedExpressionFloat) args.get(0)).eval(),
-				                               ((ParsedExpressionFloat) args.get(1)).eval(),
-				                               ((ParsedExpressionFloat) args.get(2)).eval()
-				                              );
-				case ABS -> MathHelper.abs(((ParsedExpressionFloat) args.get(0)).eval());
-				case FLOOR -> (float) MathHelper.fastFloor(((ParsedExpressionFloat) args.get(0)).eval());
-				case CEIL -> (float) MathHelper.ceil(((ParsedExpressionFloat) args.get(0)).eval());
-				case EXP -> (float) Math.exp(((ParsedExpressionFloat) args.get(0)).eval());
-				case FRAC -> MathHelper.fractionalPart(((ParsedExpressionFloat) args.get(0)).eval());
-				case LOG -> (float) Math.log(((ParsedExpressionFloat) args.get(0)).eval());
-				case POW -> (float) Math.pow(((ParsedExpressionFloat) args.get(0)).eval(), ((ParsedExpressionFloat) args.get(1)).eval());
-				case RANDOM -> (float) Math.random();
-				case ROUND -> (float) Math.round(((ParsedExpressionFloat) args.get(0)).eval());
-				case SIGNUM -> Math.signum(((ParsedExpressionFloat) args.get(0)).eval());
-				case SQRT -> MathHelper.sqrt(((ParsedExpressionFloat) args.get(0)).eval());
-				case FMOD -> MathHelper.floorMod(((ParsedExpressionFloat) args.get(0)).eval(), ((ParsedExpressionFloat) args.get(1)).eval());
-				case ADD -> ((ParsedExpressionFloat) args.get(0)).eval() + ((ParsedExpressionFloat) args.get(1)).eval();
-				case SUB -> ((ParsedExpressionFloat) args.get(0)).eval() - ((ParsedExpressionFloat) args.get(1)).eval();
-				case MULT -> ((ParsedExpressionFloat) args.get(0)).eval() * ((ParsedExpressionFloat) args.get(1)).eval();
-				case DIV -> ((ParsedExpressionFloat) args.get(0)).eval() / ((ParsedExpressionFloat) args.get(1)).eval();
-				case MOD -> ((ParsedExpressionFloat) args.get(0)).eval() % ((ParsedExpressionFloat) args.get(1)).eval();
+				case SIN -> sin(a);
+				case COS -> cos(a);
+				case ASIN -> asin(a);
+				case ACOS -> acos(a);
+				case TAN -> tan(a);
+				case ATAN -> atan(a);
+				case TORAD -> torad(a);
+				case TODEG -> todeg(a);
+				case ABS -> abs(a);
+				case FLOOR -> floor(a);
+				case CEIL -> ceil(a);
+				case EXP -> exp(a);
+				case FRAC -> frac(a);
+				case LOG -> log(a);
+				case ROUND -> round(a);
+				case SIGNUM -> signum(a);
+				case SQRT -> sqrt(a);
+				default -> throw new IllegalStateException("\"" + this + "\" doesn't take 1 argument");
 			};
 		}
 		
-		@Override
-		public ParsedFunctionType getType(){
-			return ParsedFunctionType.FLOAT;
+		float apply(float a, float b){
+			return switch(this){
+				case ATAN2 -> atan2(a, b);
+				case MIN -> min(a, b);
+				case MAX -> max(a, b);
+				case POW -> pow(a, b);
+				case FMOD -> fmod(a, b);
+				case ADD -> a + b;
+				case SUB -> a - b;
+				case MULT -> a * b;
+				case DIV -> a / b;
+				case MOD -> a % b;
+				default -> throw new IllegalStateException("\"" + this + "\" doesn't take 2 arguments");
+			};
 		}
 		
-		private float findExtreme(ArrayList<ParsedExpression> args, boolean big){
-			float[] nums = new float[args.size()];
-			for(int i = 0; i < args.size(); i++){
-				nums[i] = ((ParsedExpressionFloat) args.get(i)).eval();
+		float apply(float a, float b, float c){
+			if(this == CLAMP){
+				return clamp(a, b, c);
 			}
-			Arrays.sort(nums);
-			return big? nums[nums.length - 1] : nums[0];
+			throw new IllegalStateException("\"" + this + "\" doesn't take 3 arguments");
+		}
+		
+		@Override
+		public ParsedFunctionType getType(){
+			return ParsedFunctionType.FLOAT;
 		}
 		
 		@Override
@@ -560,9 +440,107 @@ public class CemStringParser{
 				case RANDOM -> 0;
 			};
 		}
+		
+		static float sin(float a){
+			return MathHelper.sin(a);
+		}
+		
+		static float cos(float a){
+			return MathHelper.cos(a);
+		}
+		
+		static float asin(float a){
+			return CemFastMath.isEnabled()? CemFastMath.asin(a) : (float) Math.asin(a);
+		}
+		
+		static float acos(float a){
+			return CemFastMath.isEnabled()? CemFastMath.acos(a) : (float) Math.acos(a);
+		}
+		
+		static float tan(float a){
+			return CemFastMath.isEnabled()? CemFastMath.tan(a) : (float) Math.tan(a);
+		}
+		
+		static float atan(float a){
+			return CemFastMath.isEnabled()? CemFastMath.atan(a) : (float) Math.atan(a);
+		}
+		
+		static float atan2(float a, float b){
+			return (float) MathHelper.atan2(a, b);
+		}
+		
+		static float torad(float a){
+			return (float) Math.toRadians(a);
+		}
+		
+		static float todeg(float a){
+			return (float) Math.toDegrees(a);
+		}
+		
+		/** Same result as sorting the arguments and taking the first one, including NaN and -0 */
+		static float min(float a, float b){
+			return (Float.compare(a, b) <= 0)? a : b;
+		}
+		
+		/** Same result as sorting the arguments and taking the last one, including NaN and -0 */
+		static float max(float a, float b){
+			return (Float.compare(a, b) >= 0)? a : b;
+		}
+		
+		static float clamp(float a, float b, float c){
+			return MathHelper.clamp(a, b, c);
+		}
+		
+		static float abs(float a){
+			return MathHelper.abs(a);
+		}
+		
+		static float floor(float a){
+			return (float) MathHelper.fastFloor(a);
+		}
+		
+		static float ceil(float a){
+			return (float) MathHelper.ceil(a);
+		}
+		
+		static float exp(float a){
+			return CemFastMath.isEnabled()? CemFastMath.exp(a) : (float) Math.exp(a);
+		}
+		
+		static float frac(float a){
+			return MathHelper.fractionalPart(a);
+		}
+		
+		static float log(float a){
+			return CemFastMath.isEnabled()? CemFastMath.log(a) : (float) Math.log(a);
+		}
+		
+		static float pow(float a, float b){
+			return CemFastMath.isEnabled()? CemFastMath.pow(a, b) : (float) Math.pow(a, b);
+		}
+		
+		static float random(){
+			return (float) Math.random();
+		}
+		
+		static float round(float a){
+			return (float) Math.round(a);
+		}
+		
+		static float signum(float a){
+			return Math.signum(a);
+		}
+		
+		static float sqrt(float a){
+			return MathHelper.sqrt(a);
+		}
+		
+		static float fmod(float a, float b){
+			return MathHelper.floorMod(a, b);
+		}
 	}
 	
-	enum BOOL_PARAMETER implements ParsedFunctionBool{
+	enum BOOL_PARAMETER implements ParsedFunction{
 		IS_ALIVE,
 		IS_BURNING,
 		IS_CHILD,
@@ -581,31 +559,42 @@ public class CemStringParser{
 		FALSE,
 		;
 		
-		@Override
-		public Boolean eval(ArrayList<ParsedExpression> args){
+		boolean value(DexEnvironment env){
 			return switch(this){
-				case IS_ALIVE -> DexEnvironment.getLivingEntity().isAlive();
-				case IS_BURNING -> DexEnvironment.getLivingEntity().isOnFire();
-				case IS_CHILD -> DexEnvironment.getLivingEntity().isBaby();
-				case IS_GLOWING -> DexEnvironment.getLivingEntity().isGlowing();
-				case IS_HURT -> DexEnvironment.getLivingEntity().hurtTime != 0;
-				case IS_IN_LAVA -> DexEnvironment.getLivingEntity().isInLava();
-				case IS_IN_WATER -> DexEnvironment.getLivingEntity().isSubmergedInWater();
-				case IS_INVISIBLE -> DexEnvironment.getLivingEntity().isInvisible();
-				case IS_ON_GROUND -> DexEnvironment.getLivingEntity().isOnGround();
-				case IS_RIDDEN -> DexEnvironment.getLivingEntity().hasPassengers();
-				case IS_RIDING -> DexEnvironment.getLivingEntity().hasVehicle();
-				case IS_SNEAKING -> DexEnvironment.getLivingEntity().isSneaking();
-				case IS_SPRINTING -> DexEnvironment.getLivingEntity().isSprinting();
-				case IS_WET -> DexEnvironment.getLivingEntity().isWet();
 				case TRUE -> true;
 				case FALSE -> false;
+				default -> env.getBoolParameter(this.ordinal());
 			};
 		}
 		
-		@Override
-		public ParsedFunctionType getArgType(){
-			return null;
+		/** Whether the value comes from the entity, and is part of the snapshot {@link DexEnvironment#setEnv} takes */
+		boolean isEntityParameter(){
+			return this != TRUE && this != FALSE;
+		}
+		
+		/** Index of this parameter in {@link DexEnvironment#getInput(int)} */
+		int input(){
+			return FLOAT_PARAMETER.values().length + this.ordinal();
+		}
+		
+		boolean fetch(LivingEntity livingEntity){
+			return switch(this){
+				case IS_ALIVE -> livingEntity.isAlive();
+				case IS_BURNING -> livingEntity.isOnFire();
+				case IS_CHILD -> livingEntity.isBaby();
+				case IS_GLOWING -> livingEntity.isGlowing();
+				case IS_HURT -> livingEntity.hurtTime != 0;
+				case IS_IN_LAVA -> livingEntity.isInLava();
+				case IS_IN_WATER -> livingEntity.isSubmergedInWater();
+				case IS_INVISIBLE -> livingEntity.isInvisible();
+				case IS_ON_GROUND -> livingEntity.isOnGround();
+				case IS_RIDDEN -> livingEntity.hasPassengers();
+				case IS_RIDING -> livingEntity.hasVehicle();
+				case IS_SNEAKING -> livingEntity.isSneaking();
+				case IS_SPRINTING -> livingEntity.isSprinting();
+				case IS_WET -> livingEntity.isWet();
+				case TRUE, FALSE -> throw new IllegalStateException("\"" + this + "\" isn't an entity parameter");
+			};
 		}
 		
 		@Override
@@ -619,44 +608,20 @@ public class CemStringParser{
 		}
 	}
 	
-	enum BOOL_FUNCTION_FLOAT implements ParsedFunctionBool{
+	enum BOOL_FUNCTION_FLOAT implements ParsedFunction{
 		BETWEEN, EQUALS, IN, GREATER, GREATEREQ, LESS, LESSEQ, EQ, NOTEQ,
 		;
 		
-		@Override
-		public Boolean eval(ArrayList<ParsedExpression> args){
-			switch(this){
-				case BETWEEN:
-					return ((ParsedExpressionFloat) args.get(1)).eval() <= ((ParsedExpressionFloat) args.get(0)).eval() &&
-					       ((ParsedExpressionFloat) args.get(0)).eval() <= ((ParsedExpressionFloat) args.get(2)).eval();
-				case EQUALS:
-					return ((ParsedExpressionFloat) args.get(1)).eval() - ((ParsedExpressionFloat) args.get(2)).eval() <= ((ParsedExpressionFloat) args.get(0)).eval() &&
-					       ((ParsedExpressionFloat) args.get(0)).eval() <= ((ParsedExpressionFloat) args.get(1)).eval() + ((ParsedExpressionFloat) args.get(2)).eval();
-				case IN:
-					boolean x = false;
-					for(int i = 1; i < args.size(); i++){
-						x = (x || ((ParsedExpressionFloat) args.get(0)).eval() == ((ParsedExpressionFloat) args.get(i)).eval());
-					}
-					return x;
-				case GREATER:
-					return ((ParsedExpressionFloat) args.get(0)).eval() > ((ParsedExpressionFloat) args.get(1)).eval();
-				case GREATEREQ:
-					return ((ParsedExpressionFloat) args.get(0)).eval() >= ((ParsedExpressionFloat) args.get(1)).eval();
-				case LESS:
-					return ((ParsedExpressionFloat) args.get(0)).eval() < ((ParsedExpressionFloat) args.get(1)).eval();
-				case LESSEQ:
-					return ((ParsedExpressionFloat) args.get(0)).eval() <= ((ParsedExpressionFloat) args.get(1)).eval();
-				case EQ:
-					return ((ParsedExpressionFloat) args.get(0)).eval() == ((ParsedExpressionFloat) args.get(1)).eval();
-				case NOTEQ:
-					return ((ParsedExpressionFloat) args.get(0)).eval() != ((ParsedExpressionFloat) args.get(1)).eval();
-			}
-			throw new NullPointerException("my brain ... TREMBLES!");
-		}
-		
-		@Override
-		public ParsedFunctionType getArgType(){
-			return ParsedFunctionType.FLOAT;
+		boolean apply(float a, float b){
+			return switch(this){
+				case GREATER -> a > b;
+				case GREATEREQ -> a >= b;
+				case LESS -> a < b;
+				case LESSEQ -> a <= b;
+				case EQ -> a == b;
+				case NOTEQ -> a != b;
+				default -> throw new IllegalStateException("\"" + this + "\" isn't a simple comparison");
+			};
 		}
 		
 		@Override
@@ -674,24 +639,10 @@ public class CemStringParser{
 		}
 	}
 	
-	enum BOOL_FUNCTION_BOOL implements ParsedFunctionBool{
+	enum BOOL_FUNCTION_BOOL implements ParsedFunction{
 		NOT, AND, OR,
 		;
 		
-		@Override
-		public Boolean eval(ArrayList<ParsedExpression> args){
-			return switch(this){
-				case NOT -> !((ParsedExpressionBool) args.get(0)).eval();
-				case AND -> ((ParsedExpressionBool) args.get(0)).eval() && ((ParsedExpressionBool) args.get(1)).eval();
-				case OR -> ((ParsedExpressionBool) args.get(0)).eval() || ((ParsedExpressionBool) args.get(1)).eval();
-			};
-		}
-		
-		@Override
-		public ParsedFunctionType getArgType(){
-			return ParsedFunctionType.BOOL;
-		}
-		
 		@Override
 		public ParsedFunctionType getType(){
 			return ParsedFunctionType.BOOL;
@@ -711,320 +662,965 @@ public class CemStringParser{
 		enum ParsedFunctionType{
 			FLOAT, BOOL,
 		}
-		
-		interface ParsedFunctionFloat extends ParsedFunction{
-			Float eval(ArrayList<ParsedExpression> args);
-			
-			@Override
-			default ParsedFunctionType getType(){
-				return ParsedFunctionType.FLOAT;
-			}
-		}
-		
-		interface ParsedFunctionBool extends ParsedFunction{
-			Boolean eval(ArrayList<ParsedExpression> args);
-			
-			ParsedFunctionType getArgType();
-			
-			@Override
-			default ParsedFunctionType getType(){
-				return ParsedFunctionType.BOOL;
-			}
-		}
 	}
 	
 	public interface ParsedExpression{
-		default void checkArgs(ArrayList<ParsedExpression> args, int paramNum){
-			if(args == null && paramNum != -2){
-				throw new IllegalArgumentException("Function \"" + this.getName().toLowerCase() + "\" should be be followed with \"()\", as it is not a " + "parameter!");
-			}
-			else if(args != null && paramNum == -2){
-				throw new IllegalArgumentException("Parameter \"" + this.getName().toLowerCase() + "\" does not take arguments and should not have any \"()" + "\"!");
-			}
-			else if(paramNum > -1 && args.size() != paramNum){
-				throw new IllegalArgumentException("Function \"" +
-				                                   this.getName().toLowerCase() +
-				                                   "\" needs exactly " +
-				                                   paramNum +
-				                                   " parameters, but " +
-				                                   args.size() +
-				                                   " " +
-				                                   ((args.size() == 1)? "was" : "were") +
-				                                   " " +
-				                                   "given!");
-			}
-		}
-		
 		String getName();
 		
+		ParsedFunctionType getType();
+		
+		float evalFloat(DexEnvironment env);
+		
+		boolean evalBool(DexEnvironment env);
+		
+		/**
+		 * Evaluates this expression with a throwaway environment of the calling thread. Expressions built by a {@link CemExpressionGraph} need the environment
+		 * from {@link CemExpressionGraph#createEnvironment()} and have to use {@link ParsedExpression#evalFloat(DexEnvironment)} instead.
+		 */
 		default float eval(float limbAngle, float limbDistance, float age, float head_yaw, float head_pitch, LivingEntity livingEntity, CemModelRegistry registry){
-			if(this.getClass() == ParsedExpressionBool.class){
+			if(this.getType() != ParsedFunctionType.FLOAT){
 				throw new WrongMethodTypeException("\"" + this.getName() + " must evaluate to a number, not a boolean!");
 			}
-			else{
-				DexEnvironment.setEnv(limbAngle, limbDistance, age, head_yaw, head_pitch, livingEntity, registry);
-				return ((ParsedExpressionFloat) this).eval();
-			}
+			DexEnvironment env = DexEnvironment.SHARED.get();
+			env.setEnv(limbAngle, limbDistance, age, head_yaw, head_pitch, livingEntity, registry);
+			return this.evalFloat(env);
 		}
 	}
 	
-	private static class DexEnvironment{
-		private static float            limbAngle;
-		private static float            limbDistance;
-		private static float            age;
-		private static float            head_yaw;
-		private static float            head_pitch;
-		private static LivingEntity     livingEntity;
-		private static CemModelRegistry registry;
-		
-		static void setEnv(float limbAngle, float limbDistance, float age, float head_yaw, float head_pitch, LivingEntity livingEntity, CemModelRegistry registry){
-			DexEnvironment.limbAngle = limbAngle;
-			DexEnvironment.limbDistance = limbDistance;
-			DexEnvironment.age = age;
-			DexEnvironment.head_yaw = head_yaw;
-			DexEnvironment.head_pitch = head_pitch;
-			DexEnvironment.livingEntity = livingEntity;
-			DexEnvironment.registry = registry;
-		}
-		
-		static float getLimbAngle(){
-			return limbAngle;
+	/**
+	 * Everything an expression needs to know about the entity being animated. It also holds the cached values of {@link ParsedShared} nodes, which stay valid
+	 * until the next call to {@link DexEnvironment#setEnv(float, float, float, float, float, LivingEntity, CemModelRegistry)}. Nothing else about an evaluation is
+	 * kept in static state, so expressions can be parsed and evaluated on several threads at once as long as every thread uses its own environment.
+	 */
+	public static final class DexEnvironment{
+		private static final ThreadLocal<DexEnvironment> SHARED = ThreadLocal.withInitial(() -> new DexEnvironment(0));
+		private static final FLOAT_PARAMETER[]           FLOATS = FLOAT_PARAMETER.values();
+		private static       float                       time;
+		private static       int                         frame;
+		private final        float[]                     values;
+		private final        int[]                       stamps;
+		private final        FLOAT_PARAMETER[]           floatParameters;
+		private final        BOOL_PARAMETER[]            boolParameters;
+		private final        float[]                     floats;
+		private final        boolean[]                   bools;
+		private              int                         stamp;
+		private              float                       limbAngle;
+		private              float                       limbDistance;
+		private              float                       age;
+		private              float                       head_yaw;
+		private              float                       head_pitch;
+		private              LivingEntity                livingEntity;
+		private              CemModelRegistry            registry;
+		private              float[]                     variables;
+		private              boolean[]                   boolVariables;
+		private              CemAnimationBatch           batch;
+		private              int                         index;
+		
+		/**
+		 * @param slots Number of shared nodes the expressions evaluated with this environment use, see {@link CemExpressionGraph#getSlots()}
+		 */
+		public DexEnvironment(int slots){
+			this(slots, EnumSet.allOf(FLOAT_PARAMETER.class), EnumSet.allOf(BOOL_PARAMETER.class));
 		}
 		
-		static float getLimbDistance(){
-			return limbDistance;
+		/** Creates an environment for the same expressions as {@code environment} */
+		public DexEnvironment(DexEnvironment environment){
+			this.values = new float[environment.values.length];
+			this.stamps = new int[environment.stamps.length];
+			this.floatParameters = environment.floatParameters;
+			this.boolParameters = environment.boolParameters;
+			this.floats = new float[environment.floats.length];
+			this.bools = new boolean[environment.bools.length];
+			this.variables = new float[0];
+			this.boolVariables = new boolean[0];
 		}
 		
-		static float getAge(){
-			return age;
+		/**
+		 * @param floatParameters Parameters the expressions read, only the ones coming from the entity are taken from it in {@link DexEnvironment#setEnv}
+		 */
+		DexEnvironment(int slots, Set<FLOAT_PARAMETER> floatParameters, Set<BOOL_PARAMETER> boolParameters){
+			this.values = new float[slots];
+			this.stamps = new int[slots];
+			this.floatParameters = floatParameters.stream().filter(FLOAT_PARAMETER::isEntityParameter).toArray(FLOAT_PARAMETER[]::new);
+			this.boolParameters = boolParameters.stream().filter(BOOL_PARAMETER::isEntityParameter).toArray(BOOL_PARAMETER[]::new);
+			this.floats = new float[FLOAT_PARAMETER.values().length];
+			this.bools = new boolean[BOOL_PARAMETER.values().length];
+			this.variables = new float[0];
+			this.boolVariables = new boolean[0];
 		}
 		
-		static float getHead_yaw(){
-			return head_yaw;
+		/** Takes the values that are the same for every entity, once per frame */
+		public static void beginFrame(){
+			MinecraftClient minecraft = MinecraftClient.getInstance();
+			World world = minecraft.world;
+			time = (world == null)? 0F : (float) (world.getTime() % 24000L) + minecraft.getTickDelta();
+			frame++;
 		}
 		
-		static float getHead_pitch(){
-			return head_pitch;
+		public void setEnv(float limbAngle, float limbDistance, float age, float head_yaw, float head_pitch, LivingEntity livingEntity, CemModelRegistry registry){
+			this.limbAngle = limbAngle;
+			this.limbDistance = limbDistance;
+			this.age = age;
+			this.head_yaw = head_yaw;
+			this.head_pitch = head_pitch;
+			this.livingEntity = livingEntity;
+			this.registry = registry;
+			this.stamp++;
+			if(livingEntity != null){
+				for(FLOAT_PARAMETER parameter : this.floatParameters){
+					this.floats[parameter.ordinal()] = parameter.fetch(livingEntity);
+				}
+				for(BOOL_PARAMETER parameter : this.boolParameters){
+					this.bools[parameter.ordinal()] = parameter.fetch(livingEntity);
+				}
+			}
+			if(registry != null){
+				registry.getVariables().bind(this, livingEntity);
+			}
 		}
 		
-		static LivingEntity getLivingEntity(){
-			return livingEntity;
+		/** Makes model part references read the pose of entity {@code index} in {@code batch} rather than the model itself, pass null to read the model again */
+		public void setBatch(CemAnimationBatch batch, int index){
+			this.batch = batch;
+			this.index = index;
 		}
 		
-		static CemModelRegistry getRegistry(){
-			return DexEnvironment.registry;
+		boolean isCached(int slot){
+			return this.stamps[slot] == this.stamp;
 		}
 		
-		static void setRegistry(CemModelRegistry registry){
-			DexEnvironment.registry = registry;
+		float load(int slot){
+			return this.values[slot];
 		}
 		
+		float store(int slot, float value){
+			this.values[slot] = value;
+			this.stamps[slot] = this.stamp;
+			return value;
+		}
+		
+		float getLimbAngle(){
+			return limbAngle;
+		}
+		
+		float getLimbDistance(){
+			return limbDistance;
+		}
+		
+		float getAge(){
+			return age;
+		}
+		
+		float getHead_yaw(){
+			return head_yaw;
+		}
+		
+		float getHead_pitch(){
+			return head_pitch;
+		}
+		
+		LivingEntity getLivingEntity(){
+			return livingEntity;
+		}
+		
+		CemModelRegistry getRegistry(){
+			return registry;
+		}
+		
+		static float getTime(){
+			return time;
+		}
+		
+		/** Counts the calls to {@link DexEnvironment#beginFrame()}, nothing frame-global changes until it does */
+		public static int getFrame(){
+			return frame;
+		}
+		
+		/**
+		 * Everything an expression can read apart from model parts and random numbers, as one list of floats
+		 * @param input See {@link FLOAT_PARAMETER#input()} and {@link BOOL_PARAMETER#input()}
+		 */
+		float getInput(int input){
+			if(input < FLOATS.length){
+				return FLOATS[input].value(this);
+			}
+			return this.bools[input - FLOATS.length]? 1F : 0F;
+		}
+		
+		float getFloatParameter(int ordinal){
+			return this.floats[ordinal];
+		}
+		
+		boolean getBoolParameter(int ordinal){
+			return this.bools[ordinal];
+		}
+		
+		/** Used by {@link CemVariableStore}, the arrays belong to the entity and are written to directly */
+		void setVariables(float[] variables, boolean[] boolVariables){
+			this.variables = variables;
+			this.boolVariables = boolVariables;
+		}
+		
+		float getVariable(int id){
+			return this.variables[id];
+		}
+		
+		boolean getBoolVariable(int id){
+			return this.boolVariables[id];
+		}
+		
+		public void setVariable(int id, float value){
+			this.variables[id] = value;
+		}
+		
+		public void setBoolVariable(int id, boolean value){
+			this.boolVariables[id] = value;
+		}
+		
+		CemAnimationBatch getBatch(){
+			return batch;
+		}
+		
+		int getIndex(){
+			return index;
+		}
 	}
 	
-	static class ParsedExpressionFloat implements ParsedExpression{
-		private final ParsedFunctionFloat         operation;
-		private final ArrayList<ParsedExpression> arguments;
-		
-		ParsedExpressionFloat(Token token){
-			ParsedFunction temp = matchToken(token);
-			if(temp.getType() == ParsedFunctionType.FLOAT){
-				this.operation = (ParsedFunctionFloat) temp;
-			}
-			else{
-				throw new InvalidParameterException("\"" + token.getName() + "\" is not a number and will not return a number!");
-			}
-			if(token.getArgs() != null && this.operation.getClass() != ParsedIf.class){
-				this.arguments = new ArrayList<>();
-				for(Token arg : token.getArgs()){
-					try{
-						this.arguments.add(new ParsedExpressionFloat(arg));
-					} catch(InvalidParameterException ignored){
-						throw new IllegalArgumentException("\"" + token.getName() + "\" requires numbers as arguments and \"" + arg.getName() + "\" " + "is not a number!");
-					}
-					
-				}
-			}
-			else if(token.getArgs() != null){
-				this.arguments = new ArrayList<>();
-			}
-			else{
-				this.arguments = null;
-			}
-			checkArgs(this.arguments, this.operation.getArgNumber());
+	abstract static class ParsedExpressionFloat implements ParsedExpression{
+		@Override
+		public ParsedFunctionType getType(){
+			return ParsedFunctionType.FLOAT;
+		}
+		
+		@Override
+		public boolean evalBool(DexEnvironment env){
+			throw new WrongMethodTypeException("\"" + this.getName() + "\" must evaluate to a boolean, not a number!");
+		}
+	}
+	
+	abstract static class ParsedExpressionBool implements ParsedExpression{
+		@Override
+		public ParsedFunctionType getType(){
+			return ParsedFunctionType.BOOL;
 		}
 		
-		float eval(){
-			return operation.eval(arguments);
+		@Override
+		public float evalFloat(DexEnvironment env){
+			throw new WrongMethodTypeException("\"" + this.getName() + "\" must evaluate to a number, not a boolean!");
+		}
+	}
+	
+	static final class ParsedNumber extends ParsedExpressionFloat{
+		final float num;
+		
+		ParsedNumber(float num){
+			this.num = num;
+		}
+		
+		@Override
+		public float evalFloat(DexEnvironment env){
+			return this.num;
 		}
 		
 		@Override
 		public String getName(){
-			return this.operation.toString();
+			return Float.toString(this.num);
+		}
+	}
+	
+	static final class ParsedParameterFloat extends ParsedExpressionFloat{
+		final FLOAT_PARAMETER parameter;
+		
+		ParsedParameterFloat(FLOAT_PARAMETER parameter){
+			this.parameter = parameter;
+		}
+		
+		@Override
+		public float evalFloat(DexEnvironment env){
+			return this.parameter.value(env);
 		}
 		
+		@Override
+		public String getName(){
+			return this.parameter.toString();
+		}
 	}
 	
-	/**
-	 * The "if" operator is the only operator that actually steals arguments from it's container class, the ParsedExpressionFloat
-	 */
-	static class ParsedIf implements ParsedFunctionFloat{
-		private final ArrayList<ParsedExpressionBool>  conditions;
-		private final ArrayList<ParsedExpressionFloat> expressions;
+	static final class ParsedNullary extends ParsedExpressionFloat{
+		final FLOAT_FUNCTION function;
 		
-		ParsedIf(Token token){
-			if(token.getArgs() == null){
-				throw new IllegalArgumentException("\"" + token.getName() + "\" requires arguments!");
+		ParsedNullary(FLOAT_FUNCTION function){
+			this.function = function;
+		}
+		
+		@Override
+		public float evalFloat(DexEnvironment env){
+			return this.function.apply();
+		}
+		
+		@Override
+		public String getName(){
+			return this.function.toString();
+		}
+	}
+	
+	static final class ParsedUnary extends ParsedExpressionFloat{
+		final FLOAT_FUNCTION        function;
+		final ParsedExpressionFloat arg;
+		
+		ParsedUnary(FLOAT_FUNCTION function, ParsedExpressionFloat arg){
+			this.function = function;
+			this.arg = arg;
+		}
+		
+		@Override
+		public float evalFloat(DexEnvironment env){
+			return this.function.apply(this.arg.evalFloat(env));
+		}
+		
+		@Override
+		public String getName(){
+			return this.function.toString();
+		}
+	}
+	
+	static final class ParsedBinary extends ParsedExpressionFloat{
+		final FLOAT_FUNCTION        function;
+		final ParsedExpressionFloat left;
+		final ParsedExpressionFloat right;
+		
+		ParsedBinary(FLOAT_FUNCTION function, ParsedExpressionFloat left, ParsedExpressionFloat right){
+			this.function = function;
+			this.left = left;
+			this.right = right;
+		}
+		
+		@Override
+		public float evalFloat(DexEnvironment env){
+			return this.function.apply(this.left.evalFloat(env), this.right.evalFloat(env));
+		}
+		
+		@Override
+		public String getName(){
+			return this.function.toString();
+		}
+	}
+	
+	static final class ParsedTernary extends ParsedExpressionFloat{
+		final FLOAT_FUNCTION        function;
+		final ParsedExpressionFloat first;
+		final ParsedExpressionFloat second;
+		final ParsedExpressionFloat third;
+		
+		ParsedTernary(FLOAT_FUNCTION function, ParsedExpressionFloat first, ParsedExpressionFloat second, ParsedExpressionFloat third){
+			this.function = function;
+			this.first = first;
+			this.second = second;
+			this.third = third;
+		}
+		
+		@Override
+		public float evalFloat(DexEnvironment env){
+			return this.function.apply(this.first.evalFloat(env), this.second.evalFloat(env), this.third.evalFloat(env));
+		}
+		
+		@Override
+		public String getName(){
+			return this.function.toString();
+		}
+	}
+	
+	/** Used by min() and max(), which fold their arguments pairwise instead of sorting them */
+	static final class ParsedVariadic extends ParsedExpressionFloat{
+		final FLOAT_FUNCTION          function;
+		final ParsedExpressionFloat[] args;
+		
+		ParsedVariadic(FLOAT_FUNCTION function, ParsedExpressionFloat[] args){
+			this.function = function;
+			this.args = args;
+		}
+		
+		@Override
+		public float evalFloat(DexEnvironment env){
+			float result = this.args[0].evalFloat(env);
+			for(int i = 1; i < this.args.length; i++){
+				result = this.function.apply(result, this.args[i].evalFloat(env));
 			}
-			else{
-				this.conditions = new ArrayList<>();
-				this.expressions = new ArrayList<>();
-				for(int i = 0; i < token.getArgs().size(); i++){
-					ParsedFunctionType wantedType = (i % 2 == 1 || i == token.getArgs().size() - 1)? ParsedFunctionType.FLOAT : ParsedFunctionType.BOOL;
-					if(wantedType == ParsedFunctionType.BOOL){
-						try{
-							this.conditions.add(new ParsedExpressionBool(token.getArgs().get(i)));
-						} catch(InvalidParameterException ignored){
-							throw new IllegalArgumentException("\"" + token.getName() + "\" requires a bool for argument #" + (i + 1) + ", but a " + "number was provided");
-						}
-					}
-					else{
-						try{
-							this.expressions.add(new ParsedExpressionFloat(token.getArgs().get(i)));
-						} catch(InvalidParameterException ignored){
-							throw new IllegalArgumentException("\"" + token.getName() + "\" requires a number for argument #" + (i + 1) + ", but a " + "bool was provided");
-						}
-					}
-				}
-				if(this.conditions.size() == 0){
-					throw new IllegalArgumentException("\"" + token.getName() + "\" requires at least one condition!");
-					
-				}
-				else if(this.conditions.size() + 1 != this.expressions.size()){
-					throw new IllegalArgumentException("\"" + token.getName() + "\" is missing an \"val_else\" value, please add a number at the " + "end" + ".");
+			return result;
+		}
+		
+		@Override
+		public String getName(){
+			return this.function.toString();
+		}
+	}
+	
+	static final class ParsedIf extends ParsedExpressionFloat{
+		final ParsedExpressionBool[]  conditions;
+		final ParsedExpressionFloat[] expressions;
+		
+		ParsedIf(ParsedExpressionBool[] conditions, ParsedExpressionFloat[] expressions){
+			this.conditions = conditions;
+			this.expressions = expressions;
+		}
+		
+		@Override
+		public float evalFloat(DexEnvironment env){
+			for(int i = 0; i < this.conditions.length; i++){
+				if(this.conditions[i].evalBool(env)){
+					return this.expressions[i].evalFloat(env);
 				}
 			}
+			return this.expressions[this.expressions.length - 1].evalFloat(env);
 		}
 		
 		@Override
-		public Float eval(ArrayList<ParsedExpression> args){
-			for(int i = 0; i < this.conditions.size(); i++){
-				if(this.conditions.get(i).eval()){
-					return this.expressions.get(i).eval();
-				}
+		public String getName(){
+			return "IF";
+		}
+	}
+	
+	static final class ParsedVar extends ParsedExpressionFloat{
+		private static final Pattern          PATTERN   = Pattern.compile("(\\w\\d?:?)+[.][trs][xyz]");
+		private static final PartAccessor[]   ACCESSORS = {entry -> entry.getTranslate('x'),
+		                                                   entry -> entry.getTranslate('y'),
+		                                                   entry -> entry.getTranslate('z'),
+		                                                   entry -> entry.getModel().getRotation('x'),
+		                                                   entry -> entry.getModel().getRotation('y'),
+		                                                   entry -> entry.getModel().getRotation('z'),
+		                                                   entry -> entry.getModel().getScale('x'),
+		                                                   entry -> entry.getModel().getScale('y'),
+		                                                   entry -> entry.getModel().getScale('z'),
+		                                                   };
+		final                String           name;
+		final                CemModelEntry    entry;
+		final                char             val;
+		final                char             axis;
+		final                int              value;
+		private final        PartAccessor     accessor;
+		
+		ParsedVar(Token token, Map<String, CemModelEntry> bindings){
+			if(!PATTERN.matcher(token.getName()).find()){
+				throw new IllegalArgumentException("\"" + token.getName() + "\" isn't a reference to a model part");
+			}
+			this.name = token.getName().substring(0, token.getName().indexOf("."));
+			if(!bindings.containsKey(this.name)){
+				throw new IllegalArgumentException("\"" + token.getName() + "\" refers to a model part, but there is no model to look it up in");
 			}
-			return this.expressions.get(this.expressions.size() - 1).eval();
+			this.entry = bindings.get(this.name);
+			this.val = token.getName().charAt(token.getName().indexOf(".") + 1);
+			this.axis = token.getName().charAt(token.getName().indexOf(".") + 2);
+			this.value = "trs".indexOf(this.val) * 3 + "xyz".indexOf(this.axis);
+			this.accessor = ACCESSORS[this.value];
+		}
+		
+		private ParsedVar(ParsedVar var, CemModelEntry entry){
+			this.name = var.name;
+			this.entry = entry;
+			this.val = var.val;
+			this.axis = var.axis;
+			this.value = var.value;
+			this.accessor = var.accessor;
+		}
+		
+		/** Same reference, pointing to a part of another model */
+		ParsedVar bind(CemModelEntry entry){
+			return new ParsedVar(this, entry);
 		}
 		
 		@Override
-		public ParsedFunctionType getType(){
-			return ParsedFunctionType.FLOAT;
+		public float evalFloat(DexEnvironment env){
+			return (env.getBatch() == null)? this.accessor.get(this.entry) : env.getBatch().get(this.entry, this.value, env.getIndex());
 		}
 		
 		@Override
-		public int getArgNumber(){
-			return -1;
+		public String getName(){
+			return this.val + "" + this.axis;
+		}
+		
+		static float translate(DexEnvironment env, CemModelEntry entry, char axis){
+			return (env.getBatch() == null)? entry.getTranslate(axis) : env.getBatch().get(entry, axis - 'x', env.getIndex());
+		}
+		
+		static float rotation(DexEnvironment env, CemModelEntry entry, char axis){
+			return (env.getBatch() == null)? entry.getModel().getRotation(axis) : env.getBatch().get(entry, 3 + axis - 'x', env.getIndex());
 		}
 		
+		static float scale(DexEnvironment env, CemModelEntry entry, char axis){
+			return (env.getBatch() == null)? entry.getModel().getScale(axis) : env.getBatch().get(entry, 6 + axis - 'x', env.getIndex());
+		}
+		
+		@FunctionalInterface
+		private interface PartAccessor{
+			float get(CemModelEntry entry);
+		}
 	}
 	
-	static class ParsedExpressionBool implements ParsedExpression{
-		private final ParsedFunctionBool          operation;
-		private final ArrayList<ParsedExpression> arguments;
-		
-		ParsedExpressionBool(Token token){
-			ParsedFunction temp = matchToken(token);
-			if(temp.getType() == ParsedFunctionType.BOOL){
-				this.operation = (ParsedFunctionBool) temp;
+	/** A var.* variable, it keeps its value between frames for every entity on its own */
+	static final class ParsedVariableFloat extends ParsedExpressionFloat{
+		final String name;
+		final int    id;
+		
+		ParsedVariableFloat(Token token, Map<String, Integer> variables){
+			if(token.getArgs() != null){
+				throw new IllegalArgumentException("Variable \"" + token.getName() + "\" does not take arguments and should not have any \"()\"!");
 			}
-			else{
-				throw new InvalidParameterException("\"" + token.getName() + "\" is not a number and will not return a number!");
+			else if(!variables.containsKey(token.getName())){
+				throw new IllegalArgumentException("\"" + token.getName() + "\" is a variable, but there is no model to keep it in");
 			}
+			this.name = token.getName();
+			this.id = variables.get(token.getName());
+		}
+		
+		@Override
+		public float evalFloat(DexEnvironment env){
+			return env.getVariable(this.id);
+		}
+		
+		@Override
+		public String getName(){
+			return this.name;
+		}
+	}
+	
+	/** A varb.* variable, it keeps its value between frames for every entity on its own */
+	static final class ParsedVariableBool extends ParsedExpressionBool{
+		final String name;
+		final int    id;
+		
+		ParsedVariableBool(Token token, Map<String, Integer> variables){
 			if(token.getArgs() != null){
-				this.arguments = new ArrayList<>();
-				for(Token arg : token.getArgs()){
-					if(this.operation.getArgType() == ParsedFunctionType.FLOAT){
-						try{
-							this.arguments.add(new ParsedExpressionFloat(arg));
-						} catch(InvalidParameterException ignored){
-							throw new IllegalArgumentException("\"" + token.getName() + "\" requires numbers as arguments and \"" + arg.getName() + "\" is not a number!");
-						}
-					}
-					else{
-						try{
-							this.arguments.add(new ParsedExpressionBool(arg));
-						} catch(InvalidParameterException ignored){
-							throw new IllegalArgumentException("\"" + token.getName() + "\" requires bools as arguments and \"" + arg.getName() + "\" is not a bool!");
-						}
-					}
-				}
+				throw new IllegalArgumentException("Variable \"" + token.getName() + "\" does not take arguments and should not have any \"()\"!");
 			}
-			else{
-				this.arguments = null;
+			else if(!variables.containsKey(token.getName())){
+				throw new IllegalArgumentException("\"" + token.getName() + "\" is a variable, but there is no model to keep it in");
 			}
-			checkArgs(this.arguments, this.operation.getArgNumber());
+			this.name = token.getName();
+			this.id = variables.get(token.getName());
 		}
 		
-		boolean eval(){
-			return this.operation.eval(arguments);
+		@Override
+		public boolean evalBool(DexEnvironment env){
+			return env.getBoolVariable(this.id);
 		}
 		
 		@Override
 		public String getName(){
-			return this.operation.toString();
+			return this.name;
 		}
 	}
 	
-	static class ParsedNumber implements ParsedFunctionFloat{
-		private final float num;
+	/** A subexpression used by several animations of a model, it only gets evaluated once per {@link DexEnvironment#setEnv} */
+	static final class ParsedShared extends ParsedExpressionFloat{
+		final int                   slot;
+		final ParsedExpressionFloat value;
 		
-		ParsedNumber(NumToken token){
-			this.num = token.getNum();
+		ParsedShared(int slot, ParsedExpressionFloat value){
+			this.slot = slot;
+			this.value = value;
 		}
 		
 		@Override
-		public int getArgNumber(){
-			return -2;
+		public float evalFloat(DexEnvironment env){
+			return env.isCached(this.slot)? env.load(this.slot) : env.store(this.slot, this.value.evalFloat(env));
 		}
 		
 		@Override
-		public Float eval(ArrayList<ParsedExpression> args){
-			return this.num;
+		public String getName(){
+			return this.value.getName();
 		}
 	}
 	
-	static class ParsedVar implements ParsedFunctionFloat{
-		private static final Pattern       PATTERN = Pattern.compile("(\\w\\d?:?)+[.][trs][xyz]");
-		static               CemModelEntry parent;
-		private final        CemModelEntry entry;
-		private final        char          val;
-		private final        char          axis;
-		
-		ParsedVar(Token token){
-			if(!PATTERN.matcher(token.getName()).find()){
-				throw new IllegalArgumentException("\"" + token.getName() + "\" isn't a reference to a model part");
-			}
-			this.entry = DexEnvironment.getRegistry().findChild(token.getName().substring(0, token.getName().indexOf(".")), parent);
-			this.val = token.getName().charAt(token.getName().indexOf(".") + 1);
-			this.axis = token.getName().charAt(token.getName().indexOf(".") + 2);
+	static final class ParsedParameterBool extends ParsedExpressionBool{
+		final BOOL_PARAMETER parameter;
+		
+		ParsedParameterBool(BOOL_PARAMETER parameter){
+			this.parameter = parameter;
 		}
 		
 		@Override
-		public int getArgNumber(){
-			return -2;
+		public boolean evalBool(DexEnvironment env){
+			return this.parameter.value(env);
+		}
+		
+		@Override
+		public String getName(){
+			return this.parameter.toString();
+		}
+	}
+	
+	static final class ParsedNot extends ParsedExpressionBool{
+		final ParsedExpressionBool arg;
+		
+		ParsedNot(ParsedExpressionBool arg){
+			this.arg = arg;
+		}
+		
+		@Override
+		public boolean evalBool(DexEnvironment env){
+			return !this.arg.evalBool(env);
+		}
+		
+		@Override
+		public String getName(){
+			return BOOL_FUNCTION_BOOL.NOT.toString();
+		}
+	}
+	
+	static final class ParsedLogic extends ParsedExpressionBool{
+		final BOOL_FUNCTION_BOOL   function;
+		final ParsedExpressionBool left;
+		final ParsedExpressionBool right;
+		
+		ParsedLogic(BOOL_FUNCTION_BOOL function, ParsedExpressionBool left, ParsedExpressionBool right){
+			this.function = function;
+			this.left = left;
+			this.right = right;
+		}
+		
+		@Override
+		public boolean evalBool(DexEnvironment env){
+			return (this.function == BOOL_FUNCTION_BOOL.AND)? this.left.evalBool(env) && this.right.evalBool(env) : this.left.evalBool(env) || this.right.evalBool(env);
+		}
+		
+		@Override
+		public String getName(){
+			return this.function.toString();
+		}
+	}
+	
+	static final class ParsedComparison extends ParsedExpressionBool{
+		final BOOL_FUNCTION_FLOAT   function;
+		final ParsedExpressionFloat left;
+		final ParsedExpressionFloat right;
+		
+		ParsedComparison(BOOL_FUNCTION_FLOAT function, ParsedExpressionFloat left, ParsedExpressionFloat right){
+			this.function = function;
+			this.left = left;
+			this.right = right;
+		}
+		
+		@Override
+		public boolean evalBool(DexEnvironment env){
+			return this.function.apply(this.left.evalFloat(env), this.right.evalFloat(env));
+		}
+		
+		@Override
+		public String getName(){
+			return this.function.toString();
+		}
+	}
+	
+	static final class ParsedBetween extends ParsedExpressionBool{
+		final ParsedExpressionFloat value;
+		final ParsedExpressionFloat min;
+		final ParsedExpressionFloat max;
+		
+		ParsedBetween(ParsedExpressionFloat value, ParsedExpressionFloat min, ParsedExpressionFloat max){
+			this.value = value;
+			this.min = min;
+			this.max = max;
+		}
+		
+		@Override
+		public boolean evalBool(DexEnvironment env){
+			return this.min.evalFloat(env) <= this.value.evalFloat(env) && this.value.evalFloat(env) <= this.max.evalFloat(env);
+		}
+		
+		@Override
+		public String getName(){
+			return BOOL_FUNCTION_FLOAT.BETWEEN.toString();
+		}
+	}
+	
+	static final class ParsedEquals extends ParsedExpressionBool{
+		final ParsedExpressionFloat value;
+		final ParsedExpressionFloat target;
+		final ParsedExpressionFloat epsilon;
+		
+		ParsedEquals(ParsedExpressionFloat value, ParsedExpressionFloat target, ParsedExpressionFloat epsilon){
+			this.value = value;
+			this.target = target;
+			this.epsilon = epsilon;
 		}
 		
 		@Override
-		public Float eval(ArrayList<ParsedExpression> args){
-			return switch(val){
-				case 't' -> entry.getTranslate(axis);
-				case 'r' -> entry.getModel().getRotation(axis);
-				case 's' -> entry.getModel().getScale(axis);
-				default -> throw new IllegalStateException("Unknown operation \"" + val + "\"");
+		public boolean evalBool(DexEnvironment env){
+			return this.target.evalFloat(env) - this.epsilon.evalFloat(env) <= this.value.evalFloat(env) &&
+			       this.value.evalFloat(env) <= this.target.evalFloat(env) + this.epsilon.evalFloat(env);
+		}
+		
+		@Override
+		public String getName(){
+			return BOOL_FUNCTION_FLOAT.EQUALS.toString();
+		}
+	}
+	
+	static final class ParsedIn extends ParsedExpressionBool{
+		final ParsedExpressionFloat   value;
+		final ParsedExpressionFloat[] options;
+		
+		ParsedIn(ParsedExpressionFloat value, ParsedExpressionFloat[] options){
+			this.value = value;
+			this.options = options;
+		}
+		
+		@Override
+		public boolean evalBool(DexEnvironment env){
+			for(ParsedExpressionFloat option : this.options){
+				if(this.value.evalFloat(env) == option.evalFloat(env)){
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		@Override
+		public String getName(){
+			return BOOL_FUNCTION_FLOAT.IN.toString();
+		}
+	}
+	
+	/**
+	 * Turns an animation string into a giant Token in a single pass; the lexer reads one symbol at a time and the parser climbs the operator precedences
+	 * instead of rescanning the whole expression for each of them
+	 */
+	static final class TokenParser{
+		//lowest to highest, the operand of "!" is parsed at ADDITIVE so that "!a + b" means "!(a + b)"
+		private static final int LOGIC          = 1;
+		private static final int COMPARISON     = 2;
+		private static final int ADDITIVE       = 3;
+		private static final int MULTIPLICATIVE = 4;
+		private final        String input;
+		private              int    pos;
+		private              Symbol type;
+		private              String text;
+		private              int    start;
+		
+		TokenParser(String input){
+			this.input = input;
+			this.next();
+		}
+		
+		Token parse(){
+			Token token = this.parseExpression(LOGIC);
+			if(this.type != Symbol.END){
+				throw this.unexpected();
+			}
+			return token;
+		}
+		
+		private Token parseExpression(int minPrecedence){
+			Token left = this.parsePrefix();
+			while(this.type == Symbol.OPERATOR){
+				int precedence = precedenceOf(this.text);
+				if(precedence < minPrecedence){
+					break;
+				}
+				String name = nameOf(this.text);
+				this.next();
+				Token right = this.parseExpression(precedence + 1);
+				left = new Token(name, new ArrayList<>(List.of(left, right)));
+			}
+			return left;
+		}
+		
+		private Token parsePrefix(){
+			String text = this.text;
+			switch(this.type){
+				case NUMBER:
+					this.next();
+					return new NumToken(Float.parseFloat(text));
+				case NAME:
+					this.next();
+					if(this.type != Symbol.OPEN){
+						return new Token(text);
+					}
+					this.next();
+					ArrayList<Token> args = new ArrayList<>();
+					if(this.type != Symbol.CLOSE){
+						args.add(this.parseExpression(LOGIC));
+						while(this.type == Symbol.COMMA){
+							this.next();
+							if(this.type == Symbol.CLOSE){
+								//a trailing comma has always been allowed
+								break;
+							}
+							args.add(this.parseExpression(LOGIC));
+						}
+					}
+					this.expect(Symbol.CLOSE, ")");
+					return new Token(text, args);
+				case OPEN:
+					this.next();
+					Token token = this.parseExpression(LOGIC);
+					this.expect(Symbol.CLOSE, ")");
+					return token;
+				case OPERATOR:
+					if(text.equals("-")){
+						//negative numbers are 0 - x, which keeps -0 and 0 apart exactly like before
+						this.next();
+						return new Token("SUB", new ArrayList<>(List.of(new NumToken(0), this.parsePrefix())));
+					}
+					else if(text.equals("!")){
+						this.next();
+						return new Token("NOT", new ArrayList<>(List.of(this.parseExpression(ADDITIVE))));
+					}
+				default:
+					throw this.unexpected();
+			}
+		}
+		
+		private void expect(Symbol symbol, String expected){
+			if(this.type != symbol){
+				throw new IllegalArgumentException("Expected \"" + expected + "\" at index " + this.start + " of \"" + this.input + "\", found " + this.describe());
+			}
+			this.next();
+		}
+		
+		private IllegalArgumentException unexpected(){
+			return new IllegalArgumentException("Unexpected " + this.describe() + " at index " + this.start + " of \"" + this.input + "\"");
+		}
+		
+		private String describe(){
+			return (this.type == Symbol.END)? "end of animation" : "\"" + this.text + "\"";
+		}
+		
+		/**
+		 * Lexer, reads the next symbol into {@code type} and {@code text}
+		 */
+		private void next(){
+			while(this.pos < this.input.length() && (Character.isWhitespace(this.input.charAt(this.pos)) || this.input.charAt(this.pos) == '§')){
+				this.pos++;
+			}
+			this.start = this.pos;
+			if(this.pos >= this.input.length()){
+				this.type = Symbol.END;
+				this.text = "";
+				return;
+			}
+			char c = this.input.charAt(this.pos);
+			if(isDigit(c)){
+				this.skipDigits();
+				if(this.peek() == '.' && isDigit(this.peek(1))){
+					this.pos++;
+					this.skipDigits();
+				}
+				this.type = Symbol.NUMBER;
+				if(isWord(this.peek())){
+					//things like "2x" aren't numbers, but they used to be read as names
+					this.readName();
+				}
+			}
+			else if(isWord(c)){
+				this.readName();
+			}
+			else{
+				this.type = Symbol.OPERATOR;
+				switch(c){
+					case '(' -> this.type = Symbol.OPEN;
+					case ')' -> this.type = Symbol.CLOSE;
+					case ',' -> this.type = Symbol.COMMA;
+					case '+', '-', '*', '/', '%' -> {
+					}
+					case '=' -> this.expectSecond('=');
+					case '&' -> this.expectSecond('&');
+					case '|' -> this.expectSecond('|');
+					case '!', '<', '>' -> {
+						if(this.peek(1) == '='){
+							this.pos++;
+						}
+					}
+					default -> throw new IllegalArgumentException("Garbage symbol \"" + c + "\" at index " + this.pos + " of \"" + this.input + "\"");
+				}
+				this.pos++;
+			}
+			this.text = this.input.substring(this.start, this.pos);
+		}
+		
+		private void readName(){
+			while(isWord(this.peek()) || this.peek() == ':'){
+				this.pos++;
+			}
+			if(this.peek() == '.' && isWord(this.peek(1))){
+				this.pos++;
+				while(isWord(this.peek())){
+					this.pos++;
+				}
+			}
+			this.type = Symbol.NAME;
+		}
+		
+		private void skipDigits(){
+			while(isDigit(this.peek())){
+				this.pos++;
+			}
+		}
+		
+		private void expectSecond(char c){
+			if(this.peek(1) != c){
+				throw new IllegalArgumentException("Garbage symbol \"" + this.input.charAt(this.pos) + "\" at index " + this.pos + " of \"" + this.input + "\"");
+			}
+			this.pos++;
+		}
+		
+		private char peek(){
+			return this.peek(0);
+		}
+		
+		private char peek(int offset){
+			return (this.pos + offset < this.input.length())? this.input.charAt(this.pos + offset) : 0;
+		}
+		
+		private static boolean isDigit(char c){
+			return c >= '0' && c <= '9';
+		}
+		
+		private static boolean isWord(char c){
+			return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c) || c == '_';
+		}
+		
+		private static int precedenceOf(String operator){
+			return switch(operator){
+				case "&&", "||" -> LOGIC;
+				case "==", "!=", "<=", ">=", "<", ">" -> COMPARISON;
+				case "+", "-" -> ADDITIVE;
+				case "*", "/", "%" -> MULTIPLICATIVE;
+				default -> -1;
 			};
 		}
+		
+		private static String nameOf(String operator){
+			return switch(operator){
+				case "&&" -> "AND";
+				case "||" -> "OR";
+				case "==" -> "EQ";
+				case "!=" -> "NOTEQ";
+				case "<=" -> "LESSEQ";
+				case ">=" -> "GREATEREQ";
+				case "<" -> "LESS";
+				case ">" -> "GREATER";
+				case "+" -> "ADD";
+				case "-" -> "SUB";
+				case "*" -> "MULT";
+				case "/" -> "DIV";
+				case "%" -> "MOD";
+				default -> throw new IllegalStateException("Unexpected value: " + operator);
+			};
+		}
+		
+		private enum Symbol{
+			NUMBER, NAME, OPERATOR, OPEN, CLOSE, COMMA, END,
+		}
+	}
+	
+	/** Model parts and variables an expression refers to, by the name used in the expression */
+	private static class Bindings{
+		private final HashMap<String, CemModelEntry> parts     = new HashMap<>();
+		private final HashMap<String, Integer>       variables = new HashMap<>();
 	}
 	
-	private static class Token{
+	static class Token{
 		private final String           name;
 		private final ArrayList<Token> args;
 		
@@ -1047,7 +1643,7 @@ public class CemStringParser{
 		}
 	}
 	
-	private static class NumToken extends Token{
+	static class NumToken extends Token{
 		private final float num;
 		
 		NumToken(float num){
@@ -0,0 +1,91 @@
+package net.dorianpb.cem.internal.util;
+
+import net.minecraft.client.model.ModelPart.Quad;
+import net.minecraft.client.model.ModelPart.Vertex;
+import net.minecraft.client.texture.NativeImage;
+import net.minecraft.resource.ResourceManager;
+import net.minecraft.util.Identifier;
+
+import java.io.InputStream;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * Which pixels of a texture named by a .jem file can be seen, so that faces showing nothing but fully transparent pixels can be left out of the model. Every
+ * texture is read once per resource reload, and whether a region of it is transparent is remembered, since most boxes of a model share their faces' regions
+ * with the same boxes of other models using the texture.
+ */
+public class CemTextureAlpha{
+	private static final HashMap<Identifier, CemTextureAlpha> TEXTURES = new HashMap<>();
+	private final        int                                  width;
+	private final        int                                  height;
+	private final        BitSet                               visible; //pixels with any alpha, row after row
+	private final        HashMap<Long, Boolean>               regions; //whether a region is fully transparent, by its corners
+	
+	private CemTextureAlpha(NativeImage image){
+		this.width = image.getWidth();
+		this.height = image.getHeight();
+		this.visible = new BitSet(this.width * this.height);
+		for(int y = 0; y < this.height; y++){
+			for(int x = 0; x < this.width; x++){
+				if(NativeImage.getAlpha(image.getPixelColor(x, y)) != 0){
+					this.visible.set(y * this.width + x);
+				}
+			}
+		}
+		this.regions = new HashMap<>();
+	}
+	
+	/**
+	 * @param texture Texture to read, which is only read the first time
+	 * @return The alpha of the texture, or null if it can't be read
+	 */
+	public static synchronized CemTextureAlpha get(ResourceManager manager, Identifier texture){
+		if(!TEXTURES.containsKey(texture)){
+			CemTextureAlpha alpha;
+			try(InputStream stream = manager.getResource(texture).getInputStream(); NativeImage image = NativeImage.read(stream)){
+				alpha = new CemTextureAlpha(image);
+			} catch(Exception e){
+				//the renderer shows the missing texture, and nothing is left out
+				alpha = null;
+			}
+			TEXTURES.put(texture, alpha);
+		}
+		return TEXTURES.get(texture);
+	}
+	
+	/** Forgets every texture, called on reload */
+	public static synchronized void clear(){
+		TEXTURES.clear();
+	}
+	
+	/**
+	 * Whether every pixel {@code quad} shows is fully transparent. Texture coordinates are rounded outwards, so a pixel that is only partly covered counts,
+	 * and a quad reaching outside the texture never is.
+	 */
+	public synchronized boolean isTransparent(Quad quad){
+		float minU = Float.POSITIVE_INFINITY, maxU = Float.NEGATIVE_INFINITY, minV = Float.POSITIVE_INFINITY, maxV = Float.NEGATIVE_INFINITY;
+		for(Vertex vertex : quad.vertices){
+			minU = Math.min(minU, vertex.u);
+			maxU = Math.max(maxU, vertex.u);
+			minV = Math.min(minV, vertex.v);
+			maxV = Math.max(maxV, vertex.v);
+		}
+		int x1 = (int) Math.floor(minU * this.width);
+		int y1 = (int) Math.floor(minV * this.height);
+		int x2 = (int) Math.ceil(maxU * this.width);
+		int y2 = (int) Math.ceil(maxV * this.height);
+		if(x1 < 0 || y1 < 0 || x2 > this.width || y2 > this.height || x1 >= x2 || y1 >= y2){
+			return false;
+		}
+		return this.regions.computeIfAbsent(((long) x1 << 48) | ((long) y1 << 32) | ((long) x2 << 16) | y2, (key) -> {
+			for(int y = y1; y < y2; y++){
+				int next = this.visible.nextSetBit(y * this.width + x1);
+				if(next != -1 && next < y * this.width + x2){
+					return false;
+				}
+			}
+			return true;
+		});
+	}
+}
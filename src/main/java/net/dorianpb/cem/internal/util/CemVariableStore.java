@@ -0,0 +1,109 @@
+package net.dorianpb.cem.internal.util;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.dorianpb.cem.internal.util.CemStringParser.DexEnvironment;
+import net.minecraft.entity.LivingEntity;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+
+/**
+ * The {@code var.*} and {@code varb.*} variables of a model. Variables keep their values between frames, so every entity gets its own float and boolean
+ * array, indexed by the ids handed out while the animations are parsed. Entities that have been removed from the world are dropped every few seconds.
+ */
+public class CemVariableStore{
+	/** Frames between looking for entities that are gone */
+	private static final int                          SWEEP_INTERVAL = 600;
+	private final        ArrayList<String>            floats;
+	private final        ArrayList<String>            bools;
+	private final        Int2ObjectOpenHashMap<Entry> entries;
+	private              Entry                        scratch;
+	private              int                          swept;
+	
+	public CemVariableStore(){
+		this.floats = new ArrayList<>();
+		this.bools = new ArrayList<>();
+		this.entries = new Int2ObjectOpenHashMap<>();
+	}
+	
+	/** Creates an empty store for the same variables as {@code store}, the names are shared */
+	public CemVariableStore(CemVariableStore store){
+		this.floats = store.floats;
+		this.bools = store.bools;
+		this.entries = new Int2ObjectOpenHashMap<>();
+	}
+	
+	/**
+	 * @param name Name of the variable, without "var."
+	 * @return Id of the variable, a new one if it hasn't been used before
+	 */
+	public int getFloat(String name){
+		return id(this.floats, name);
+	}
+	
+	/**
+	 * @param name Name of the variable, without "varb."
+	 * @return Id of the variable, a new one if it hasn't been used before
+	 */
+	public int getBool(String name){
+		return id(this.bools, name);
+	}
+	
+	/** Points the environment to the variables of {@code livingEntity}; without an entity, the variables only live until the next call */
+	void bind(DexEnvironment env, LivingEntity livingEntity){
+		if(this.floats.isEmpty() && this.bools.isEmpty()){
+			return;
+		}
+		Entry entry;
+		if(livingEntity == null){
+			if(this.scratch == null){
+				this.scratch = new Entry(null, this.floats.size(), this.bools.size());
+			}
+			entry = this.scratch;
+		}
+		else{
+			entry = this.entries.get(livingEntity.getId());
+			if(entry == null || entry.entity.get() != livingEntity){
+				//ids get reused, a new entity starts with fresh variables
+				entry = new Entry(livingEntity, this.floats.size(), this.bools.size());
+				this.entries.put(livingEntity.getId(), entry);
+			}
+			this.sweep();
+		}
+		env.setVariables(entry.floats, entry.bools);
+	}
+	
+	private void sweep(){
+		int frame = DexEnvironment.getFrame();
+		if(frame - this.swept >= SWEEP_INTERVAL){
+			this.swept = frame;
+			this.entries.values().removeIf(Entry::isGone);
+		}
+	}
+	
+	private static int id(ArrayList<String> names, String name){
+		int id = names.indexOf(name);
+		if(id < 0){
+			id = names.size();
+			names.add(name);
+		}
+		return id;
+	}
+	
+	private static class Entry{
+		private final WeakReference<LivingEntity> entity;
+		private final float[]                     floats;
+		private final boolean[]                   bools;
+		
+		private Entry(LivingEntity entity, int floats, int bools){
+			this.entity = new WeakReference<>(entity);
+			this.floats = new float[floats];
+			this.bools = new boolean[bools];
+		}
+		
+		private boolean isGone(){
+			LivingEntity entity = this.entity.get();
+			return entity == null || entity.isRemoved();
+		}
+	}
+}
@@ -21,32 +21,53 @@ import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 @Mixin(EntityModelLoader.class)
 public abstract class EntityModelLoaderMixin{
 	@Inject(method = "reload", at = @At(value = "HEAD"))
 	private void injectReload(ResourceManager manager, CallbackInfo ci){
 		CemRegistryManager.clearRegistries();
-		manager.findResources("cem", path -> path.endsWith(".jem")).forEach((id -> loadResourceFromId(manager, id, "dorianpb")));
+		ArrayList<Identifier> ids = new ArrayList<>();
+		manager.findResources("cem", path -> path.endsWith(".jem")).stream().filter(id -> id.getNamespace().equals("dorianpb")).forEach(ids::add);
 		if(CemConfigFairy.getConfig().useOptifineFolder()){
-			manager.findResources("optifine/cem", path -> path.endsWith(".jem")).forEach((id -> loadResourceFromId(manager, id, "minecraft")));
+			manager.findResources("optifine/cem", path -> path.endsWith(".jem")).stream().filter(id -> id.getNamespace().equals("minecraft")).forEach(ids::add);
 		}
+		//files are read all at once, but registered one after another so that errors are logged and duplicates replaced in the same order as always
+		ArrayList<ForkJoinTask<JemFile>> files = new ArrayList<>();
+		for(Identifier id : ids){
+			files.add(ForkJoinPool.commonPool().submit(() -> readFile(manager, id)));
+		}
+		for(int i = 0; i < ids.size(); i++){
+			registerFile(ids.get(i), files.get(i));
+		}
+		CemRegistryManager.prepareTemplates();
 	}
 	
-	private void loadResourceFromId(ResourceManager manager, Identifier id, String namespace){
-		if(!id.getNamespace().equals(namespace)){
-			return;
-		}
-		CemFairy.getLogger().info(id.toString());
+	private static JemFile readFile(ResourceManager manager, Identifier id) throws Exception{
 		try(InputStream stream = manager.getResource(id).getInputStream()){
-			//initialize the file
 			@SuppressWarnings("unchecked")
 			LinkedTreeMap<String, Object> json = CemFairy.getGson().fromJson(new InputStreamReader(stream, StandardCharsets.UTF_8), LinkedTreeMap.class);
 			if(json == null){
 				throw new Exception("Invalid File");
 			}
-			JemFile file = new JemFile(json, id, manager);
+			return new JemFile(json, id, manager);
+		}
+	}
+	
+	private void registerFile(Identifier id, ForkJoinTask<JemFile> task){
+		CemFairy.getLogger().info(id.toString());
+		try{
+			JemFile file;
+			try{
+				file = task.get();
+			} catch(ExecutionException exception){
+				throw (exception.getCause() instanceof Exception cause)? cause : exception;
+			}
 			
 			String entityName = CemFairy.getEntityNameFromId(id);
 			Optional<EntityType<?>> entityTypeOptional = EntityType.get(entityName);
@@ -80,6 +101,9 @@ public abstract class EntityModelLoaderMixin{
 			CemFairy.getLogger().error("Error parsing " + id + ":");
 			String message = exception.getMessage();
 			CemFairy.getLogger().error(exception);
+			if(exception.getCause() != null){
+				CemFairy.getLogger().error(exception.getCause());
+			}
 			if(message == null || message.trim().equals("")){
 				CemFairy.getLogger().error(exception.getStackTrace()[0]);
 				CemFairy.getLogger().error(exception.getStackTrace()[1]);
@@ -0,0 +1,16 @@
+package net.dorianpb.cem.mixins;
+
+import net.dorianpb.cem.internal.util.CemStringParser.DexEnvironment;
+import net.minecraft.client.render.GameRenderer;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(GameRenderer.class)
+public abstract class GameRendererMixin{
+	@Inject(method = "render", at = @At(value = "HEAD"))
+	private void injectRender(float tickDelta, long startTime, boolean tick, CallbackInfo ci){
+		DexEnvironment.beginFrame();
+	}
+}
@@ -0,0 +1,16 @@
+package net.dorianpb.cem.mixins;
+
+import net.minecraft.client.render.entity.LivingEntityRenderer;
+import net.minecraft.entity.LivingEntity;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Invoker;
+
+@Mixin(LivingEntityRenderer.class)
+@SuppressWarnings("unused")
+public interface LivingEntityRendererAccessor{
+	@Invoker
+	float callGetAnimationProgress(LivingEntity entity, float tickDelta);
+	
+	@Invoker
+	float callGetHandSwingProgress(LivingEntity entity, float tickDelta);
+}
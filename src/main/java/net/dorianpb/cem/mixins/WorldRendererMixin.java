@@ -0,0 +1,114 @@
+package net.dorianpb.cem.mixins;
+
+import net.dorianpb.cem.internal.api.CemModel;
+import net.dorianpb.cem.internal.config.CemConfigFairy;
+import net.dorianpb.cem.internal.models.CemAnimationBatch;
+import net.minecraft.client.render.Camera;
+import net.minecraft.client.render.Frustum;
+import net.minecraft.client.render.GameRenderer;
+import net.minecraft.client.render.LightmapTextureManager;
+import net.minecraft.client.render.WorldRenderer;
+import net.minecraft.client.render.entity.EntityRenderDispatcher;
+import net.minecraft.client.render.entity.EntityRenderer;
+import net.minecraft.client.render.entity.LivingEntityRenderer;
+import net.minecraft.client.render.entity.model.EntityModel;
+import net.minecraft.client.util.math.MatrixStack;
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.LivingEntity;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.Matrix4f;
+import net.minecraft.util.math.Vec3d;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/** Runs the animations of crowds of entities sharing a model in batches, right before the entities get drawn, see {@link CemAnimationBatch} */
+@Mixin(WorldRenderer.class)
+public abstract class WorldRendererMixin{
+	/** Fewer entities of a model than this are animated one by one, as the batch wouldn't save anything */
+	@Unique private static final int                    MIN_BATCH = 4;
+	@Shadow private              ClientWorld            world;
+	@Shadow @Final private       EntityRenderDispatcher entityRenderDispatcher;
+	@Unique private              Frustum                frustum;
+	
+	@Inject(method = "setupTerrain", at = @At(value = "HEAD"))
+	private void injectSetupTerrain(Camera camera, Frustum frustum, boolean hasForcedFrustum, int frame, boolean spectator, CallbackInfo ci){
+		this.frustum = frustum;
+	}
+	
+	@Inject(method = "render", at = @At(value = "INVOKE_STRING", target = "Lnet/minecraft/util/profiler/Profiler;swap(Ljava/lang/String;)V", args = "ldc=entities"))
+	private void injectRender(MatrixStack matrices, float tickDelta, long limitTime, boolean renderBlockOutline, Camera camera, GameRenderer gameRenderer,
+	                          LightmapTextureManager lightmapTextureManager, Matrix4f matrix4f, CallbackInfo ci){
+		if(CemConfigFairy.getConfig() == null || !CemConfigFairy.getConfig().batchAnimations() || this.world == null || this.frustum == null){
+			return;
+		}
+		Vec3d position = camera.getPos();
+		IdentityHashMap<LivingEntityRenderer<?, ?>, ArrayList<LivingEntity>> crowds = new IdentityHashMap<>();
+		for(Entity entity : this.world.getEntities()){
+			if(entity instanceof LivingEntity livingEntity &&
+			   (entity != camera.getFocusedEntity() || camera.isThirdPerson()) &&
+			   this.entityRenderDispatcher.shouldRender(entity, this.frustum, position.x, position.y, position.z)){
+				EntityRenderer<?> renderer = this.entityRenderDispatcher.getRenderer(entity);
+				if(renderer instanceof LivingEntityRenderer<?, ?> livingRenderer && livingRenderer.getModel() instanceof CemModel){
+					crowds.computeIfAbsent(livingRenderer, (key) -> new ArrayList<>()).add(livingEntity);
+				}
+			}
+		}
+		CemAnimationBatch.beginCollecting();
+		try{
+			crowds.forEach((renderer, entities) -> {
+				if(entities.size() >= MIN_BATCH){
+					for(LivingEntity livingEntity : entities){
+						this.collect(renderer, livingEntity, tickDelta);
+					}
+				}
+			});
+		} finally{
+			CemAnimationBatch.evaluateCollected();
+		}
+	}
+	
+	/** Poses the model the way {@link LivingEntityRenderer#render} does right before drawing the entity, which only adds the entity to a batch while collecting */
+	@Unique
+	@SuppressWarnings("unchecked")
+	private void collect(LivingEntityRenderer<?, ?> renderer, LivingEntity livingEntity, float tickDelta){
+		EntityModel<LivingEntity> model = (EntityModel<LivingEntity>) renderer.getModel();
+		LivingEntityRendererAccessor accessor = (LivingEntityRendererAccessor) renderer;
+		model.handSwingProgress = accessor.callGetHandSwingProgress(livingEntity, tickDelta);
+		model.riding = livingEntity.hasVehicle();
+		model.child = livingEntity.isBaby();
+		float bodyYaw = MathHelper.lerpAngleDegrees(tickDelta, livingEntity.prevBodyYaw, livingEntity.bodyYaw);
+		float headYaw = MathHelper.lerpAngleDegrees(tickDelta, livingEntity.prevHeadYaw, livingEntity.headYaw);
+		float relativeHeadYaw = headYaw - bodyYaw;
+		if(livingEntity.hasVehicle() && livingEntity.getVehicle() instanceof LivingEntity vehicle){
+			bodyYaw = MathHelper.lerpAngleDegrees(tickDelta, vehicle.prevBodyYaw, vehicle.bodyYaw);
+			float wrapped = MathHelper.clamp(MathHelper.wrapDegrees(headYaw - bodyYaw), -85F, 85F);
+			bodyYaw = headYaw - wrapped;
+			if(wrapped * wrapped > 2500F){
+				bodyYaw += wrapped * 0.2F;
+			}
+			relativeHeadYaw = headYaw - bodyYaw;
+		}
+		float pitch = MathHelper.lerp(tickDelta, livingEntity.prevPitch, livingEntity.getPitch());
+		float animationProgress = accessor.callGetAnimationProgress(livingEntity, tickDelta);
+		float limbDistance = 0F;
+		float limbAngle = 0F;
+		if(!livingEntity.hasVehicle() && livingEntity.isAlive()){
+			limbDistance = Math.min(MathHelper.lerp(tickDelta, livingEntity.lastLimbDistance, livingEntity.limbDistance), 1F);
+			limbAngle = livingEntity.limbAngle - livingEntity.limbDistance * (1F - tickDelta);
+			if(livingEntity.isBaby()){
+				limbAngle *= 3F;
+			}
+		}
+		model.animateModel(livingEntity, limbAngle, limbDistance, tickDelta);
+		model.setAngles(livingEntity, limbAngle, limbDistance, animationProgress, relativeHeadYaw, pitch);
+	}
+}
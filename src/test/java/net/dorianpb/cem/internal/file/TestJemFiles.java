@@ -0,0 +1,64 @@
+package net.dorianpb.cem.internal.file;
+
+import com.google.gson.Gson;
+import com.google.gson.internal.LinkedTreeMap;
+import net.minecraft.util.Identifier;
+
+/** Small .jem files written inline for tests, read the same way the resource loader reads them */
+public final class TestJemFiles{
+	private static final Gson GSON = new Gson();
+	
+	private TestJemFiles(){
+	}
+	
+	/**
+	 * @param path   Path the file is reported under, relative to the cem namespace
+	 * @param models Entries of the "models" array, see {@link TestJemFiles#model}
+	 */
+	public static JemFile of(String path, String... models){
+		return parse(path, "{\"textureSize\":[64,32],\"models\":[" + String.join(",", models) + "]}");
+	}
+	
+	@SuppressWarnings("unchecked")
+	public static JemFile parse(String path, String json){
+		try{
+			return new JemFile(GSON.fromJson(json, LinkedTreeMap.class), new Identifier("cem", path), null);
+		} catch(Exception e){
+			throw new IllegalArgumentException(path, e);
+		}
+	}
+	
+	/**
+	 * A model with one box
+	 * @param body Any further members of the model, such as {@link TestJemFiles#animations} or {@link TestJemFiles#submodels}, or an empty string
+	 */
+	public static String model(String part, String id, String body){
+		return "{\"part\":\"" + part + "\",\"id\":\"" + id + "\"," + box() + (body.isEmpty()? "" : "," + body) + "}";
+	}
+	
+	/**
+	 * A submodel with one box
+	 * @param body Any further members of the submodel, such as nested {@link TestJemFiles#submodels}, or an empty string
+	 */
+	public static String submodel(String id, String body){
+		return "{\"id\":\"" + id + "\"," + box() + (body.isEmpty()? "" : "," + body) + "}";
+	}
+	
+	/** @param submodels Submodels, see {@link TestJemFiles#submodel} */
+	public static String submodels(String... submodels){
+		return "\"submodels\":[" + String.join(",", submodels) + "]";
+	}
+	
+	/** @param animations Pairs of targets and expressions */
+	public static String animations(String... animations){
+		StringBuilder builder = new StringBuilder("\"animations\":[{");
+		for(int i = 0; i < animations.length; i += 2){
+			builder.append(i > 0? "," : "").append(GSON.toJson(animations[i])).append(':').append(GSON.toJson(animations[i + 1]));
+		}
+		return builder.append("}]").toString();
+	}
+	
+	private static String box(){
+		return "\"boxes\":[{\"coordinates\":[-2,-2,-2,4,4,4],\"textureOffset\":[0,0]}]";
+	}
+}
@@ -0,0 +1,160 @@
+package net.dorianpb.cem.internal.models;
+
+import net.dorianpb.cem.internal.models.CemModelEntry.CemCuboid;
+import net.minecraft.client.model.ModelPart.Cuboid;
+import net.minecraft.client.model.ModelPart.Quad;
+import net.minecraft.client.model.ModelPart.Vertex;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Casts rays at random parts before and after {@link CemMeshOptimizer#optimize} removes their hidden quads: every ray has to stop at the same distance, on a
+ * quad that was there before. Rays start outside every box, so the first quad they hit always faces them, with or without back faces being culled.
+ */
+class CemMeshOptimizerTest{
+	private static final double EPSILON = 1e-6;
+	
+	@Test
+	void optimizedPartsLookTheSame(){
+		Random random = new Random(7);
+		int quads = 0;
+		int removed = 0;
+		for(int part = 0; part < 3000; part++){
+			ArrayList<Cuboid> cuboids = new ArrayList<>();
+			for(int i = random.nextInt(6); i >= 0; i--){
+				//a third of the boxes are inflated, as see-through layers are, and some are flat
+				float extra = (random.nextInt(3) == 0)? 0.5F : 0;
+				cuboids.add(new CemCuboid(random.nextInt(6) - 3,
+				                          random.nextInt(6) - 3,
+				                          random.nextInt(6) - 3,
+				                          random.nextInt(5),
+				                          1 + random.nextInt(4),
+				                          1 + random.nextInt(4),
+				                          extra,
+				                          extra,
+				                          extra,
+				                          random.nextBoolean(),
+				                          64,
+				                          64,
+				                          random.nextInt(30),
+				                          random.nextInt(30)
+				));
+			}
+			List<Quad> before = quads(cuboids);
+			int count = CemMeshOptimizer.optimize(cuboids);
+			List<Quad> after = quads(cuboids);
+			assertEquals(before.size() - after.size(), count, "part " + part + ": quads removed");
+			for(Cuboid cuboid : cuboids){
+				assertTrue(cuboid.sides.length > 0, "part " + part + ": a box without quads is kept");
+			}
+			quads += before.size();
+			removed += count;
+			for(int ray = 0; ray < 200; ray++){
+				//from far outside every box, towards a point among them
+				double[] origin = {random.nextGaussian(), random.nextGaussian(), random.nextGaussian()};
+				double length = Math.sqrt(origin[0] * origin[0] + origin[1] * origin[1] + origin[2] * origin[2]);
+				double[] direction = new double[3];
+				for(int axis = 0; axis < 3; axis++){
+					origin[axis] *= 30 / length;
+					direction[axis] = random.nextDouble() * 10 - 5 - origin[axis];
+				}
+				Hit expected = cast(before, origin, direction);
+				Hit actual = cast(after, origin, direction);
+				assertEquals(expected.distance, actual.distance, EPSILON, "part " + part + ", ray " + ray);
+				assertTrue(expected.quads.containsAll(actual.quads), "part " + part + ", ray " + ray + ": hit a quad that wasn't there");
+				assertEquals(expected.quads.isEmpty(), actual.quads.isEmpty(), "part " + part + ", ray " + ray);
+			}
+		}
+		System.out.println("Removed " + removed + " of " + quads + " quads");
+		assertTrue(removed > 0);
+	}
+	
+	@Test
+	void touchingBoxesHideTheirSharedFaces(){
+		ArrayList<Cuboid> cuboids = new ArrayList<>();
+		cuboids.add(new CemCuboid(0, 0, 0, 4, 4, 4, 0, 0, 0, false, 64, 64, 0, 0));
+		cuboids.add(new CemCuboid(4, 0, 0, 4, 4, 4, 0, 0, 0, false, 64, 64, 0, 0));
+		//the same box again, and one inside the first
+		cuboids.add(new CemCuboid(0, 0, 0, 4, 4, 4, 0, 0, 0, false, 64, 64, 0, 0));
+		cuboids.add(new CemCuboid(1, 1, 1, 2, 2, 2, 0, 0, 0, false, 64, 64, 0, 0));
+		assertEquals(2 + 6 + 6, CemMeshOptimizer.optimize(cuboids));
+		assertEquals(2, cuboids.size());
+		assertEquals(5, cuboids.get(0).sides.length);
+		assertEquals(5, cuboids.get(1).sides.length);
+	}
+	
+	@Test
+	void inflatedBoxesHideNothing(){
+		ArrayList<Cuboid> cuboids = new ArrayList<>();
+		cuboids.add(new CemCuboid(0, 0, 0, 4, 4, 4, 0, 0, 0, false, 64, 64, 0, 0));
+		cuboids.add(new CemCuboid(0, 0, 0, 4, 4, 4, 0.5F, 0.5F, 0.5F, false, 64, 64, 0, 0));
+		assertEquals(0, CemMeshOptimizer.optimize(cuboids));
+		assertEquals(2, cuboids.size());
+	}
+	
+	@Test
+	void leftOutFacesAreRemoved(){
+		ArrayList<Cuboid> cuboids = new ArrayList<>();
+		float[] uv = {0, 0, 4, 4};
+		float[] none = {0, 0, 0, 0};
+		cuboids.add(new CemCuboid(0, 0, 0, 4, 4, 4, 0, 0, 0, false, 64, 64, uv, none, uv, uv, uv, uv));
+		assertEquals(1, CemMeshOptimizer.optimize(cuboids));
+		assertEquals(5, cuboids.get(0).sides.length);
+	}
+	
+	private static List<Quad> quads(List<Cuboid> cuboids){
+		ArrayList<Quad> quads = new ArrayList<>();
+		for(Cuboid cuboid : cuboids){
+			quads.addAll(List.of(cuboid.sides));
+		}
+		return quads;
+	}
+	
+	/** The nearest quads {@code quads} the ray hits, all of them if several are hit at the same distance */
+	private static Hit cast(List<Quad> quads, double[] origin, double[] direction){
+		Hit hit = new Hit();
+		for(Quad quad : quads){
+			double[] bounds = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+			                   Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+			for(Vertex vertex : quad.vertices){
+				float[] position = {vertex.pos.getX(), vertex.pos.getY(), vertex.pos.getZ()};
+				for(int axis = 0; axis < 3; axis++){
+					bounds[axis] = Math.min(bounds[axis], position[axis]);
+					bounds[axis + 3] = Math.max(bounds[axis + 3], position[axis]);
+				}
+			}
+			int normal = (quad.direction.getX() != 0)? 0 : (quad.direction.getY() != 0)? 1 : 2;
+			if(direction[normal] == 0){
+				continue;
+			}
+			double distance = (bounds[normal] - origin[normal]) / direction[normal];
+			boolean inside = distance > 0;
+			for(int axis = 0; axis < 3 && inside; axis++){
+				double position = origin[axis] + distance * direction[axis];
+				inside = axis == normal || (bounds[axis] <= position && position <= bounds[axis + 3]);
+			}
+			if(inside){
+				if(distance < hit.distance - EPSILON){
+					hit.distance = distance;
+					hit.quads.clear();
+				}
+				if(distance <= hit.distance + EPSILON){
+					hit.quads.add(quad);
+				}
+			}
+		}
+		return hit;
+	}
+	
+	private static class Hit{
+		private final HashSet<Quad> quads    = new HashSet<>();
+		private       double        distance = Double.POSITIVE_INFINITY;
+	}
+}
@@ -0,0 +1,49 @@
+package net.dorianpb.cem.internal.models;
+
+import net.dorianpb.cem.internal.file.TestJemFiles;
+import org.junit.jupiter.api.Test;
+
+import static net.dorianpb.cem.internal.file.TestJemFiles.animations;
+import static net.dorianpb.cem.internal.file.TestJemFiles.model;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** Order the animations of a model are run in, see {@link CemModelRegistry#schedule} */
+class CemModelRegistryScheduleTest{
+	@Test
+	void animationsRunAfterTheOnesTheyRead(){
+		CemModelRegistry registry = registry(animations("body.ry", "head.rx * 2", "var.b", "var.a + 1"),
+		                                     animations("head.rx", "age", "var.a", "age * 10", "head.ry", "var.b"));
+		registry.applyAnimations(0, 0, 3, 0, 0, null);
+		assertEquals(6, rotation(registry, "body", 'y'));
+		assertEquals(31, rotation(registry, "head", 'y'));
+	}
+	
+	@Test
+	void loopsAreLeftOut(){
+		CemModelRegistry registry = registry(animations("body.ry", "head.rx * 2", "body.rz", "head.rx + 5"),
+		                                     animations("head.rx", "body.ry + 1", "head.ry", "age"));
+		registry.applyAnimations(0, 0, 3, 0, 0, null);
+		//neither part of the loop is animated, what depends on it sees it as it was loaded
+		assertEquals(0, rotation(registry, "body", 'y'));
+		assertEquals(0, rotation(registry, "head", 'x'));
+		assertEquals(5, rotation(registry, "body", 'z'));
+		assertEquals(3, rotation(registry, "head", 'y'));
+	}
+	
+	@Test
+	void loopsThroughVariablesAreLeftOut(){
+		CemModelRegistry registry = registry(animations("var.a", "var.b + 1", "body.rx", "age"),
+		                                     animations("var.b", "var.a * 2", "head.rx", "var.a + body.rx"));
+		registry.applyAnimations(0, 0, 3, 0, 0, null);
+		assertEquals(3, rotation(registry, "body", 'x'));
+		assertEquals(3, rotation(registry, "head", 'x'));
+	}
+	
+	private static CemModelRegistry registry(String body, String head){
+		return new CemModelRegistry(TestJemFiles.of("schedule.jem", model("body", "body", body), model("head", "head", head)), false);
+	}
+	
+	private static float rotation(CemModelRegistry registry, String part, char axis){
+		return registry.findChild(part, null).getModel().getRotation(axis);
+	}
+}
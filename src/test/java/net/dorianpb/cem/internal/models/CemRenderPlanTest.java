@@ -0,0 +1,308 @@
+package net.dorianpb.cem.internal.models;
+
+import net.dorianpb.cem.internal.models.CemModelEntry.CemModelPart;
+import net.dorianpb.cem.internal.models.CemModelEntry.TransparentCemModelPart;
+import net.minecraft.client.model.ModelPart;
+import net.minecraft.client.model.ModelPart.Cuboid;
+import net.minecraft.client.model.ModelTransform;
+import net.minecraft.client.render.VertexConsumer;
+import net.minecraft.client.util.math.MatrixStack;
+import net.minecraft.util.math.Quaternion;
+import net.minecraft.util.math.Vec3f;
+import net.minecraft.util.math.Vector4f;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Renders trees of parts with {@link CemRenderPlan} and with the recursive render it replaced, counting the matrix operations of both: every cuboid has to be
+ * drawn with the same matrix, in the same order. All parts are handed out first, so none of them are baked and every cuboid is drawn on its own.
+ */
+class CemRenderPlanTest{
+	private static final String[] BIPED = {"head", "hat", "body", "right_arm", "left_arm", "right_leg", "left_leg"};
+	private static final float    EPSILON = 1e-5F;
+	
+	@Test
+	void randomTreesRenderTheSame(){
+		long legacyOperations = 0;
+		long planOperations = 0;
+		for(int seed = 0; seed < 2000; seed++){
+			Random random = new Random(seed);
+			CemModelPart root = tree(random, 0);
+			exposeAll(root);
+			CountingMatrixStack legacy = legacyRender(root);
+			CountingMatrixStack plan = render(root);
+			//the plan is kept, and nothing it changed on the parts may stick
+			CountingMatrixStack again = render(root);
+			assertSame(legacy, plan, "seed " + seed);
+			assertSame(plan, again, "seed " + seed + ", rendered again");
+			legacyOperations += legacy.operations;
+			planOperations += plan.operations;
+		}
+		System.out.println("Random trees: " + legacyOperations + " matrix operations before, " + planOperations + " with the render plan");
+		assertTrue(planOperations < legacyOperations);
+	}
+	
+	/** A biped the way prepRootPart puts it together, every vanilla part wrapping a part of the .jem file with a box and a submodel */
+	@Test
+	void bipedNeedsFewerMatrixOperations(){
+		CemModelPart root = new CemModelPart(64, 64);
+		for(String name : BIPED){
+			CemModelPart part = new CemModelPart(64, 64);
+			part.cuboids.add(new RecordedCuboid());
+			part.pivotY = -24;
+			part.setRotation('x', 0.1F);
+			CemModelPart submodel = new CemModelPart(64, 64);
+			submodel.cuboids.add(new RecordedCuboid());
+			submodel.pivotX = 1;
+			part.addChild("sub", submodel);
+			TransparentCemModelPart transparent = new TransparentCemModelPart(part, ModelTransform.NONE, ModelTransform.NONE);
+			transparent.pivotX = 5;
+			transparent.pivotY = 2;
+			transparent.pitch = 0.3F;
+			root.addChild(name, transparent);
+		}
+		exposeAll(root);
+		CountingMatrixStack legacy = legacyRender(root);
+		CountingMatrixStack plan = render(root);
+		assertSame(legacy, plan, "biped");
+		System.out.println("Biped: " + legacy.operations + " matrix operations before, " + plan.operations + " with the render plan");
+		//root: push and pop; every limb: push, translate, rotate, and pop with the submodel: push, translate, pop
+		assertEquals(2 + BIPED.length * 7, plan.operations);
+		assertTrue(plan.operations < legacy.operations);
+	}
+	
+	@Test
+	void newChildrenAreRendered(){
+		CemModelPart root = new CemModelPart(64, 64);
+		root.cuboids.add(new RecordedCuboid());
+		CountingMatrixStack before = render(root);
+		CemModelPart child = new CemModelPart(64, 64);
+		child.cuboids.add(new RecordedCuboid());
+		CemModelPart grandchild = new CemModelPart(64, 64);
+		grandchild.cuboids.add(new RecordedCuboid());
+		//keeps it from being baked once it is added
+		grandchild.setAnimated();
+		root.addChild("child", child);
+		exposeAll(root);
+		CountingMatrixStack after = render(root);
+		child.addChild("grandchild", grandchild);
+		CountingMatrixStack afterGrandchild = render(root);
+		assertEquals(1, before.cuboids.size());
+		assertEquals(2, after.cuboids.size());
+		assertEquals(3, afterGrandchild.cuboids.size());
+	}
+	
+	private static CountingMatrixStack render(ModelPart root){
+		CountingMatrixStack matrices = new CountingMatrixStack();
+		RecordedCuboid.current = matrices;
+		root.render(matrices, null, 0, 0, 1, 1, 1, 1);
+		return matrices;
+	}
+	
+	private static CountingMatrixStack legacyRender(ModelPart root){
+		CountingMatrixStack matrices = new CountingMatrixStack();
+		RecordedCuboid.current = matrices;
+		legacyRender(root, matrices);
+		return matrices;
+	}
+	
+	/** The render of CemModelPart and TransparentCemModelPart before there were render plans, recursing through every part */
+	private static void legacyRender(ModelPart part, CountingMatrixStack matrices){
+		if(part instanceof TransparentCemModelPart transparent){
+			float pitch = part.pitch;
+			float yaw = part.yaw;
+			float roll = part.roll;
+			transparent.getPart().pitch = pitch;
+			transparent.getPart().yaw = yaw;
+			transparent.getPart().roll = roll;
+			part.pitch = 0;
+			part.yaw = 0;
+			part.roll = 0;
+			legacyRenderCem(transparent, matrices);
+			part.pitch = pitch;
+			part.yaw = yaw;
+			part.roll = roll;
+		}
+		else if(part instanceof CemModelPart cemPart){
+			legacyRenderCem(cemPart, matrices);
+		}
+		else{
+			part.render(matrices, null, 0, 0, 1, 1, 1, 1);
+		}
+	}
+	
+	/** CemModelPart.render scaled and went on with ModelPart.render, which rotated by the vanilla angles plus the rotation of the part */
+	private static void legacyRenderCem(CemModelPart part, CountingMatrixStack matrices){
+		matrices.scale(part.getScale('x'), part.getScale('y'), part.getScale('z'));
+		if(part.visible && (!part.cuboids.isEmpty() || !part.children.isEmpty())){
+			matrices.push();
+			matrices.translate(part.pivotX / 16.0F, part.pivotY / 16.0F, part.pivotZ / 16.0F);
+			float pitch = part.pitch + part.getOwnRotation('x');
+			float yaw = part.yaw + part.getOwnRotation('y');
+			float roll = part.roll + part.getOwnRotation('z');
+			if(roll != 0){
+				matrices.multiply(Vec3f.POSITIVE_Z.getRadialQuaternion(roll));
+			}
+			if(yaw != 0){
+				matrices.multiply(Vec3f.POSITIVE_Y.getRadialQuaternion(yaw));
+			}
+			if(pitch != 0){
+				matrices.multiply(Vec3f.POSITIVE_X.getRadialQuaternion(pitch));
+			}
+			for(Cuboid cuboid : part.cuboids){
+				cuboid.renderCuboid(matrices.peek(), null, 0, 0, 1, 1, 1, 1);
+			}
+			for(ModelPart child : part.children.values()){
+				legacyRender(child, matrices);
+			}
+			matrices.pop();
+		}
+	}
+	
+	private static void assertSame(CountingMatrixStack expected, CountingMatrixStack actual, String message){
+		assertEquals(expected.cuboids.size(), actual.cuboids.size(), message + ": cuboids drawn");
+		for(int i = 0; i < expected.cuboids.size(); i++){
+			assertTrue(expected.cuboids.get(i) == actual.cuboids.get(i), message + ": cuboid " + i + " drawn in another order");
+			float[] expectedMatrix = expected.matrices.get(i);
+			float[] actualMatrix = actual.matrices.get(i);
+			for(int j = 0; j < expectedMatrix.length; j++){
+				assertEquals(expectedMatrix[j], actualMatrix[j], EPSILON, message + ": matrix of cuboid " + i);
+			}
+		}
+	}
+	
+	/** Random trees with scales, rotations, hidden parts, transparent parts and vanilla parts, about a third of the values are 0 or 1 */
+	private static CemModelPart tree(Random random, int depth){
+		CemModelPart part = new CemModelPart(64, 64);
+		part.setRotation(maybe(random, 0.5F), maybe(random, random.nextFloat()), maybe(random, 0.2F));
+		part.pivotX = maybe(random, random.nextFloat() * 8);
+		part.pivotY = maybe(random, random.nextFloat() * 8);
+		part.pivotZ = maybe(random, 2);
+		part.pitch = maybe(random, random.nextFloat());
+		part.yaw = maybe(random, 0.3F);
+		if(random.nextInt(5) == 0){
+			part.setScale(1.5F, 1, 0.5F);
+		}
+		part.visible = random.nextInt(8) != 0;
+		for(int i = random.nextInt(3); i > 0; i--){
+			part.cuboids.add(new RecordedCuboid());
+		}
+		if(depth < 4){
+			for(int i = random.nextInt(4); i > 0; i--){
+				CemModelPart child = tree(random, depth + 1);
+				if(random.nextInt(6) == 0){
+					child.pitch = 0.7F;
+					child = new TransparentCemModelPart(child, ModelTransform.NONE, ModelTransform.NONE);
+					child.pitch = 0.4F;
+					child.roll = maybe(random, 1);
+					child.pivotX = maybe(random, 3);
+					child.pivotY = maybe(random, -2);
+					if(random.nextInt(8) == 0){
+						child.setRotation('y', 0.25F);
+					}
+					if(random.nextInt(8) == 0){
+						child.setScale('x', 2);
+					}
+				}
+				part.addChild("child" + i, child);
+			}
+		}
+		if(random.nextInt(10) == 0){
+			part.addChild("vanilla", new ModelPart(new ArrayList<>(), new HashMap<>()));
+		}
+		return part;
+	}
+	
+	private static float maybe(Random random, float value){
+		return (random.nextInt(3) == 0)? value : 0;
+	}
+	
+	/** Hands out every part, the way the vanilla model classes do with the parts they animate */
+	private static void exposeAll(ModelPart part){
+		for(String name : new ArrayList<>(part.children.keySet())){
+			ModelPart child = part.children.get(name);
+			if(part.getClass() == CemModelPart.class){
+				part.getChild(name);
+			}
+			exposeAll(child);
+		}
+	}
+	
+	/** Counts every matrix operation, and the matrix every {@link RecordedCuboid} is drawn with */
+	private static class CountingMatrixStack extends MatrixStack{
+		private final List<Cuboid>  cuboids  = new ArrayList<>();
+		private final List<float[]> matrices = new ArrayList<>();
+		private       int           operations;
+		
+		@Override
+		public void push(){
+			this.operations++;
+			super.push();
+		}
+		
+		@Override
+		public void pop(){
+			this.operations++;
+			super.pop();
+		}
+		
+		@Override
+		public void translate(double x, double y, double z){
+			this.operations++;
+			super.translate(x, y, z);
+		}
+		
+		@Override
+		public void scale(float x, float y, float z){
+			this.operations++;
+			super.scale(x, y, z);
+		}
+		
+		@Override
+		public void multiply(Quaternion quaternion){
+			this.operations++;
+			super.multiply(quaternion);
+		}
+		
+		/** Where the matrix takes the origin and the three unit vectors, and where its normal matrix takes the three axes */
+		private void record(Cuboid cuboid, MatrixStack.Entry entry){
+			float[] matrix = new float[21];
+			for(int i = 0; i < 4; i++){
+				Vector4f vector = new Vector4f((i == 1)? 1 : 0, (i == 2)? 1 : 0, (i == 3)? 1 : 0, 1);
+				vector.transform(entry.getModel());
+				matrix[i * 3] = vector.getX();
+				matrix[i * 3 + 1] = vector.getY();
+				matrix[i * 3 + 2] = vector.getZ();
+			}
+			for(int i = 0; i < 3; i++){
+				Vec3f normal = new Vec3f((i == 0)? 1 : 0, (i == 1)? 1 : 0, (i == 2)? 1 : 0);
+				normal.transform(entry.getNormal());
+				matrix[12 + i * 3] = normal.getX();
+				matrix[12 + i * 3 + 1] = normal.getY();
+				matrix[12 + i * 3 + 2] = normal.getZ();
+			}
+			this.cuboids.add(cuboid);
+			this.matrices.add(matrix);
+		}
+	}
+	
+	private static class RecordedCuboid extends Cuboid{
+		private static CountingMatrixStack current;
+		
+		private RecordedCuboid(){
+			super(0, 0, 0, 0, 0, 1, 1, 1, 0, 0, 0, false, 64, 64);
+		}
+		
+		@Override
+		public void renderCuboid(MatrixStack.Entry entry, VertexConsumer vertices, int light, int overlay, float red, float green, float blue, float alpha){
+			current.record(this, entry);
+		}
+	}
+}
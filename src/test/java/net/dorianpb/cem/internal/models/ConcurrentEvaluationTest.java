@@ -0,0 +1,77 @@
+package net.dorianpb.cem.internal.models;
+
+import net.dorianpb.cem.internal.file.TestJemFiles;
+import net.dorianpb.cem.internal.util.CemExpressionCache;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static net.dorianpb.cem.internal.file.TestJemFiles.animations;
+import static net.dorianpb.cem.internal.file.TestJemFiles.model;
+import static net.dorianpb.cem.internal.file.TestJemFiles.submodel;
+import static net.dorianpb.cem.internal.file.TestJemFiles.submodels;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/** Parses and evaluates many models at once on a {@link ForkJoinPool}, every one of them has to come out exactly as it does when they are run one by one */
+class ConcurrentEvaluationTest{
+	private static final int      MODELS      = 256;
+	private static final int      FRAMES      = 100;
+	private static final String[] EXPRESSIONS = {"sin(limb_swing * 0.6662) * limb_speed",
+	                                             "clamp(-0.5 * head_pitch, 0, 90) + sin(limb_swing * 0.6662)",
+	                                             "if(age > 1 && head_yaw < 2, cos(age), sin(age) * 2)",
+	                                             "min(age, limb_swing, head_yaw) + sin(limb_swing * 0.6662) * limb_speed",
+	                                             "torad(head_yaw) * 0.5 + body.rx",
+	                                             "var.swing + limb_speed * 0.1"};
+	
+	@Test
+	void parallelMatchesSequential(){
+		List<float[]> sequential = new ArrayList<>();
+		for(int seed = 0; seed < MODELS; seed++){
+			sequential.add(run(seed));
+		}
+		CemExpressionCache.clear();
+		ForkJoinPool pool = new ForkJoinPool(Math.max(4, Runtime.getRuntime().availableProcessors()));
+		try{
+			List<float[]> parallel = pool.submit(() -> IntStream.range(0, MODELS).parallel().mapToObj(ConcurrentEvaluationTest::run).collect(Collectors.toList()))
+			                             .join();
+			for(int seed = 0; seed < MODELS; seed++){
+				assertArrayEquals(sequential.get(seed), parallel.get(seed), "model " + seed);
+			}
+		} finally{
+			pool.shutdown();
+		}
+	}
+	
+	/** Builds a model from {@code seed}, sharing most expressions with the other seeds, and returns the pose of its parts over a run of frames */
+	private static float[] run(int seed){
+		String offset = " + " + (seed % 7);
+		CemModelRegistry registry = new CemModelRegistry(TestJemFiles.of("stress/" + seed + ".jem",
+		                                                                 model("body", "body", animations("body.rx", expression(seed) + offset,
+		                                                                                                  "var.swing", expression(seed + 1) + offset)),
+		                                                                 model("head", "head", submodels(submodel("jaw", "")) + "," +
+		                                                                                       animations("head.ry", expression(seed + 4) + offset,
+		                                                                                                  "jaw.rx", expression(seed + 5) + offset,
+		                                                                                                  "head.tz", expression(seed + 2) + offset))
+		                                                                ), false);
+		CemModelEntry[] parts = {registry.findChild("body", null), registry.findChild("head", null), registry.findChild("jaw", null)};
+		Random random = new Random(seed);
+		float[] poses = new float[FRAMES * parts.length * 2];
+		for(int frame = 0; frame < FRAMES; frame++){
+			registry.applyAnimations(random.nextFloat() * 10, random.nextFloat(), random.nextFloat() * 100, random.nextFloat() * 90, random.nextFloat() * 90, null);
+			for(int i = 0; i < parts.length; i++){
+				poses[(frame * parts.length + i) * 2] = parts[i].getModel().getRotation('x') + parts[i].getModel().getRotation('y');
+				poses[(frame * parts.length + i) * 2 + 1] = parts[i].getTranslate('z');
+			}
+		}
+		return poses;
+	}
+	
+	private static String expression(int index){
+		return EXPRESSIONS[index % EXPRESSIONS.length];
+	}
+}
@@ -0,0 +1,144 @@
+package net.dorianpb.cem.internal.models;
+
+import net.dorianpb.cem.internal.file.TestJemFiles;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static net.dorianpb.cem.internal.file.TestJemFiles.model;
+import static net.dorianpb.cem.internal.file.TestJemFiles.submodel;
+import static net.dorianpb.cem.internal.file.TestJemFiles.submodels;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** How {@link CemModelRegistry#findChild} resolves references like "body:hand" to the parts of a model */
+class FindChildTest{
+	private static final String[] IDS = {"a", "b", "c", "d", "e"};
+	
+	/** body > arm > hand > finger, body > tail, skull (part head) > hand, left > foot > claw and right > foot > claw */
+	private static final CemModelRegistry REGISTRY = new CemModelRegistry(TestJemFiles.of("find.jem",
+	                                                                                      model("body", "body", submodels(arm(), submodel("tail", ""))),
+	                                                                                      model("head", "skull", submodels(submodel("hand", ""))),
+	                                                                                      model("left_leg", "left", submodels(foot())),
+	                                                                                      model("right_leg", "right", submodels(foot()))), false);
+	
+	@Test
+	void exactPaths(){
+		assertFinds("body:arm:hand", "body:arm:hand");
+		assertFinds("body:arm:hand:finger", "body:arm:hand:finger");
+		assertFinds("skull:hand", "skull:hand");
+		assertFinds("right:foot:claw", "right:foot:claw");
+	}
+	
+	@Test
+	void levelsCanBeSkipped(){
+		assertFinds("body:arm:hand", "body:hand");
+		assertFinds("body:arm:hand:finger", "body:finger");
+		assertFinds("body:arm:hand:finger", "arm:finger");
+		assertFinds("right:foot:claw", "right:claw");
+	}
+	
+	@Test
+	void shortestPathWins(){
+		//skull:hand comes after body:arm:hand in the file, but is closer to the top
+		assertFinds("skull:hand", "hand");
+		assertFinds("body:arm", "arm");
+	}
+	
+	@Test
+	void tiesGoToTheFirstInTheFile(){
+		assertFinds("left:foot", "foot");
+		assertFinds("left:foot:claw", "claw");
+		assertFinds("left:foot:claw", "foot:claw");
+	}
+	
+	@Test
+	void partNamesAndThis(){
+		assertFinds("skull", "head");
+		assertFinds("skull", "skull");
+		assertFinds("right:foot:claw", "this:claw", REGISTRY.findChild("right", null));
+		assertFinds("right", "this", REGISTRY.findChild("right", null));
+	}
+	
+	@Test
+	void missingParts(){
+		assertThrows(NullPointerException.class, () -> REGISTRY.findChild("nothing", null));
+		assertThrows(NullPointerException.class, () -> REGISTRY.findChild("hand:body", null));
+		assertThrows(NullPointerException.class, () -> REGISTRY.findChild("tail:finger", null));
+	}
+	
+	/** Random trees of repeated ids, every reference has to find the shortest path with its ids in order, the first one in the file if there are several */
+	@Test
+	void randomTreesMatchTheDefinition(){
+		Random random = new Random(7);
+		for(int tree = 0; tree < 100; tree++){
+			CemModelRegistry registry = new CemModelRegistry(TestJemFiles.of("random.jem",
+			                                                                 model("head", "head", submodels(children(random, 1))),
+			                                                                 model("body", "body", submodels(children(random, 1))),
+			                                                                 model("leg", "leg", submodels(children(random, 1)))), false);
+			String[] refs = {"a", "b", "c", "d", "e", "head", "body", "leg"};
+			for(int query = 0; query < 100; query++){
+				ArrayList<String> refmap = new ArrayList<>();
+				for(int i = 0, length = 1 + random.nextInt(3); i < length; i++){
+					refmap.add(refs[random.nextInt(refs.length)]);
+				}
+				String target = String.join(":", refmap);
+				CemModelEntry expected = null;
+				for(int i = 0; i < registry.getPartCount(); i++){
+					List<String> path = Arrays.asList(registry.getPath(registry.getPart(i)).split(":"));
+					if(containsInOrder(path, refmap) && (expected == null || path.size() < registry.getPath(expected).split(":").length)){
+						expected = registry.getPart(i);
+					}
+				}
+				if(expected == null){
+					assertThrows(NullPointerException.class, () -> registry.findChild(target, null), target);
+				}
+				else{
+					assertEquals(registry.getPath(expected), registry.getPath(registry.findChild(target, null)), target);
+				}
+			}
+		}
+	}
+	
+	private static void assertFinds(String expected, String target){
+		assertFinds(expected, target, null);
+	}
+	
+	private static void assertFinds(String expected, String target, CemModelEntry parent){
+		assertEquals(expected, REGISTRY.getPath(REGISTRY.findChild(target, parent)), target);
+	}
+	
+	private static String arm(){
+		return submodel("arm", submodels(submodel("hand", submodels(submodel("finger", "")))));
+	}
+	
+	private static String foot(){
+		return submodel("foot", submodels(submodel("claw", "")));
+	}
+	
+	/** One or two submodels with different ids, each with submodels of its own down to a depth of 4 */
+	private static String children(Random random, int depth){
+		String first = IDS[random.nextInt(IDS.length)];
+		String second = IDS[random.nextInt(IDS.length)];
+		ArrayList<String> children = new ArrayList<>();
+		for(String id : random.nextBoolean() || first.equals(second)? List.of(first) : List.of(first, second)){
+			children.add(submodel(id, (depth < 4 && random.nextInt(3) > 0)? submodels(children(random, depth + 1)) : ""));
+		}
+		return String.join(",", children);
+	}
+	
+	private static boolean containsInOrder(List<String> path, List<String> refmap){
+		int last = -1;
+		for(String ref : refmap){
+			int index = path.indexOf(ref);
+			if(index <= last){
+				return false;
+			}
+			last = index;
+		}
+		return true;
+	}
+}
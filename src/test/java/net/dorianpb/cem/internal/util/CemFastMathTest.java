@@ -0,0 +1,156 @@
+package net.dorianpb.cem.internal.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.function.DoubleUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Holds every {@link CemFastMath} function to the error it documents, over the whole range it approximates, and checks that everything outside of that range
+ * gives the same result as {@link Math}
+ */
+class CemFastMathTest{
+	/** Samples per range, spread evenly over the bits of the floats so that tiny and huge values are covered as well as those around 1 */
+	private static final int SAMPLES = 1_000_000;
+	
+	@Test
+	void tan(){
+		//one step of the sine table is 2 pi / 65536, and tan grows by 1 + tan^2 per radian
+		sweep("tan", -4 * (float) Math.PI, 4 * (float) Math.PI, CemFastMath::tan, Math::tan, (x, exact) -> (Math.abs(Math.cos(x)) < 1e-3)?
+		                                                                                                 Double.NaN : 1e-4 * (1 + exact * exact));
+	}
+	
+	@Test
+	void inverseTrigonometry(){
+		sweep("asin", -1, 1, CemFastMath::asin, Math::asin, (x, exact) -> 2.5e-7);
+		sweep("acos", -1, 1, CemFastMath::acos, Math::acos, (x, exact) -> 2.5e-7);
+		sweep("atan", -Float.MAX_VALUE, Float.MAX_VALUE, CemFastMath::atan, Math::atan, (x, exact) -> 2.5e-7);
+	}
+	
+	@Test
+	void exp(){
+		sweep("exp", -87, 88, CemFastMath::exp, Math::exp, (x, exact) -> 3e-7 * exact);
+	}
+	
+	@Test
+	void log(){
+		sweep("log", Float.MIN_NORMAL, Float.MAX_VALUE, CemFastMath::log, Math::log, (x, exact) -> 3e-7 * Math.abs(exact));
+	}
+	
+	@Test
+	void pow(){
+		for(float b : new float[]{-7.5F, -2, -0.5F, 0, 0.3F, 1, 1.5F, 2, 3, 10}){
+			sweep("pow(a, " + b + ")", Float.MIN_NORMAL, Float.MAX_VALUE, (a) -> CemFastMath.pow(a, b), (a) -> Math.pow(a, b), (a, exact) -> powBound(a, b, exact));
+		}
+		for(float a : new float[]{0.01F, 0.5F, 2, 10, 1000}){
+			sweep("pow(" + a + ", b)", -30, 30, (b) -> CemFastMath.pow(a, b), (b) -> Math.pow(a, b), (b, exact) -> powBound(a, b, exact));
+		}
+	}
+	
+	/** Results that may not fit a normal float once off by the error, which are subnormal or infinite, can't be relatively exact and are skipped */
+	private static double powBound(float a, float b, double exact){
+		double relative = 3e-7 * (1 + Math.abs(b * Math.log(a)));
+		return (exact * (1 - relative) < Float.MIN_NORMAL || exact * (1 + relative) > Float.MAX_VALUE)? Double.NaN : relative * exact;
+	}
+	
+	@Test
+	void expFallsBackOutsideOfItsRange(){
+		assertWithin(CemFastMath.exp(-87), Math.exp(-87), 3e-7 * Math.exp(-87));
+		assertWithin(CemFastMath.exp(Math.nextDown(88F)), Math.exp(Math.nextDown(88F)), 3e-7 * Math.exp(Math.nextDown(88F)));
+		for(float a : new float[]{Math.nextDown(-87F), -88, -100, -104, -150, 88, 88.5F, 89, 100, Float.NaN, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY}){
+			assertExact(CemFastMath.exp(a), Math.exp(a), "exp(" + a + ")");
+		}
+	}
+	
+	@Test
+	void logFallsBackOutsideOfItsRange(){
+		assertWithin(CemFastMath.log(Float.MIN_NORMAL), Math.log(Float.MIN_NORMAL), 3e-7 * -Math.log(Float.MIN_NORMAL));
+		for(float a : new float[]{Math.nextDown(Float.MIN_NORMAL), Float.MIN_VALUE, 0, -0F, -1, -Float.MIN_VALUE, Float.NaN, Float.POSITIVE_INFINITY,
+		                          Float.NEGATIVE_INFINITY}){
+			assertExact(CemFastMath.log(a), Math.log(a), "log(" + a + ")");
+		}
+	}
+	
+	@Test
+	void powFallsBackOutsideOfItsRange(){
+		float[] bases = {0, -0F, -Float.MIN_VALUE, -0.5F, -1, -2, -8, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, Float.NaN};
+		float[] exponents = {0, -0F, 1, 2, 3, -1, -2, 0.5F, -0.5F, 1.5F, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NaN};
+		for(float a : bases){
+			for(float b : exponents){
+				assertExact(CemFastMath.pow(a, b), Math.pow(a, b), "pow(" + a + ", " + b + ")");
+			}
+		}
+		for(float b : new float[]{Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NaN}){
+			for(float a : new float[]{Float.MIN_VALUE, 0.5F, 1, 2, Float.MAX_VALUE}){
+				assertExact(CemFastMath.pow(a, b), Math.pow(a, b), "pow(" + a + ", " + b + ")");
+			}
+		}
+	}
+	
+	@Test
+	void inverseTrigonometryKeepsSpecialCases(){
+		for(float a : new float[]{0, -0F, 1, -1, Math.nextUp(1F), -Math.nextUp(1F), 2, Float.NaN, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY}){
+			assertExact(CemFastMath.asin(a), Math.asin(a), "asin(" + a + ")");
+			assertExact(CemFastMath.acos(a), Math.acos(a), "acos(" + a + ")");
+			assertExact(CemFastMath.atan(a), Math.atan(a), "atan(" + a + ")");
+		}
+	}
+	
+	/**
+	 * Compares the functions at {@link #SAMPLES} floats in [lo, hi], both ends included
+	 * @param bound Largest absolute error allowed at x, for an exact result; NaN to skip x
+	 */
+	private static void sweep(String name, float lo, float hi, FloatFunction fast, DoubleUnaryOperator exact, Bound bound){
+		long first = ordered(lo);
+		long last = ordered(hi);
+		long step = Math.max(1, (last - first) / SAMPLES);
+		double worst = 0;
+		for(long i = first; i <= last + step - 1; i += step){
+			float x = unordered(Math.min(i, last));
+			double expected = exact.applyAsDouble(x);
+			double allowed = bound.at(x, expected);
+			if(Double.isNaN(allowed)){
+				continue;
+			}
+			float actual = fast.apply(x);
+			double error = Math.abs(actual - (double) (float) expected);
+			if(!(error <= allowed)){
+				fail(name + " is " + actual + " at " + x + " instead of " + (float) expected + ", off by " + error + " rather than at most " + allowed);
+			}
+			worst = Math.max(worst, error / Math.max(allowed, Double.MIN_NORMAL));
+		}
+		System.out.println(name + " reaches " + Math.round(worst * 100) + "% of the allowed error");
+	}
+	
+	private static void assertWithin(float actual, double expected, double allowed){
+		assertEquals((float) expected, actual, allowed);
+	}
+	
+	/** Same float, telling -0 from 0 */
+	private static void assertExact(float actual, double expected, String message){
+		assertEquals(Float.floatToIntBits((float) expected), Float.floatToIntBits(actual), message + " is " + actual + " instead of " + (float) expected);
+	}
+	
+	/** Position of a float among all floats ordered by value, -0 being the same as 0 */
+	private static long ordered(float x){
+		int bits = Float.floatToRawIntBits(Math.abs(x));
+		return (x < 0)? -bits : bits;
+	}
+	
+	private static float unordered(long position){
+		float abs = Float.intBitsToFloat((int) Math.abs(position));
+		return (position < 0)? -abs : abs;
+	}
+	
+	@FunctionalInterface
+	private interface FloatFunction{
+		float apply(float x);
+	}
+	
+	@FunctionalInterface
+	private interface Bound{
+		double at(float x, double exact);
+	}
+}
@@ -0,0 +1,81 @@
+package net.dorianpb.cem.internal.util;
+
+import net.dorianpb.cem.internal.file.JemFile;
+import net.dorianpb.cem.internal.file.TestJemFiles;
+import net.dorianpb.cem.internal.models.CemModelRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static net.dorianpb.cem.internal.file.TestJemFiles.animations;
+import static net.dorianpb.cem.internal.file.TestJemFiles.model;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Templates built in parallel by {@link CemRegistryManager#buildTemplates}, which have to be reported in the same order however the tasks finish */
+class CemRegistryManagerTest{
+	private static final int FILES = 60;
+	
+	@Test
+	void templatesAreReportedInPathOrder(){
+		ArrayList<JemFile> files = new ArrayList<>();
+		ArrayList<String> expected = new ArrayList<>();
+		for(int i = 0; i < FILES; i++){
+			String path = String.format("order/%02d.jem", i);
+			files.add(file(path, i));
+			expected.add(path + ((i % 7 == 3)? " failed" : ""));
+		}
+		Collections.shuffle(files, new Random(7));
+		ArrayList<String> reported = new ArrayList<>();
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try{
+			CemRegistryManager.buildTemplates(files, pool, (file, template, error) -> {
+				if(error == null){
+					assertNotNull(template);
+					reported.add(file.getPath());
+				}
+				else{
+					assertNull(template);
+					assertTrue(error instanceof IllegalArgumentException, error.toString());
+					reported.add(file.getPath() + " failed");
+				}
+			});
+		} finally{
+			pool.shutdown();
+		}
+		assertEquals(expected, reported);
+	}
+	
+	@Test
+	void templatesWork(){
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try{
+			CemRegistryManager.buildTemplates(List.of(file("work/a.jem", 1), file("work/b.jem", 2)), pool, (file, template, error) -> {
+				CemModelRegistry registry = template.instantiate();
+				registry.applyAnimations(0, 0, 2, 0, 0, null);
+				assertEquals(file.getPath().equals("work/a.jem")? 3 : 4, registry.findChild("head", null).getModel().getRotation('x'));
+			});
+		} finally{
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Every seventh file has an animation without a target, which fails the whole file. The earlier the file, the longer its animations, so that the files are
+	 * done in about the opposite order.
+	 */
+	private static JemFile file(String path, int index){
+		StringBuilder expression = new StringBuilder("age + " + index);
+		for(int i = 0; i < FILES - index; i++){
+			expression.append(" + sin(age * ").append(i).append(") * limb_speed");
+		}
+		return TestJemFiles.of(path, model("body", "body", animations("body.rx", "head.rx * 2")),
+		                       model("head", "head", animations("head.rx", expression.toString(), (index % 7 == 3)? "broken" : "head.ry", "1")));
+	}
+}
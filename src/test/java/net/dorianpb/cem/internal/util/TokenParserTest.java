@@ -0,0 +1,123 @@
+package net.dorianpb.cem.internal.util;
+
+import net.dorianpb.cem.internal.util.CemStringParser.NumToken;
+import net.dorianpb.cem.internal.util.CemStringParser.Token;
+import net.dorianpb.cem.internal.util.CemStringParser.TokenParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Holds {@link TokenParser} against the {@link LegacyTokenParser} it replaced: every string the old one accepted has to give the very same Token tree */
+class TokenParserTest{
+	private static final String[] ATOMS     = {"age", "limb_swing", "head.rx", "body.ty", "head2:x.rx", "pi", "true", "is_alive", "1", "0.6662", "12", "3.5", "time"};
+	private static final String[] OPERATORS = {"+", "-", "*", "/", "%", "==", "!=", "<", ">", "<=", ">=", "&&", "||"};
+	private static final String[] FUNCTIONS = {"sin", "cos", "min", "max", "if", "clamp", "random", "between", "torad"};
+	
+	@Test
+	void notBindsLooserThanArithmetic(){
+		assertTree("NOT[ADD[age,time]]", "!age + time");
+		assertTree("AND[NOT[age],time]", "!age && time");
+		assertTree("LESS[NOT[age],time]", "! age < time");
+		assertNewOnly("NOT[NOT[MULT[age,time]]]", "!!age * time");
+	}
+	
+	@Test
+	void unaryMinusBindsTighterThanMultiplication(){
+		assertTree("MULT[SUB[0.0,age],time]", "-age * time");
+		assertNewOnly("SUB[age,SUB[0.0,time]]", "age - -time");
+		assertTree("MULT[2.0,SUB[0.0,3.0]]", "2*-3");
+		assertTree("SUB[0.0,sin[age]]", "-sin(age)");
+		assertTree("SUB[0.0,ADD[age,time]]", "-(age + time)");
+	}
+	
+	@Test
+	void logicBindsLooserThanComparisons(){
+		assertTree("AND[LESS[age,time],EQ[speed,is_hurt]]", "age < time && speed == is_hurt");
+		assertTree("OR[GREATER[ADD[age,time],MULT[speed,is_hurt]],NOTEQ[health,1.0]]", "age + time > speed * is_hurt || health != 1");
+		assertTree("AND[OR[age,time],speed]", "age || time && speed");
+		assertTree("OR[AND[age,time],speed]", "age && time || speed");
+		assertTree("EQ[GREATER[age,time],speed]", "age > time == speed");
+	}
+	
+	@Test
+	void nestedFunctionCalls(){
+		assertTree("max[sin[age],min[time,SUB[0.0,speed]],if[is_hurt,1.0,2.0]]", "max(sin(age), min(time, -speed), if(is_hurt, 1, 2))");
+		assertTree("clamp[MULT[SUB[0.0,0.5],head2:x.rx],0.0,90.0]", "clamp(-0.5 * head2:x.rx, 0, 90)");
+		assertTree("if[AND[is_in_water,NOT[is_on_ground]],MULT[sin[MULT[age,0.3]],0.2],0.0]", "if(is_in_water && !is_on_ground, sin(age * 0.3) * 0.2, 0)");
+		assertTree("sin[cos[torad[ADD[age,time]]]]", "sin (cos(torad((age + time))))");
+	}
+	
+	@Test
+	void randomCorpusMatchesLegacyParser(){
+		Random random = new Random(7);
+		int compared = 0;
+		for(int i = 0; i < 20000; i++){
+			String expression = generate(random, 4);
+			String legacy;
+			try{
+				legacy = dump(LegacyTokenParser.parse(expression));
+			} catch(RuntimeException e){
+				continue;
+			}
+			assertEquals(legacy, dump(new TokenParser(expression).parse()), expression);
+			compared++;
+		}
+		assertTrue(compared > 10000, "only " + compared + " of the generated expressions were valid");
+	}
+	
+	private static void assertTree(String expected, String expression){
+		assertEquals(expected, dump(LegacyTokenParser.parse(expression)), "legacy parser: " + expression);
+		assertEquals(expected, dump(new TokenParser(expression).parse()), expression);
+	}
+	
+	/** Strings the legacy parser choked on, such as doubled prefix operators */
+	private static void assertNewOnly(String expected, String expression){
+		assertThrows(IllegalArgumentException.class, () -> LegacyTokenParser.parse(expression), "legacy parser: " + expression);
+		assertEquals(expected, dump(new TokenParser(expression).parse()), expression);
+	}
+	
+	static String dump(Token token){
+		if(token instanceof NumToken num){
+			return String.valueOf(num.getNum());
+		}
+		if(token.getArgs() == null){
+			return token.getName();
+		}
+		StringBuilder builder = new StringBuilder(token.getName()).append('[');
+		for(int i = 0; i < token.getArgs().size(); i++){
+			builder.append(i > 0? "," : "").append(dump(token.getArgs().get(i)));
+		}
+		return builder.append(']').toString();
+	}
+	
+	/** Random expressions with the spacing varied the way it is in real .jem files, about a tenth of them aren't valid */
+	static String generate(Random random, int depth){
+		String space = random.nextBoolean()? " " : "";
+		switch(random.nextInt(depth <= 0? 2 : 7)){
+			case 0, 1 -> {
+				return ATOMS[random.nextInt(ATOMS.length)];
+			}
+			case 2, 3 -> {
+				return generate(random, depth - 1) + space + OPERATORS[random.nextInt(OPERATORS.length)] + space + generate(random, depth - 1);
+			}
+			case 4 -> {
+				return "(" + generate(random, depth - 1) + ")";
+			}
+			case 5 -> {
+				StringBuilder builder = new StringBuilder(FUNCTIONS[random.nextInt(FUNCTIONS.length)]).append(random.nextInt(4) == 0? " (" : "(");
+				int args = random.nextInt(4);
+				for(int i = 0; i < args; i++){
+					builder.append(i > 0? "," + space : "").append(generate(random, depth - 1));
+				}
+				return builder.append(')').toString();
+			}
+			default -> {
+				return (random.nextBoolean()? "-" : "!") + space + generate(random, depth - 1);
+			}
+		}
+	}
+}